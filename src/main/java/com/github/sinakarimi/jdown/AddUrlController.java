@@ -26,7 +26,7 @@ public class AddUrlController {
     private Button okButton;
 
     private static final String URL_REGEX = "^(https?|ftp)://[-a-zA-Z0-9+&@#/%?=~_|!:,.;\\[\\]]*[-a-zA-Z0-9+&@#/%=~_|]";
-    private static final Pattern URL_PATTERN = Pattern.compile(URL_REGEX);
+    static final Pattern URL_PATTERN = Pattern.compile(URL_REGEX);
 
     /**
      * This method is called by the FXMLLoader after the FXML file has been loaded.
@@ -0,0 +1,162 @@
+package com.github.sinakarimi.jdown;
+
+import com.github.sinakarimi.jdown.download.DownloadTaskManager;
+import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
+import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.TextField;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
+import javafx.stage.Stage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+public class BulkAddUrlController {
+
+    @FXML
+    private TextArea urlsTextArea;
+
+    @FXML
+    private TextField saveToTextField;
+
+    @FXML
+    private ProgressBar importProgressBar;
+
+    @FXML
+    private Label importStatusLabel;
+
+    @FXML
+    private Button okButton;
+
+    @FXML
+    private Button cancelButton;
+
+    private final DownloadTaskManager downloadTaskManager = ClassManager.getDownloadTaskManager();
+
+    /**
+     * This method is called by the FXMLLoader after the FXML file has been loaded.
+     * Used to set up bindings for disabling buttons based on text fields being empty.
+     */
+    @FXML
+    public void initialize() {
+        okButton.disableProperty().bind(Bindings.or(
+                Bindings.isEmpty(urlsTextArea.textProperty()),
+                Bindings.isEmpty(saveToTextField.textProperty())
+        ));
+        saveToTextField.setText(Paths.get(System.getProperty("user.home")).toString());
+    }
+
+    /**
+     * Handles the action of the "Load File..." button, the chosen file must have one url per line.
+     */
+    @FXML
+    private void handleLoadFile() {
+        log.info("In Add Batch Scene Load File button clicked!");
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Choose a file containing addresses");
+        File selectedFile = chooser.showOpenDialog(okButton.getScene().getWindow());
+
+        if (selectedFile == null) {
+            return;
+        }
+
+        try {
+            urlsTextArea.setText(Files.readString(selectedFile.toPath()));
+        } catch (IOException e) {
+            log.error("failed to read the addresses file {}", selectedFile, e);
+        }
+    }
+
+    @FXML
+    private void handleBrowse() {
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Choose a directory");
+        chooser.setInitialDirectory(Paths.get(System.getProperty("user.home")).toFile());
+
+        File selectedDirectory = chooser.showDialog(okButton.getScene().getWindow());
+        if (selectedDirectory != null) {
+            saveToTextField.setText(selectedDirectory.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Handles the action of the "Ok" button.
+     * invalid lines are skipped, the valid ones are probed on a background thread and every probed batch is saved
+     * and queued in the background too, the JavaFX thread only shows the progress.
+     */
+    @FXML
+    private void handleOkAction() {
+        log.info("In Add Batch Scene OK button clicked!");
+        List<String> urls = Arrays.stream(urlsTextArea.getText().split("\\R"))
+                .map(String::trim)
+                .filter(line -> AddUrlController.URL_PATTERN.matcher(line).matches())
+                .distinct()
+                .toList();
+
+        if (urls.isEmpty()) {
+            log.info("Validation Error, none of the entered lines is a valid URL.");
+            return;
+        }
+
+        String savePath = saveToTextField.getText();
+        AtomicInteger saved = new AtomicInteger();
+
+        urlsTextArea.setEditable(false);
+        okButton.disableProperty().unbind();
+        okButton.setDisable(true);
+        importProgressBar.setVisible(true);
+        importStatusLabel.setText(String.format("0 / %d", urls.size()));
+
+        Thread importThread = new Thread(() -> {
+            // the next batch is only named and saved once the table holds this one, so their names cannot collide
+            int imported = downloadTaskManager.createTasks(urls, savePath, batch -> downloadTaskManager.saveTasksAsync(batch)
+                    .thenRunAsync(() -> {
+                        int total = saved.addAndGet(batch.size());
+                        importProgressBar.setProgress((double) total / urls.size());
+                        importStatusLabel.setText(String.format("%d / %d", total, urls.size()));
+                    }, Platform::runLater)
+                    .exceptionally(e -> {
+                        log.error("failed to save a batch of {} downloads", batch.size(), e);
+                        return null;
+                    })
+                    .join());
+
+            Platform.runLater(() -> {
+                log.info("bulk import finished, {} of {} urls imported", imported, urls.size());
+                closeDialog();
+            });
+        }, "bulk-import");
+        importThread.setDaemon(true);
+        importThread.start();
+    }
+
+    /**
+     * Handles the action of the "Cancel" button.
+     */
+    @FXML
+    private void handleCancelAction() {
+        log.info("In Add Batch Scene Cancel button clicked!");
+        closeDialog();
+    }
+
+    /**
+     * A helper method to close the dialog window.
+     */
+    private void closeDialog() {
+        Stage stage = (Stage) okButton.getScene().getWindow();
+        stage.close();
+    }
+
+}
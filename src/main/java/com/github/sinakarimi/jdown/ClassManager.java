@@ -1,24 +1,96 @@
 package com.github.sinakarimi.jdown;
 
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.configuration.ConfigurationWatcher;
+import com.github.sinakarimi.jdown.database.DatabaseMaintenance;
+import com.github.sinakarimi.jdown.database.ProgressStore;
+import com.github.sinakarimi.jdown.database.TaskStore;
 import com.github.sinakarimi.jdown.database.TasksDAO;
+import com.github.sinakarimi.jdown.download.ConnectionPreWarmer;
+import com.github.sinakarimi.jdown.download.DnsCache;
+import com.github.sinakarimi.jdown.download.DownloadCheckpointer;
 import com.github.sinakarimi.jdown.download.DownloadTaskManager;
+import com.github.sinakarimi.jdown.download.HostProfiles;
+import com.github.sinakarimi.jdown.exception.DatabaseException;
+import javafx.application.Platform;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+@Slf4j
 public class ClassManager {
 
     public static final String DB_NAME = "JDownDB";
+    public static final String JOURNAL_NAME = DB_NAME + ".journal";
 
     @Getter
-    private static TasksDAO tasksDAO;
+    private static TaskStore taskStore;
     @Getter
     private static DownloadTaskManager downloadTaskManager;
+    private static ProgressStore progressStore;
+    private static DatabaseMaintenance databaseMaintenance;
+    /**
+     * completes once the store can be read without waiting for the maintenance, the tasks are only loaded after it
+     */
+    @Getter
+    private static CompletableFuture<Void> storeReady;
 
     /**
      * loads all the business logic classes, must be called otherwise everything is going to be null
      */
     public static void load() {
-        tasksDAO = TasksDAO.getInstance(DB_NAME);
-        downloadTaskManager = DownloadTaskManager.getInstance(tasksDAO);
+        // both are read only once by the JVM, so they have to be set before the first connection is opened
+        DnsCache.configureJvmCache();
+        ConnectionPreWarmer.configureKeepAliveCache(ConfigurationUtils.getSettings().threads());
+
+        taskStore = TaskStore.create(DB_NAME);
+        // the store is written from background threads, the table only sees its list change on the FX thread
+        taskStore.setListExecutor(Platform::runLater);
+        try {
+            // a journal left by a crash is replayed here, before the tasks are loaded
+            progressStore = ProgressStore.create(taskStore, Path.of(JOURNAL_NAME));
+        } catch (IOException e) {
+            throw new DatabaseException("failed to open the progress journal", e);
+        }
+        if (taskStore instanceof TasksDAO tasksDAO) {
+            // old finished tasks are archived in the background, the window is shown meanwhile
+            databaseMaintenance = new DatabaseMaintenance(tasksDAO);
+            storeReady = databaseMaintenance.start()
+                    .thenRun(() -> HostProfiles.getInstance().load(taskStore));
+        } else {
+            HostProfiles.getInstance().load(taskStore);
+            storeReady = CompletableFuture.completedFuture(null);
+        }
+        downloadTaskManager = DownloadTaskManager.getInstance(taskStore);
+        DownloadCheckpointer.getInstance(taskStore, progressStore).start();
+
+        try {
+            ConfigurationWatcher.getInstance().start();
+        } catch (IOException e) {
+            log.warn("failed to watch the configuration file, changes are only used after a restart", e);
+        }
+    }
+
+    /**
+     * persists what is still only in memory, called when the application is closed
+     */
+    public static void shutdown() {
+        ConfigurationWatcher.getInstance().stop();
+        if (downloadTaskManager != null) {
+            downloadTaskManager.shutdown();
+        }
+        if (taskStore != null) {
+            DownloadCheckpointer.getInstance(taskStore, progressStore).stop();
+            if (databaseMaintenance != null) {
+                databaseMaintenance.stop();
+            }
+            progressStore.close();
+            HostProfiles.getInstance().save();
+            taskStore.close();
+        }
     }
 
 }
@@ -1,11 +1,15 @@
 package com.github.sinakarimi.jdown;
 
+import com.github.sinakarimi.jdown.common.FileSizeUtil;
 import com.github.sinakarimi.jdown.download.Download;
 import com.github.sinakarimi.jdown.download.DownloadTaskManager;
 import com.github.sinakarimi.jdown.exception.FileDataRequestFailedException;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.TextField;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.Stage;
@@ -13,6 +17,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
 import java.nio.file.Paths;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 public class DownloadFileInfoController {
@@ -23,6 +28,10 @@ public class DownloadFileInfoController {
     @FXML private Button cancelButton;
     @FXML private TextField descriptionTextField;
     @FXML private TextField nameTextField;
+    @FXML private Button downloadLaterButton;
+    @FXML private Button startDownloadButton;
+    @FXML private ProgressIndicator probeProgressIndicator;
+    @FXML private Label probeStatusLabel;
     private DownloadTaskManager downloadTaskManager;
     private Download downloadTask = null;
 
@@ -44,13 +53,32 @@ public class DownloadFileInfoController {
         urlTextField.setText(url);
     }
 
+    /**
+     * fetches the file data in the background, the download buttons are enabled once it arrived
+     */
     public void createTask(String url) {
-        try {
-            downloadTask = downloadTaskManager.createTask(url, null);
-        } catch (FileDataRequestFailedException e) {
-            log.error("failed to fetch file data");
-            throw new RuntimeException(e);
-        }
+        downloadLaterButton.setDisable(true);
+        startDownloadButton.setDisable(true);
+        probeProgressIndicator.setVisible(true);
+        probeStatusLabel.setText("Fetching file information...");
+
+        downloadTaskManager.createTaskAsync(url, null).whenCompleteAsync((download, error) -> {
+            probeProgressIndicator.setVisible(false);
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                log.error("failed to fetch file data of {}", url, cause);
+                probeStatusLabel.setText(cause instanceof FileDataRequestFailedException ? cause.getMessage() : "Failed to fetch file information");
+                return;
+            }
+
+            downloadTask = download;
+            nameTextField.setPromptText(download.getName());
+            probeStatusLabel.setText(download.getSize() != null ? FileSizeUtil.calculateSize(download.getSize()) : "Unknown size");
+            downloadLaterButton.setDisable(false);
+            startDownloadButton.setDisable(false);
+            // the user needs a moment to fill in the dialog, the connections are opened meanwhile
+            downloadTaskManager.preWarm(download);
+        }, Platform::runLater);
     }
 
     @FXML
@@ -74,30 +102,36 @@ public class DownloadFileInfoController {
     private void handleDownloadLater(ActionEvent event) {
         System.out.println("Download Later button clicked.");
         saveTask();
-        downloadTask.start();
     }
 
     @FXML
     private void handleStartDownload(ActionEvent event) {
         System.out.println("Start Download button clicked.");
         saveTask();
-        downloadTask.resume(); // since our initial state is paused
-        downloadTask.start();
     }
 
+    /**
+     * the dialog is closed right away, the task is stored and started in the background
+     */
     private void saveTask() {
-        downloadTask.setSavePath(saveAsTextField.getText());
+        Download download = downloadTask;
+        download.setSavePath(saveAsTextField.getText());
 
         if (descriptionTextField.getText() != null && !descriptionTextField.getText().isEmpty()) {
-            downloadTask.setDescription(descriptionTextField.getText());
+            download.setDescription(descriptionTextField.getText());
         }
 
         if (nameTextField.getText() != null && !nameTextField.getText().isEmpty()) {
-            downloadTask.setName(nameTextField.getText());
+            download.setName(nameTextField.getText());
         }
 
         closeDialog();
-        downloadTaskManager.saveTask(downloadTask);
+        downloadTaskManager.saveTaskAsync(download)
+                .thenRun(download::start)
+                .exceptionally(e -> {
+                    log.error("failed to save and start the download of {}", download.getName(), e);
+                    return null;
+                });
     }
 
     @FXML
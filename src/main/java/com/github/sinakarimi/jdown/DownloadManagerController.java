@@ -1,9 +1,11 @@
 package com.github.sinakarimi.jdown;
 
 import com.github.sinakarimi.jdown.dataObjects.Status;
+import com.github.sinakarimi.jdown.database.PagedTasksList;
 import com.github.sinakarimi.jdown.download.Download;
 import com.github.sinakarimi.jdown.download.DownloadTaskManager;
-import javafx.collections.ObservableList;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -13,13 +15,18 @@ import javafx.scene.control.*;
 import javafx.scene.control.cell.ProgressBarTableCell;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 public class DownloadManagerController {
 
+    private static final int SEARCH_DELAY_MILLIS = 300;
+
     // The table that displays the download tasks. The fx:id in the FXML file must match this variable name.
     @FXML
     private TableView<Download> downloadsTable;
@@ -46,8 +53,36 @@ public class DownloadManagerController {
     @FXML
     private Button cancelButton;
 
+    @FXML
+    private ToggleButton archiveButton;
+
+    @FXML
+    private TextField searchField;
+
+    @FXML
+    private ProgressIndicator busyIndicator;
+
     private final DownloadTaskManager downloadTaskManager = ClassManager.getDownloadTaskManager();;
 
+    private PagedTasksList downloadTasks;
+
+    /**
+     * the matches shown instead of {@link #downloadTasks} while something is searched, null otherwise
+     */
+    private PagedTasksList searchResults;
+
+    /**
+     * shown instead of {@link #downloadTasks} while {@link #archiveButton} is selected, null otherwise
+     */
+    private PagedTasksList archivedTasks;
+
+    private DownloadTableBridge tableBridge;
+
+    /**
+     * operations on the downloads that did not complete yet, {@link #busyIndicator} is shown while there are any
+     */
+    private int pendingOperations = 0;
+
     /**
      * This method is called by the FXMLLoader after the FXML file has been loaded.
      * It's the perfect place to initialize the table columns and set up bindings.
@@ -57,15 +92,25 @@ public class DownloadManagerController {
         setupTableCellFactories();
         setupContextMenuForTable();
         setupButtonsBindings();
-        fetchTasks();
+        setupSearch();
+        // the database could still be archiving the old tasks, the tasks are loaded once it is done
+        downloadsTable.setPlaceholder(new Label("Preparing the downloads..."));
+        ClassManager.getStoreReady().whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                log.error("failed to prepare the database, the downloads are loaded anyway", error);
+            }
+            fetchTasks();
+        }, Platform::runLater);
     }
 
     private void setupTableCellFactories() {
         // Set up the cell value factories for each column.
-        // This tells the table how to get the data for each cell from the DownloadTask object.
-        statusColumn.setCellValueFactory(cellData -> cellData.getValue().getStatusProperty());
+        // the status and the progress change on the download threads, the bridge hands them to the table at a steady pace
+        tableBridge = new DownloadTableBridge(downloadsTable);
+        statusColumn.setCellValueFactory(cellData -> tableBridge.statusOf(cellData.getValue()));
         // For the progress column, we want to display a progress bar.
-        progressColumn.setCellValueFactory(cellData -> cellData.getValue().getProgressProperty().asObject());
+        progressColumn.setCellValueFactory(cellData -> tableBridge.progressOf(cellData.getValue()));
+        tableBridge.start();
 
         progressColumn.setCellFactory(ProgressBarTableCell.forTableColumn());
     }
@@ -77,9 +122,10 @@ public class DownloadManagerController {
         // items in the context menu
         MenuItem delete = new MenuItem("delete");
         delete.setOnAction(event -> {
-            Download selectedItem = downloadsTable.getSelectionModel().getSelectedItem();
-            downloadsTable.getItems().remove(selectedItem);
-            downloadTaskManager.deleteTask(selectedItem);
+            List<Download> selectedItems = selectedItems();
+            // deleted from the database first, otherwise the table could read the rows again for the shifted page
+            whenDone("delete", downloadTaskManager.deleteTasksAsync(selectedItems),
+                    () -> selectedItems.forEach(downloadsTable.getItems()::remove));
         });
 
         MenuItem properties = new MenuItem("properties");
@@ -95,6 +141,8 @@ public class DownloadManagerController {
     }
 
     private void setupButtonsBindings() {
+        // the buttons and the delete item act on all the selected downloads at once
+        downloadsTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         // we disable the three main buttons until an item is selected from the table
         // selectedItemProperty() returns the properties of the selected item
         resumeButton.disableProperty().bind(downloadsTable.getSelectionModel().selectedItemProperty().isNull());
@@ -103,8 +151,83 @@ public class DownloadManagerController {
     }
 
     private void fetchTasks() {
-        ObservableList<Download> downloadTasks = downloadTaskManager.listAllDownloadTasks();
+        downloadTasks = downloadTaskManager.listAllDownloadTasks();
         downloadsTable.setItems(downloadTasks);
+        // sorting would read the whole history into memory, the history is already ordered by the database
+        downloadsTable.setSortPolicy(table -> false);
+        downloadsTable.setPlaceholder(null);
+        searchField.setDisable(false);
+        archiveButton.setDisable(false);
+    }
+
+    private void setupSearch() {
+        // the index is queried once the user stops typing, not for every key
+        PauseTransition pause = new PauseTransition(Duration.millis(SEARCH_DELAY_MILLIS));
+        pause.setOnFinished(event -> search(searchField.getText()));
+        searchField.textProperty().addListener((observable, oldValue, newValue) -> pause.playFromStart());
+    }
+
+    private void search(String query) {
+        if (searchResults != null) {
+            searchResults.dispose();
+            searchResults = null;
+        }
+
+        if (query == null || query.isBlank()) {
+            showTasks();
+        } else {
+            log.info("searching the tasks for {}", query);
+            archiveButton.setSelected(false);
+            searchResults = downloadTaskManager.searchTasks(query);
+            downloadsTable.setItems(searchResults);
+        }
+    }
+
+    /**
+     * shows the archive or the tasks, whichever {@link #archiveButton} asks for
+     */
+    private void showTasks() {
+        if (archivedTasks != null) {
+            archivedTasks.dispose();
+            archivedTasks = null;
+        }
+
+        if (archiveButton.isSelected()) {
+            archivedTasks = downloadTaskManager.listArchivedTasks();
+            downloadsTable.setItems(archivedTasks);
+        } else {
+            // tasks could have been deleted from the results, so the history is counted again
+            downloadTasks.dispose();
+            downloadTasks = downloadTaskManager.listTasks();
+            downloadsTable.setItems(downloadTasks);
+        }
+    }
+
+    /**
+     * shows {@link #busyIndicator} until the operation completes, then runs the given action on the FX thread
+     */
+    private void whenDone(String name, CompletableFuture<Void> operation, Runnable then) {
+        pendingOperations++;
+        busyIndicator.setVisible(true);
+        operation.whenCompleteAsync((result, error) -> {
+            if (--pendingOperations == 0) {
+                busyIndicator.setVisible(false);
+            }
+
+            if (error != null) {
+                log.error("failed to {} the downloads", name, error);
+            } else {
+                then.run();
+            }
+        }, Platform::runLater);
+    }
+
+    private void whenDone(String name, CompletableFuture<Void> operation) {
+        whenDone(name, operation, () -> {});
+    }
+
+    private List<Download> selectedItems() {
+        return List.copyOf(downloadsTable.getSelectionModel().getSelectedItems());
     }
 
     private void handlePropertiesContextAction(Download task) {
@@ -157,14 +280,46 @@ public class DownloadManagerController {
         }
     }
 
+    /**
+     * Handles the action of the "Add Batch" button.
+     */
+    @FXML
+    private void handleAddBatchAction(ActionEvent event) {
+        log.info("Add Batch button clicked!");
+        try {
+            Parent root = FXMLLoader.load(DownloadManagerController.class.getResource("BulkAddUrlView.fxml"));
+            Stage addBatchStage = new Stage();
+            addBatchStage.initModality(Modality.APPLICATION_MODAL);
+            addBatchStage.setTitle("Download a batch of URLs");
+            addBatchStage.setScene(new Scene(root));
+            addBatchStage.show();
+        } catch (IOException e) {
+            log.error("error occurred while trying to open the add batch dialog", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Handles the action of the "Archive" button, the archive replaces the search results as well.
+     */
+    @FXML
+    private void handleArchiveAction() {
+        log.info("Archive button clicked!");
+        if (searchField.getText().isEmpty()) {
+            showTasks();
+        } else {
+            // the search of the cleared field shows the archive
+            searchField.clear();
+        }
+    }
+
     /**
      * Handles the action of the "Resume" button.
      */
     @FXML
     private void handleResumeAction() {
         log.info("Resume button clicked!");
-        Download selectedItem = downloadsTable.getSelectionModel().getSelectedItem();
-        selectedItem.resume();
+        whenDone("resume", downloadTaskManager.resumeAllAsync(selectedItems()));
     }
 
     /**
@@ -173,8 +328,7 @@ public class DownloadManagerController {
     @FXML
     private void handlePauseAction() {
         log.info("Pause button clicked!");
-        Download selectedItem = downloadsTable.getSelectionModel().getSelectedItem();
-        selectedItem.pause();
+        whenDone("pause", downloadTaskManager.pauseAllAsync(selectedItems()));
     }
 
     /**
@@ -183,7 +337,12 @@ public class DownloadManagerController {
     @FXML
     private void handlePauseAllAction() {
         log.info("Pause All button clicked!");
-        downloadsTable.getItems().forEach(Download::pause);
+        if (downloadTasks == null) {
+            // nothing is loaded yet, so nothing was started either
+            return;
+        }
+        // the history only holds finished tasks, there is nothing to pause in it
+        whenDone("pause", downloadTaskManager.pauseAllAsync(List.copyOf(downloadTasks.getActiveTasks())));
     }
 
     /**
@@ -192,8 +351,7 @@ public class DownloadManagerController {
     @FXML
     private void handleCancelAction() {
         log.info("Cancel button clicked!");
-        Download selectedItem = downloadsTable.getSelectionModel().getSelectedItem();
-        selectedItem.cancel();
+        whenDone("cancel", downloadTaskManager.cancelAllAsync(selectedItems()));
     }
 
 }
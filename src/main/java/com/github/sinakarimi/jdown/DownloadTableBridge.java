@@ -0,0 +1,119 @@
+package com.github.sinakarimi.jdown;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.dataObjects.Status;
+import com.github.sinakarimi.jdown.database.PagedTasksList;
+import com.github.sinakarimi.jdown.download.Download;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.control.TableView;
+import javafx.util.Duration;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * the table does not observe the downloads, the segment threads change their status and progress far more often than
+ * anyone can see. every row shown gets its own properties that only the FX thread changes, and every
+ * {@link ConfigurationConstants#UI_REFRESH_MILLIS} they are brought up to date with the downloads in one go, so the
+ * table is laid out once per refresh no matter how many downloads are running
+ */
+public class DownloadTableBridge {
+
+    /**
+     * every this many refreshes the rows that left the table are dropped
+     */
+    private static final int PRUNE_EVERY = 50;
+
+    private final TableView<Download> table;
+    /**
+     * by identity, the hash code of a download changes while it runs
+     */
+    private final Map<Download, Row> rows = new IdentityHashMap<>();
+    private final Timeline timeline;
+    private int refreshes = 0;
+
+    public DownloadTableBridge(TableView<Download> table) {
+        this.table = table;
+        int refreshMillis = ConfigurationUtils.getSettings().uiRefreshMillis();
+        timeline = new Timeline(new KeyFrame(Duration.millis(refreshMillis), event -> refresh()));
+        timeline.setCycleCount(Animation.INDEFINITE);
+    }
+
+    public void start() {
+        timeline.play();
+    }
+
+    public void stop() {
+        timeline.stop();
+    }
+
+    /**
+     * must be called on the FX thread, like the cell value factories it is meant for
+     */
+    public ObservableValue<Status> statusOf(Download download) {
+        return row(download).status.getReadOnlyProperty();
+    }
+
+    public ObservableValue<Double> progressOf(Download download) {
+        return row(download).progress.getReadOnlyProperty();
+    }
+
+    private Row row(Download download) {
+        return rows.computeIfAbsent(download, Row::new);
+    }
+
+    private void refresh() {
+        if (++refreshes % PRUNE_EVERY == 0) {
+            prune();
+        }
+        rows.values().forEach(Row::update);
+    }
+
+    /**
+     * the rows left behind by searching, deleting and scrolling far through the history are forgotten here. only the
+     * tasks the paged list holds in memory are looked at, so nothing is read from the database
+     */
+    private void prune() {
+        Set<Download> shown;
+        if (table.getItems() instanceof PagedTasksList paged) {
+            shown = paged.loadedTasks();
+        } else {
+            shown = Collections.newSetFromMap(new IdentityHashMap<>());
+            shown.addAll(table.getItems());
+        }
+        rows.keySet().removeIf(download -> !shown.contains(download));
+    }
+
+    private static class Row {
+
+        private final Download download;
+        private final ReadOnlyObjectWrapper<Status> status;
+        private final ReadOnlyObjectWrapper<Double> progress;
+
+        Row(Download download) {
+            this.download = download;
+            this.status = new ReadOnlyObjectWrapper<>(download.getStatus());
+            this.progress = new ReadOnlyObjectWrapper<>(download.getProgress());
+        }
+
+        /**
+         * the cells are only notified when a value really changed, a boxed progress is a new object every time
+         */
+        void update() {
+            status.set(download.getStatus());
+            double current = download.getProgress();
+            if (progress.get() == null || progress.get() != current) {
+                progress.set(current);
+            }
+        }
+
+    }
+
+}
@@ -32,7 +32,7 @@ public class FilePropertiesController {
     public void initValues(Download task) {
         fileNameLabel.setText(task.getName());
         typeValueLabel.setText(task.getType());
-        statusValueLabel.setText(task.getStatusProperty().get().getValue());
+        statusValueLabel.setText(task.getStatus().getValue());
         String size = FileSizeUtil.calculateSize(task.getSize());
         sizeValueLabel.setText(size);
         saveToTextField.setText(task.getSavePath());
@@ -20,6 +20,11 @@ public class JDownApplication extends Application {
         stage.show();
     }
 
+    @Override
+    public void stop() {
+        ClassManager.shutdown();
+    }
+
     public static void main(String[] args) {
         launch();
     }
@@ -10,6 +10,11 @@ public enum HttpConstants {
     CONTENT_LENGTH_HEADER("Content-Length"),
     CONTENT_TYPE_HEADER("Content-Type"),
     CONTENT_DISPOSITION_HEADER("Content-Disposition"),
+    LOCATION_HEADER("Location"),
+    ETAG_HEADER("ETag"),
+    LAST_MODIFIED_HEADER("Last-Modified"),
+    IF_RANGE_HEADER("If-Range"),
+    TRANSFER_ENCODING_HEADER("Transfer-Encoding"),
 
     HEAD_METHOD("HEAD"),
     GET_METHOD("GET"),
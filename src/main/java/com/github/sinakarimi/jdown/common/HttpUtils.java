@@ -20,4 +20,15 @@ public class HttpUtils {
         return 200 <= responseCode && responseCode < 300;
     }
 
+    public static boolean isRedirect(int responseCode) {
+        return responseCode == 301 || responseCode == 302 || responseCode == 303 || responseCode == 307 || responseCode == 308;
+    }
+
+    /**
+     * signed and CDN urls answer with these once they are no longer valid
+     */
+    public static boolean isExpired(int responseCode) {
+        return responseCode == 403 || responseCode == 410;
+    }
+
 }
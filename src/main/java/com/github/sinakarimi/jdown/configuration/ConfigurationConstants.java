@@ -3,5 +3,35 @@ package com.github.sinakarimi.jdown.configuration;
 public class ConfigurationConstants {
 
     public static final String NUMBER_OF_THREADS = "numOfThreads";
+    public static final String PROBE_PARALLELISM = "probeParallelism";
+    public static final String MAX_CONCURRENT_DOWNLOADS = "maxConcurrentDownloads";
+    public static final String DNS_CACHE_TTL_SECONDS = "dnsCacheTtlSeconds";
+    public static final String CONNECT_TIMEOUT_MILLIS = "connectTimeoutMillis";
+    public static final String READ_TIMEOUT_MILLIS = "readTimeoutMillis";
+    public static final String STALL_CHECK_INTERVAL_MILLIS = "stallCheckIntervalMillis";
+    public static final String STALL_WINDOW_MILLIS = "stallWindowMillis";
+    public static final String MIN_SEGMENT_THROUGHPUT = "minSegmentThroughputBytesPerSecond";
+    public static final String MAX_BYTES_PER_SECOND = "maxBytesPerSecond";
+    public static final String MAX_SEGMENT_RETRIES = "maxSegmentRetries";
+    public static final String ENDGAME_SEGMENTS = "endgameSegments";
+    public static final String ENDGAME_MIN_BYTES = "endgameMinBytes";
+    public static final String LOCAL_ADDRESSES = "localAddresses";
+    public static final String LOCAL_ADDRESS_SELECTION = "localAddressSelection";
+    public static final String BUFFER_SIZE = "bufferSize";
+    public static final String DIRECT_BUFFERS = "directBuffers";
+    public static final String MAX_BUFFER_MEMORY = "maxBufferMemory";
+    public static final String LEARN_HOST_PROFILES = "learnHostProfiles";
+    public static final String CHECKPOINT_INTERVAL_MILLIS = "checkpointIntervalMillis";
+    public static final String WRITE_BEHIND_INTERVAL_MILLIS = "writeBehindIntervalMillis";
+    public static final String RECENT_HISTORY_MILLIS = "recentHistoryMillis";
+    public static final String HISTORY_PAGE_SIZE = "historyPageSize";
+    public static final String UI_REFRESH_MILLIS = "uiRefreshMillis";
+    public static final String TASK_STORE = "taskStore";
+    public static final String PROGRESS_STORE = "progressStore";
+    public static final String JOURNAL_SIZE_BYTES = "journalSizeBytes";
+    public static final String JOURNAL_COMPACTION_INTERVAL_MILLIS = "journalCompactionIntervalMillis";
+    public static final String ARCHIVE_AFTER_DAYS = "archiveAfterDays";
+    public static final String MAINTENANCE_INTERVAL_MILLIS = "maintenanceIntervalMillis";
+    public static final String INCREMENTAL_VACUUM_PAGES = "incrementalVacuumPages";
 
 }
@@ -0,0 +1,33 @@
+package com.github.sinakarimi.jdown.configuration;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * the configuration at one point in time. it is never changed, a change publishes a new snapshot, so it can be read
+ * from any thread without a lock
+ */
+@Getter
+public final class ConfigurationSnapshot {
+
+    /**
+     * the defaults with the values of the user configuration file on top
+     */
+    private final Map<String, Object> values;
+    /**
+     * only the values of the user configuration file, this is what is written back to it
+     */
+    private final Map<String, Object> userValues;
+    private final DownloadSettings downloadSettings;
+
+    ConfigurationSnapshot(Map<String, Object> values, Map<String, Object> userValues) {
+        // the copies allow null values, which a json file can contain
+        this.values = Collections.unmodifiableMap(new LinkedHashMap<>(values));
+        this.userValues = Collections.unmodifiableMap(new LinkedHashMap<>(userValues));
+        this.downloadSettings = DownloadSettings.from(this.values);
+    }
+
+}
@@ -2,37 +2,92 @@ package com.github.sinakarimi.jdown.configuration;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+/**
+ * the defaults are read from the configuration.json resource and the user configuration file is applied on top of
+ * them, see {@link #getUserConfigPath()}. every load or change publishes a new {@link ConfigurationSnapshot}, so a
+ * read never takes a lock and never sees half of a change
+ */
 public class ConfigurationUtils {
 
-    private static final String CONFIG_PATH = "src/main/resources/configuration.json";
-    private static Map<String, Object> CONFIGS = null;
-    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * system property to use another user configuration file, read every time the file is looked up
+     */
+    public static final String CONFIG_PATH_PROPERTY = "jdown.config";
+    private static final String DEFAULTS_RESOURCE = "/configuration.json";
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final Object WRITE_LOCK = new Object();
+    private static volatile ConfigurationSnapshot SNAPSHOT = null;
 
     public static boolean hasConfigs() {
-        return CONFIGS != null && !CONFIGS.isEmpty();
+        ConfigurationSnapshot snapshot = SNAPSHOT;
+        return snapshot != null && !snapshot.getValues().isEmpty();
     }
 
+    /**
+     * the file the user settings are read from and written to, {@code ~/.jdown/configuration.json} unless
+     * {@link #CONFIG_PATH_PROPERTY} is set
+     */
+    public static Path getUserConfigPath() {
+        String path = System.getProperty(CONFIG_PATH_PROPERTY);
+        if (path != null && !path.isBlank()) {
+            return Path.of(path);
+        }
+        return Path.of(System.getProperty("user.home"), ".jdown", "configuration.json");
+    }
+
+    /**
+     * when the user file can not be read the current snapshot is kept and the exception is thrown
+     */
     public static void populateConfigs(boolean reload) throws IOException {
-        if (CONFIGS == null || reload) {
-            CONFIGS = MAPPER.readValue(Path.of(CONFIG_PATH).toFile(), new TypeReference<>() {});
+        if (SNAPSHOT != null && !reload) {
+            return;
+        }
+
+        synchronized (WRITE_LOCK) {
+            if (SNAPSHOT != null && !reload) {
+                return;
+            }
+
+            Map<String, Object> values = readDefaults();
+            Map<String, Object> userValues = readUserValues();
+            values.putAll(userValues);
+            SNAPSHOT = new ConfigurationSnapshot(values, userValues);
         }
     }
 
-    public static Object getConfig(String configName) {
-        if (CONFIGS == null) {
+    /**
+     * the configuration as it is now, later changes do not affect it
+     */
+    public static ConfigurationSnapshot getSnapshot() {
+        ConfigurationSnapshot snapshot = SNAPSHOT;
+        if (snapshot == null) {
             try {
                 populateConfigs(false);
             } catch (IOException e) {
                 throw new RuntimeException("failed to load configuration into the application", e);
             }
+            snapshot = SNAPSHOT;
         }
+        return snapshot;
+    }
+
+    public static DownloadSettings getSettings() {
+        return getSnapshot().getDownloadSettings();
+    }
 
-        return CONFIGS.get(configName);
+    public static Object getConfig(String configName) {
+        return getSnapshot().getValues().get(configName);
     }
 
     public static <T> T getConfig(String configName, Class<T> returnType) {
@@ -40,34 +95,86 @@ public class ConfigurationUtils {
             throw new IllegalArgumentException("The return type class cannot be null in getConfig input!!!!");
         }
 
-        if (CONFIGS == null) {
-            try {
-                populateConfigs(false);
-            } catch (IOException e) {
-                throw new RuntimeException("failed to load configuration into the application", e);
-            }
-        }
-
-        Object configVal = CONFIGS.get(configName);
+        Object configVal = getSnapshot().getValues().get(configName);
         return returnType.cast(configVal);
     }
 
+    /**
+     * same as {@link #getConfig(String, Class)}, but returns the default value when the config is not set
+     */
+    public static <T> T getConfig(String configName, Class<T> returnType, T defaultValue) {
+        T configVal = getConfig(configName, returnType);
+        return configVal != null ? configVal : defaultValue;
+    }
+
     public static void setConfig(String configName, Object newValue) {
-        if (CONFIGS == null) {
-            try {
-                populateConfigs(false);
-            } catch (IOException e) {
-                throw new RuntimeException("failed to load configuration into the application", e);
+        setConfig(configName, newValue, true);
+    }
+
+    /**
+     * @param persist if false the new value is only used until the application is closed or the configuration is
+     *                reloaded
+     */
+    public static void setConfig(String configName, Object newValue, boolean persist) {
+        ConfigurationSnapshot current = getSnapshot();
+        if (!current.getValues().containsKey(configName)) {
+            return;
+        }
+
+        synchronized (WRITE_LOCK) {
+            current = SNAPSHOT;
+            Map<String, Object> values = new LinkedHashMap<>(current.getValues());
+            Map<String, Object> userValues = new LinkedHashMap<>(current.getUserValues());
+            values.put(configName, newValue);
+            userValues.put(configName, newValue);
+
+            if (persist) {
+                try {
+                    writeUserValues(userValues);
+                } catch (IOException e) {
+                    throw new RuntimeException("failed to write the new value of " + configName + " to config file", e);
+                }
             }
+
+            // only what was written to the file survives a reload
+            SNAPSHOT = new ConfigurationSnapshot(values, persist ? userValues : current.getUserValues());
+        }
+    }
+
+    private static Map<String, Object> readDefaults() throws IOException {
+        try (InputStream in = ConfigurationUtils.class.getResourceAsStream(DEFAULTS_RESOURCE)) {
+            if (in == null) {
+                throw new IOException("the default configuration " + DEFAULTS_RESOURCE + " is missing");
+            }
+            return MAPPER.readValue(in, new TypeReference<LinkedHashMap<String, Object>>() {});
         }
+    }
 
+    private static Map<String, Object> readUserValues() throws IOException {
+        Path path = getUserConfigPath();
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            return new LinkedHashMap<>();
+        }
+        Map<String, Object> userValues = MAPPER.readValue(path.toFile(), new TypeReference<LinkedHashMap<String, Object>>() {});
+        return userValues != null ? userValues : new LinkedHashMap<>();
+    }
+
+    /**
+     * written to a temporary file first and then moved over the old one, so the watcher never reads half a file
+     */
+    private static void writeUserValues(Map<String, Object> userValues) throws IOException {
+        Path path = getUserConfigPath().toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
         try {
-            if (CONFIGS.containsKey(configName)) {
-                CONFIGS.put(configName, newValue);
-                MAPPER.writeValue(Path.of(CONFIG_PATH).toFile(), CONFIGS);
+            MAPPER.writeValue(temp.toFile(), userValues);
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
             }
-        } catch (IOException e) {
-            throw new RuntimeException("failed to write the new value of " + configName + " to config file", e);
+        } finally {
+            Files.deleteIfExists(temp);
         }
     }
 
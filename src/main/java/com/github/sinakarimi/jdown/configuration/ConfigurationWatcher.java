@@ -0,0 +1,108 @@
+package com.github.sinakarimi.jdown.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * reloads the configuration when the user configuration file changes. the directory of the file is watched, so
+ * creating the file and replacing it with a move are seen too. settings that are read on every use, like the timeouts
+ * and the number of threads of new downloads, take effect right away, the ones read once at startup need a restart
+ */
+@Slf4j
+public class ConfigurationWatcher {
+
+    private static ConfigurationWatcher instance;
+
+    private WatchService watchService;
+    private Thread thread;
+
+    private ConfigurationWatcher() {
+    }
+
+    public static synchronized ConfigurationWatcher getInstance() {
+        if (instance == null) {
+            instance = new ConfigurationWatcher();
+        }
+        return instance;
+    }
+
+    public synchronized void start() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+
+        Path file = ConfigurationUtils.getUserConfigPath().toAbsolutePath();
+        Path directory = file.getParent();
+        Files.createDirectories(directory);
+
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        WatchService service = watchService;
+        thread = new Thread(() -> watch(service, file), "configuration-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("watching {} for configuration changes", file);
+    }
+
+    public synchronized void stop() {
+        if (watchService == null) {
+            return;
+        }
+
+        try {
+            // wakes the watching thread up, it ends on the closed service
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("failed to close the configuration watcher", e);
+        }
+        watchService = null;
+        thread = null;
+    }
+
+    private void watch(WatchService service, Path file) {
+        Path fileName = file.getFileName();
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (fileName.equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    reload(file);
+                }
+                if (!key.reset()) {
+                    log.warn("the configuration directory of {} is gone, changes are not watched anymore", file);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    private void reload(Path file) {
+        try {
+            ConfigurationUtils.populateConfigs(true);
+            log.info("configuration reloaded from {}", file);
+        } catch (IOException e) {
+            // most likely saved in the middle of an edit, the next save is picked up again
+            log.warn("failed to reload the configuration from {}, the previous values are kept", file, e);
+        }
+    }
+
+}
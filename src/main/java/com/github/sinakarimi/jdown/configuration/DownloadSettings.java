@@ -0,0 +1,130 @@
+package com.github.sinakarimi.jdown.configuration;
+
+import com.github.sinakarimi.jdown.database.ProgressStore;
+import com.github.sinakarimi.jdown.database.TaskStore;
+import com.github.sinakarimi.jdown.download.LocalAddressSelector;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * typed view of the settings of the download engine, the stores and the table, with their defaults. it is built once
+ * for every {@link ConfigurationSnapshot}, so the hot paths read a field instead of looking up and casting a map value
+ */
+public record DownloadSettings(int threads,
+                               int probeParallelism,
+                               int maxConcurrentDownloads,
+                               int connectTimeoutMillis,
+                               int readTimeoutMillis,
+                               int maxSegmentRetries,
+                               int stallWindowMillis,
+                               int minSegmentThroughput,
+                               int maxBytesPerSecond,
+                               int endgameSegments,
+                               int endgameMinBytes,
+                               int bufferSize,
+                               boolean directBuffers,
+                               int maxBufferMemory,
+                               boolean hostProfiles,
+                               int stallCheckIntervalMillis,
+                               List<String> localAddresses,
+                               String localAddressSelection,
+                               int dnsCacheTtlSeconds,
+                               int checkpointIntervalMillis,
+                               String taskStore,
+                               String progressStore,
+                               int journalSizeBytes,
+                               int journalCompactionIntervalMillis,
+                               int writeBehindIntervalMillis,
+                               int recentHistoryMillis,
+                               int historyPageSize,
+                               int archiveAfterDays,
+                               int maintenanceIntervalMillis,
+                               int incrementalVacuumPages,
+                               int uiRefreshMillis) {
+
+    static final int DEFAULT_THREADS = 10;
+    static final int DEFAULT_PROBE_PARALLELISM = 16;
+    static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 4;
+    static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15_000;
+    static final int DEFAULT_READ_TIMEOUT_MILLIS = 30_000;
+    static final int DEFAULT_MAX_SEGMENT_RETRIES = 5;
+    static final int DEFAULT_STALL_WINDOW_MILLIS = 10_000;
+    static final int DEFAULT_ENDGAME_SEGMENTS = 2;
+    static final int DEFAULT_ENDGAME_MIN_BYTES = 64 * 1024;
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+    static final int DEFAULT_MAX_BUFFER_MEMORY = 16 * 1024 * 1024;
+    static final int DEFAULT_STALL_CHECK_INTERVAL_MILLIS = 1000;
+    static final int DEFAULT_DNS_CACHE_TTL_SECONDS = 60;
+    static final int DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 5000;
+    static final int DEFAULT_JOURNAL_SIZE_BYTES = 4 * 1024 * 1024;
+    static final int DEFAULT_JOURNAL_COMPACTION_INTERVAL_MILLIS = 60_000;
+    static final int DEFAULT_WRITE_BEHIND_INTERVAL_MILLIS = 500;
+    static final int DEFAULT_RECENT_HISTORY_MILLIS = 24 * 60 * 60 * 1000;
+    static final int DEFAULT_HISTORY_PAGE_SIZE = 100;
+    static final int DEFAULT_ARCHIVE_AFTER_DAYS = 30;
+    static final int DEFAULT_MAINTENANCE_INTERVAL_MILLIS = 60 * 60 * 1000;
+    static final int DEFAULT_INCREMENTAL_VACUUM_PAGES = 1024;
+    static final int DEFAULT_UI_REFRESH_MILLIS = 100;
+
+    /**
+     * missing, mistyped and non positive values fall back to the defaults
+     */
+    static DownloadSettings from(Map<String, Object> values) {
+        return new DownloadSettings(
+                positive(values, ConfigurationConstants.NUMBER_OF_THREADS, DEFAULT_THREADS),
+                positive(values, ConfigurationConstants.PROBE_PARALLELISM, DEFAULT_PROBE_PARALLELISM),
+                positive(values, ConfigurationConstants.MAX_CONCURRENT_DOWNLOADS, DEFAULT_MAX_CONCURRENT_DOWNLOADS),
+                positive(values, ConfigurationConstants.CONNECT_TIMEOUT_MILLIS, DEFAULT_CONNECT_TIMEOUT_MILLIS),
+                positive(values, ConfigurationConstants.READ_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS),
+                atLeastZero(values, ConfigurationConstants.MAX_SEGMENT_RETRIES, DEFAULT_MAX_SEGMENT_RETRIES),
+                positive(values, ConfigurationConstants.STALL_WINDOW_MILLIS, DEFAULT_STALL_WINDOW_MILLIS),
+                atLeastZero(values, ConfigurationConstants.MIN_SEGMENT_THROUGHPUT, 0),
+                // zero does not limit the downloads
+                atLeastZero(values, ConfigurationConstants.MAX_BYTES_PER_SECOND, 0),
+                atLeastZero(values, ConfigurationConstants.ENDGAME_SEGMENTS, DEFAULT_ENDGAME_SEGMENTS),
+                atLeastZero(values, ConfigurationConstants.ENDGAME_MIN_BYTES, DEFAULT_ENDGAME_MIN_BYTES),
+                positive(values, ConfigurationConstants.BUFFER_SIZE, DEFAULT_BUFFER_SIZE),
+                values.get(ConfigurationConstants.DIRECT_BUFFERS) instanceof Boolean direct && direct,
+                positive(values, ConfigurationConstants.MAX_BUFFER_MEMORY, DEFAULT_MAX_BUFFER_MEMORY),
+                !(values.get(ConfigurationConstants.LEARN_HOST_PROFILES) instanceof Boolean learn) || learn,
+                positive(values, ConfigurationConstants.STALL_CHECK_INTERVAL_MILLIS, DEFAULT_STALL_CHECK_INTERVAL_MILLIS),
+                strings(values, ConfigurationConstants.LOCAL_ADDRESSES),
+                string(values, ConfigurationConstants.LOCAL_ADDRESS_SELECTION, LocalAddressSelector.ROUND_ROBIN),
+                atLeastZero(values, ConfigurationConstants.DNS_CACHE_TTL_SECONDS, DEFAULT_DNS_CACHE_TTL_SECONDS),
+                positive(values, ConfigurationConstants.CHECKPOINT_INTERVAL_MILLIS, DEFAULT_CHECKPOINT_INTERVAL_MILLIS),
+                string(values, ConfigurationConstants.TASK_STORE, TaskStore.SQLITE),
+                string(values, ConfigurationConstants.PROGRESS_STORE, ProgressStore.SQLITE),
+                positive(values, ConfigurationConstants.JOURNAL_SIZE_BYTES, DEFAULT_JOURNAL_SIZE_BYTES),
+                positive(values, ConfigurationConstants.JOURNAL_COMPACTION_INTERVAL_MILLIS, DEFAULT_JOURNAL_COMPACTION_INTERVAL_MILLIS),
+                positive(values, ConfigurationConstants.WRITE_BEHIND_INTERVAL_MILLIS, DEFAULT_WRITE_BEHIND_INTERVAL_MILLIS),
+                atLeastZero(values, ConfigurationConstants.RECENT_HISTORY_MILLIS, DEFAULT_RECENT_HISTORY_MILLIS),
+                positive(values, ConfigurationConstants.HISTORY_PAGE_SIZE, DEFAULT_HISTORY_PAGE_SIZE),
+                // zero or less keeps every task in the tasks table
+                values.get(ConfigurationConstants.ARCHIVE_AFTER_DAYS) instanceof Number days ? days.intValue() : DEFAULT_ARCHIVE_AFTER_DAYS,
+                positive(values, ConfigurationConstants.MAINTENANCE_INTERVAL_MILLIS, DEFAULT_MAINTENANCE_INTERVAL_MILLIS),
+                positive(values, ConfigurationConstants.INCREMENTAL_VACUUM_PAGES, DEFAULT_INCREMENTAL_VACUUM_PAGES),
+                positive(values, ConfigurationConstants.UI_REFRESH_MILLIS, DEFAULT_UI_REFRESH_MILLIS));
+    }
+
+    private static int positive(Map<String, Object> values, String name, int defaultValue) {
+        int value = atLeastZero(values, name, defaultValue);
+        return value > 0 ? value : defaultValue;
+    }
+
+    private static int atLeastZero(Map<String, Object> values, String name, int defaultValue) {
+        return values.get(name) instanceof Number number && number.intValue() >= 0 ? number.intValue() : defaultValue;
+    }
+
+    private static String string(Map<String, Object> values, String name, String defaultValue) {
+        return values.get(name) instanceof String value ? value : defaultValue;
+    }
+
+    private static List<String> strings(Map<String, Object> values, String name) {
+        if (!(values.get(name) instanceof List<?> list)) {
+            return List.of();
+        }
+        return list.stream().filter(String.class::isInstance).map(String.class::cast).toList();
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.github.sinakarimi.jdown.database;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.configuration.DownloadSettings;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * keeps the database small. the finished tasks older than {@link ConfigurationConstants#ARCHIVE_AFTER_DAYS} are
+ * archived from a background thread when the application starts, the tasks are only loaded once that is done, so the
+ * table never sees the history shrink under it. the free pages are then released and the statistics refreshed a bit
+ * at a time from the same thread
+ */
+@Slf4j
+public class DatabaseMaintenance {
+
+    private final TasksDAO tasksDAO;
+    private final int archiveAfterDays;
+    private final int intervalMillis;
+    private final int vacuumPages;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "database-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public DatabaseMaintenance(TasksDAO tasksDAO) {
+        this.tasksDAO = tasksDAO;
+        DownloadSettings settings = ConfigurationUtils.getSettings();
+        this.archiveAfterDays = settings.archiveAfterDays();
+        this.intervalMillis = settings.maintenanceIntervalMillis();
+        this.vacuumPages = settings.incrementalVacuumPages();
+    }
+
+    /**
+     * archives the old tasks and schedules the rest of the maintenance
+     * @return completes once the old tasks are archived, also when that failed
+     */
+    public CompletableFuture<Void> start() {
+        CompletableFuture<Void> prepared = CompletableFuture.runAsync(this::prepare, scheduler);
+        scheduler.scheduleWithFixedDelay(this::maintain, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        return prepared;
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    private void prepare() {
+        try {
+            tasksDAO.enableIncrementalVacuum();
+            // zero or less keeps every task in the tasks table
+            if (archiveAfterDays > 0) {
+                tasksDAO.archiveHistory(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(archiveAfterDays));
+            }
+        } catch (Exception e) {
+            log.error("failed to archive the finished tasks, they stay in the history", e);
+        }
+    }
+
+    private void maintain() {
+        try {
+            tasksDAO.maintain(vacuumPages);
+        } catch (Exception e) {
+            log.error("database maintenance failed, it is tried again in {} ms", intervalMillis, e);
+        }
+    }
+
+}
@@ -0,0 +1,361 @@
+package com.github.sinakarimi.jdown.database;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.dataObjects.Range;
+import com.github.sinakarimi.jdown.dataObjects.Status;
+import com.github.sinakarimi.jdown.download.Download;
+import com.github.sinakarimi.jdown.download.DownloadTask;
+import com.github.sinakarimi.jdown.download.HostProfile;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * keeps the tasks in concurrent maps instead of a database, for tests, benchmarks and embedders that do not need
+ * them after the process exits. like the database it holds copies, a task read back is a new {@link Download} and
+ * only sees what was written through the store. nothing is queued, every update is applied right away
+ */
+@Slf4j
+public class InMemoryTaskStore implements TaskStore {
+
+    private static final Comparator<TaskRow> HISTORY_ORDER = Comparator.comparingLong(TaskRow::updatedAt)
+            .thenComparingLong(TaskRow::id)
+            .reversed();
+
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Map<Long, TaskRow> rows = new ConcurrentHashMap<>();
+    private final Map<Long, List<DownloadTask>> segments = new ConcurrentHashMap<>();
+    private final Map<String, HostProfile> hostProfiles = new ConcurrentHashMap<>();
+
+    @Getter
+    private final ObservableList<Download> tasksList = FXCollections.observableArrayList();
+    private final Map<Long, Download> tasksById = new ConcurrentHashMap<>();
+    private volatile long historyCutoff = 0;
+    private volatile Executor listExecutor = Runnable::run;
+
+    public InMemoryTaskStore() {
+        tasksList.addListener(this::indexTasks);
+    }
+
+    private void indexTasks(ListChangeListener.Change<? extends Download> change) {
+        while (change.next()) {
+            change.getRemoved().forEach(d -> tasksById.remove(d.getId(), d));
+            change.getAddedSubList().forEach(d -> tasksById.put(d.getId(), d));
+        }
+    }
+
+    @Override
+    public void setListExecutor(Executor listExecutor) {
+        this.listExecutor = listExecutor;
+    }
+
+    @Override
+    public synchronized void insert(Download download) {
+        store(download);
+        listExecutor.execute(() -> tasksList.add(download));
+    }
+
+    @Override
+    public synchronized void insertAll(List<Download> downloads) {
+        downloads.forEach(this::store);
+        listExecutor.execute(() -> tasksList.addAll(downloads));
+    }
+
+    private void store(Download download) {
+        download.setId(nextId.getAndIncrement());
+        String description = download.getDescriptionProperty() != null ? download.getDescriptionProperty().getValueSafe() : "";
+        rows.put(download.getId(), new TaskRow(download.getId(), download.getName(), download.getType(),
+                download.getStatus(), download.getSize(), download.getSavePath(), download.getDownloadUrl(),
+                download.getResumable(), description, 0, download.getEtag(), download.getLastModified(),
+                System.currentTimeMillis()));
+        if (download.getDownloadTasks() != null) {
+            segments.put(download.getId(), copy(download.getDownloadTasks()));
+        }
+    }
+
+    @Override
+    public void updateStatus(long id, Status status) {
+        Download download = tasksById.get(id);
+        if (download != null) {
+            download.setStatus(status);
+        }
+        rows.computeIfPresent(id, (k, row) -> row.withStatus(status, System.currentTimeMillis()));
+    }
+
+    @Override
+    public void updateDescription(long id, String description) {
+        Download download = tasksById.get(id);
+        if (download != null) {
+            download.setDescription(description);
+        }
+        rows.computeIfPresent(id, (k, row) -> row.withDescription(description));
+    }
+
+    @Override
+    public void updateProgression(long id, double progression) {
+        Download download = tasksById.get(id);
+        if (download != null) {
+            download.setProgress(progression);
+        }
+        rows.computeIfPresent(id, (k, row) -> row.withProgression(progression));
+    }
+
+    @Override
+    public void flush() {
+        // every update is already applied
+    }
+
+    @Override
+    public void updateSegments(long id, List<DownloadTask> downloadTasks) {
+        segments.put(id, copy(downloadTasks));
+    }
+
+    @Override
+    public void updateSegment(long id, int index, DownloadTask downloadTask) {
+        segments.compute(id, (k, current) -> {
+            List<DownloadTask> updated = current == null ? new ArrayList<>() : new ArrayList<>(current);
+            DownloadTask segment = copy(downloadTask);
+            if (index < updated.size()) {
+                updated.set(index, segment);
+            } else {
+                updated.add(segment);
+            }
+            return updated;
+        });
+    }
+
+    @Override
+    public synchronized void checkpointSnapshots(Collection<ProgressSnapshot> snapshots) {
+        for (ProgressSnapshot snapshot : snapshots) {
+            if (rows.computeIfPresent(snapshot.taskId(), (k, row) -> row.withProgression(snapshot.progression())) != null) {
+                segments.put(snapshot.taskId(), copy(snapshot.segments()));
+            }
+        }
+    }
+
+    @Override
+    public void updateRemoteFile(long id, Long size, String etag, String lastModified) {
+        rows.computeIfPresent(id, (k, row) -> row.withRemoteFile(size, etag, lastModified));
+    }
+
+    @Override
+    public synchronized void updateAll(Collection<Download> downloads, Status status) {
+        long now = System.currentTimeMillis();
+        for (Download download : downloads) {
+            ProgressSnapshot snapshot = ProgressSnapshot.of(download);
+            TaskRow row = rows.computeIfPresent(download.getId(), (k, current) -> current.withStatus(status, now).withProgression(snapshot.progression()));
+            if (row != null && snapshot.segments() != null) {
+                segments.put(download.getId(), copy(snapshot.segments()));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void delete(Collection<Long> ids) {
+        Set<Long> deleted = new HashSet<>(ids);
+        deleted.forEach(segments::remove);
+        deleted.forEach(rows::remove);
+        listExecutor.execute(() -> tasksList.removeIf(d -> deleted.contains(d.getId())));
+    }
+
+    @Override
+    public synchronized void delete(long id) {
+        segments.remove(id);
+        rows.remove(id);
+        listExecutor.execute(() -> tasksList.removeIf(d -> d.getId() == id));
+    }
+
+    @Override
+    public synchronized void deleteAll() {
+        segments.clear();
+        rows.clear();
+    }
+
+    @Override
+    public void loadActiveTasks() {
+        int recentHistory = ConfigurationUtils.getSettings().recentHistoryMillis();
+        historyCutoff = System.currentTimeMillis() - recentHistory;
+
+        List<Download> downloads = rows.values().stream()
+                .filter(row -> !row.isHistory(historyCutoff))
+                .sorted(Comparator.comparingLong(TaskRow::id))
+                .map(this::toDownload)
+                .toList();
+
+        tasksList.addAll(downloads);
+        log.info("number of active tasks in memory: {}", downloads.size());
+    }
+
+    @Override
+    public int countHistory() {
+        return (int) rows.values().stream().filter(row -> row.isHistory(historyCutoff)).count();
+    }
+
+    @Override
+    public List<Download> loadHistoryPage(int offset, int limit) {
+        return rows.values().stream()
+                .filter(row -> row.isHistory(historyCutoff))
+                .sorted(HISTORY_ORDER)
+                .skip(offset)
+                .limit(limit)
+                .map(this::toDownload)
+                .toList();
+    }
+
+    @Override
+    public int countSearch(String query) {
+        return (int) rows.values().stream().filter(row -> row.matches(words(query))).count();
+    }
+
+    @Override
+    public List<Download> search(String query, int offset, int limit) {
+        List<String> words = words(query);
+        return rows.values().stream()
+                .filter(row -> row.matches(words))
+                .sorted(Comparator.comparingLong(TaskRow::id).reversed())
+                .skip(offset)
+                .limit(limit)
+                .map(row -> {
+                    Download loaded = tasksById.get(row.id());
+                    return loaded != null ? loaded : toDownload(row);
+                })
+                .toList();
+    }
+
+    /**
+     * the tasks only live as long as the process, nothing is ever old enough to be archived
+     */
+    @Override
+    public int countArchive() {
+        return 0;
+    }
+
+    @Override
+    public List<Download> loadArchivePage(int offset, int limit) {
+        return List.of();
+    }
+
+    /**
+     * the lower case words of the query, an empty query matches nothing
+     */
+    private static List<String> words(String query) {
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(query.trim().toLowerCase(Locale.ROOT).split("\\s+")).toList();
+    }
+
+    @Override
+    public Optional<Download> getTaskById(long id) {
+        return Optional.ofNullable(rows.get(id)).map(this::toDownload);
+    }
+
+    @Override
+    public List<HostProfile> loadHostProfiles() {
+        return List.copyOf(hostProfiles.values());
+    }
+
+    @Override
+    public void saveHostProfiles(Collection<HostProfile> profiles) {
+        profiles.forEach(p -> hostProfiles.put(p.host(), p));
+    }
+
+    @Override
+    public void close() {
+        // nothing outlives the process
+    }
+
+    private Download toDownload(TaskRow row) {
+        List<DownloadTask> downloadTasks = segments.get(row.id());
+        return Download.builder()
+                .tasksDAO(this)
+                .id(row.id())
+                .name(row.name())
+                .type(row.type())
+                .status(row.status())
+                .size(row.size())
+                .savePath(row.savePath())
+                .downloadUrl(row.url())
+                .resumable(row.resumable())
+                .descriptionProperty(new SimpleStringProperty(row.description()))
+                .progressProperty(new SimpleDoubleProperty(row.progression()))
+                .etag(row.etag())
+                .lastModified(row.lastModified())
+                .downloadTasks(downloadTasks == null ? null : copy(downloadTasks))
+                .build();
+    }
+
+    private static List<DownloadTask> copy(List<DownloadTask> downloadTasks) {
+        List<DownloadTask> copies = new ArrayList<>(downloadTasks.size());
+        downloadTasks.forEach(task -> copies.add(copy(task)));
+        return copies;
+    }
+
+    private static DownloadTask copy(DownloadTask downloadTask) {
+        DownloadTask copy = new DownloadTask();
+        Range range = downloadTask.getRange();
+        copy.setRange(new Range(range.getFrom(), range.getTo()));
+        copy.setWritten(downloadTask.getWritten());
+        copy.setCompleted(downloadTask.isCompleted());
+        return copy;
+    }
+
+    /**
+     * the stored columns of a task, replaced as a whole on every update
+     */
+    private record TaskRow(long id, String name, String type, Status status, Long size, String savePath, String url,
+                           Boolean resumable, String description, double progression, String etag,
+                           String lastModified, long updatedAt) {
+
+        /**
+         * a scan instead of an index, like the word prefixes of the search index every word has to be found somewhere
+         */
+        boolean matches(List<String> words) {
+            if (words.isEmpty()) {
+                return false;
+            }
+            String text = String.join(" ", String.valueOf(name), String.valueOf(url), String.valueOf(description), String.valueOf(type))
+                    .toLowerCase(Locale.ROOT);
+            return words.stream().allMatch(text::contains);
+        }
+
+        boolean isHistory(long cutoff) {
+            return (status == Status.COMPLETED || status == Status.CANCELED) && updatedAt < cutoff;
+        }
+
+        TaskRow withStatus(Status status, long updatedAt) {
+            return new TaskRow(id, name, type, status, size, savePath, url, resumable, description, progression, etag, lastModified, updatedAt);
+        }
+
+        TaskRow withDescription(String description) {
+            return new TaskRow(id, name, type, status, size, savePath, url, resumable, description, progression, etag, lastModified, updatedAt);
+        }
+
+        TaskRow withProgression(double progression) {
+            return new TaskRow(id, name, type, status, size, savePath, url, resumable, description, progression, etag, lastModified, updatedAt);
+        }
+
+        TaskRow withRemoteFile(Long size, String etag, String lastModified) {
+            return new TaskRow(id, name, type, status, size, savePath, url, resumable, description, 0, etag, lastModified, updatedAt);
+        }
+    }
+
+}
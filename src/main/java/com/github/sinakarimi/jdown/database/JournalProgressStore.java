@@ -0,0 +1,199 @@
+package com.github.sinakarimi.jdown.database;
+
+import com.github.sinakarimi.jdown.download.Download;
+import com.github.sinakarimi.jdown.serialization.SegmentCodec;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * appends the checkpoints to a memory mapped journal instead of writing a transaction for each of them. the latest
+ * record of every task is compacted into the tasks table periodically, when the journal is full and when the store is
+ * closed. what the operating system received survives a crash of the application, the journal is replayed on the next
+ * start and records that were only partly written are recognized by their checksum and ignored.
+ * <p>
+ * layout: a magic number, then the records, each one its payload length, the payload and the CRC32 of the payload.
+ * a zero length ends the journal. the payload is the task id, the progression and the segments as {@link SegmentCodec}
+ */
+@Slf4j
+public class JournalProgressStore implements ProgressStore {
+
+    private static final int MAGIC = 0x4A444A31;
+    private static final int HEADER_SIZE = Integer.BYTES;
+    private static final int RECORD_OVERHEAD = Integer.BYTES * 2;
+
+    private final TaskStore tasksDAO;
+    private final FileChannel channel;
+    private final MappedByteBuffer journal;
+    private final ScheduledExecutorService scheduler;
+    /**
+     * latest payload of every task since the last compaction
+     */
+    private final Map<Long, byte[]> latest = new HashMap<>();
+    private int position;
+
+    public JournalProgressStore(TaskStore tasksDAO, Path path, int size, int compactionIntervalMillis) throws IOException {
+        this.tasksDAO = tasksDAO;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.journal = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        recover();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::compactQuietly, compactionIntervalMillis, compactionIntervalMillis, TimeUnit.MILLISECONDS);
+        log.info("progress journal {} opened with {} bytes", path, size);
+    }
+
+    @Override
+    public synchronized void save(Collection<Download> downloads) {
+        for (Download download : downloads) {
+            ProgressSnapshot snapshot = ProgressSnapshot.of(download);
+            byte[] payload = encode(snapshot);
+            append(payload);
+            latest.put(snapshot.taskId(), payload);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            compact();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error("failed to close the progress journal", e);
+            }
+        }
+    }
+
+    /**
+     * writes the latest record of every task into the tasks table and starts the journal over
+     */
+    public synchronized void compact() {
+        if (!latest.isEmpty()) {
+            List<ProgressSnapshot> snapshots = new ArrayList<>(latest.size());
+            latest.values().forEach(payload -> snapshots.add(decode(ByteBuffer.wrap(payload))));
+
+            // a queued progression must not be written after the newer one of the journal
+            tasksDAO.flush();
+            tasksDAO.checkpointSnapshots(snapshots);
+            log.info("compacted the progress of {} tasks from the journal", snapshots.size());
+        }
+
+        latest.clear();
+        reset();
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (Exception e) {
+            log.error("failed to compact the progress journal, it is kept until the next try", e);
+        }
+    }
+
+    private void append(byte[] payload) {
+        int needed = RECORD_OVERHEAD + payload.length + Integer.BYTES;
+        if (position + needed > journal.capacity()) {
+            compact();
+        }
+        if (position + needed > journal.capacity()) {
+            // a record larger than the whole journal goes to the table directly
+            tasksDAO.checkpointSnapshots(List.of(decode(ByteBuffer.wrap(payload))));
+            return;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        journal.put(position + Integer.BYTES, payload);
+        journal.putInt(position + Integer.BYTES + payload.length, (int) crc.getValue());
+        journal.putInt(position + RECORD_OVERHEAD + payload.length, 0);
+        // the length is written last, until then the record is not part of the journal
+        journal.putInt(position, payload.length);
+        position += RECORD_OVERHEAD + payload.length;
+    }
+
+    /**
+     * replays the records left by the previous run up to the first one that is incomplete
+     */
+    private void recover() {
+        if (journal.getInt(0) != MAGIC) {
+            reset();
+            return;
+        }
+
+        int offset = HEADER_SIZE;
+        int records = 0;
+        while (offset + RECORD_OVERHEAD <= journal.capacity()) {
+            int length = journal.getInt(offset);
+            if (length <= 0 || offset + RECORD_OVERHEAD + length > journal.capacity()) {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            journal.get(offset + Integer.BYTES, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != journal.getInt(offset + Integer.BYTES + length)) {
+                log.warn("progress journal record at {} is incomplete, the rest of the journal is ignored", offset);
+                break;
+            }
+
+            latest.put(ByteBuffer.wrap(payload).getLong(), payload);
+            offset += RECORD_OVERHEAD + length;
+            records++;
+        }
+
+        log.info("replaying {} records of {} tasks from the progress journal", records, latest.size());
+        compact();
+    }
+
+    private void reset() {
+        journal.putInt(HEADER_SIZE, 0);
+        journal.putInt(0, MAGIC);
+        journal.force();
+        position = HEADER_SIZE;
+    }
+
+    private static byte[] encode(ProgressSnapshot snapshot) {
+        byte[] segments = SegmentCodec.encode(snapshot.segments());
+        return ByteBuffer.allocate(Long.BYTES + Double.BYTES + segments.length)
+                .putLong(snapshot.taskId())
+                .putDouble(snapshot.progression())
+                .put(segments)
+                .array();
+    }
+
+    private static ProgressSnapshot decode(ByteBuffer payload) {
+        long taskId = payload.getLong();
+        double progression = payload.getDouble();
+        return new ProgressSnapshot(taskId, progression, SegmentCodec.decode(payload));
+    }
+
+}
@@ -0,0 +1,196 @@
+package com.github.sinakarimi.jdown.database;
+
+import com.github.sinakarimi.jdown.download.Download;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * the items of the downloads table. the tasks of {@link TaskStore#getTasksList()} come first and are followed by the
+ * history, which is read from the database a page at a time when the table scrolls to it. only the last few pages
+ * that were read are kept in memory. the results of a search and the archive are paged the same way, without tasks in
+ * front of them
+ */
+@Slf4j
+public class PagedTasksList extends ObservableListBase<Download> {
+
+    private static final int CACHED_PAGES = 5;
+
+    @Getter
+    private final ObservableList<Download> activeTasks;
+    private final ListChangeListener<Download> activeTasksListener = this::forwardChange;
+    /**
+     * reads the page at the given offset with the given number of tasks
+     */
+    private final BiFunction<Integer, Integer, List<Download>> pageLoader;
+    private final int pageSize;
+    private final Map<Integer, List<Download>> pages = new LinkedHashMap<>(CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Download>> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+    /**
+     * number of tasks after the active ones that are read in pages
+     */
+    private int historySize;
+
+    public PagedTasksList(TaskStore tasksDAO, int pageSize) {
+        this(tasksDAO.getTasksList(), tasksDAO.countHistory(), tasksDAO::loadHistoryPage, pageSize);
+    }
+
+    private PagedTasksList(ObservableList<Download> activeTasks, int historySize,
+                           BiFunction<Integer, Integer, List<Download>> pageLoader, int pageSize) {
+        this.activeTasks = activeTasks;
+        this.historySize = historySize;
+        this.pageLoader = pageLoader;
+        this.pageSize = pageSize;
+        activeTasks.addListener(activeTasksListener);
+        log.info("{} active tasks, {} more tasks read in pages of {}", activeTasks.size(), historySize, pageSize);
+    }
+
+    /**
+     * the tasks matching the query, the count is read once and the matches in pages
+     */
+    public static PagedTasksList search(TaskStore tasksDAO, String query, int pageSize) {
+        return new PagedTasksList(FXCollections.emptyObservableList(), tasksDAO.countSearch(query),
+                (offset, limit) -> tasksDAO.search(query, offset, limit), pageSize);
+    }
+
+    /**
+     * the tasks moved out of the history by {@link DatabaseMaintenance}, read in pages like the history
+     */
+    public static PagedTasksList archive(TaskStore tasksDAO, int pageSize) {
+        return new PagedTasksList(FXCollections.emptyObservableList(), tasksDAO.countArchive(),
+                tasksDAO::loadArchivePage, pageSize);
+    }
+
+    /**
+     * stops following the active tasks, called when the table shows another list
+     */
+    public void dispose() {
+        activeTasks.removeListener(activeTasksListener);
+    }
+
+    @Override
+    public Download get(int index) {
+        int active = activeTasks.size();
+        if (index < active) {
+            return activeTasks.get(index);
+        }
+
+        int historyIndex = index - active;
+        if (historyIndex >= historySize) {
+            throw new IndexOutOfBoundsException(String.format("index %d, size %d", index, size()));
+        }
+
+        int pageNumber = historyIndex / pageSize;
+        List<Download> page = pages.computeIfAbsent(pageNumber, p -> pageLoader.apply(p * pageSize, pageSize));
+        return page.get(historyIndex % pageSize);
+    }
+
+    @Override
+    public int size() {
+        return activeTasks.size() + historySize;
+    }
+
+    /**
+     * only looks at the pages in memory, a task of the history that was never shown is not searched for
+     */
+    @Override
+    public int indexOf(Object o) {
+        int index = activeTasks.indexOf(o);
+        if (index >= 0) {
+            return index;
+        }
+
+        for (Map.Entry<Integer, List<Download>> page : pages.entrySet()) {
+            int inPage = page.getValue().indexOf(o);
+            if (inPage >= 0) {
+                return activeTasks.size() + page.getKey() * pageSize + inPage;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * the active tasks and those of the pages in memory, by identity. nothing is read from the database
+     */
+    public Set<Download> loadedTasks() {
+        Set<Download> loaded = Collections.newSetFromMap(new IdentityHashMap<>());
+        loaded.addAll(activeTasks);
+        pages.values().forEach(loaded::addAll);
+        return loaded;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+
+        remove(index);
+        return true;
+    }
+
+    /**
+     * removes a task from the table, it has to be deleted from the database before
+     */
+    @Override
+    public Download remove(int index) {
+        if (index < activeTasks.size()) {
+            return activeTasks.remove(index);
+        }
+
+        Download removed = get(index);
+        historySize--;
+        // the following tasks move up by one, every page would be shifted
+        pages.clear();
+
+        beginChange();
+        nextRemove(index, removed);
+        endChange();
+        return removed;
+    }
+
+    /**
+     * the active tasks are at the start of this list, so a change of them has the same indices here
+     */
+    private void forwardChange(ListChangeListener.Change<? extends Download> change) {
+        beginChange();
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                int[] permutation = new int[change.getTo() - change.getFrom()];
+                for (int i = change.getFrom(); i < change.getTo(); i++) {
+                    permutation[i - change.getFrom()] = change.getPermutation(i);
+                }
+                nextPermutation(change.getFrom(), change.getTo(), permutation);
+            } else if (change.wasUpdated()) {
+                for (int i = change.getFrom(); i < change.getTo(); i++) {
+                    nextUpdate(i);
+                }
+            } else {
+                if (change.wasRemoved()) {
+                    nextRemove(change.getFrom(), change.getRemoved());
+                }
+                if (change.wasAdded()) {
+                    nextAdd(change.getFrom(), change.getTo());
+                }
+            }
+        }
+        endChange();
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.github.sinakarimi.jdown.database;
+
+import com.github.sinakarimi.jdown.dataObjects.Status;
+import lombok.Getter;
+
+/**
+ * the latest not yet written values of one task, a field that was not changed is null
+ */
+@Getter
+class PendingUpdate {
+
+    private final long id;
+    private Status status;
+    private Double progression;
+    private String description;
+
+    PendingUpdate(long id) {
+        this.id = id;
+    }
+
+    PendingUpdate status(Status status) {
+        this.status = status;
+        return this;
+    }
+
+    PendingUpdate progression(double progression) {
+        this.progression = progression;
+        return this;
+    }
+
+    PendingUpdate description(String description) {
+        this.description = description;
+        return this;
+    }
+
+    /**
+     * fills the fields this update does not change with the values of an older update of the same task
+     */
+    PendingUpdate mergeOlder(PendingUpdate older) {
+        if (status == null) {
+            status = older.status;
+        }
+        if (progression == null) {
+            progression = older.progression;
+        }
+        if (description == null) {
+            description = older.description;
+        }
+        return this;
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.github.sinakarimi.jdown.database;
+
+import com.github.sinakarimi.jdown.download.Download;
+import com.github.sinakarimi.jdown.download.DownloadTask;
+
+import java.util.List;
+
+/**
+ * the progress and the segment offsets of one task at the time of a checkpoint
+ * @param segments empty for a task that was not probed yet and has no segments
+ */
+public record ProgressSnapshot(long taskId, double progression, List<DownloadTask> segments) {
+
+    public static ProgressSnapshot of(Download download) {
+        Long size = download.getSize();
+        double progression = size == null || size == 0 ? 0 : (double) download.getTotalBytesRead() / size;
+        List<DownloadTask> segments = download.getDownloadTasks() != null ? download.getDownloadTasks() : List.of();
+        return new ProgressSnapshot(download.getId(), progression, segments);
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.github.sinakarimi.jdown.database;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.configuration.DownloadSettings;
+import com.github.sinakarimi.jdown.download.Download;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * where the checkpoints of the running downloads are written, chosen with {@link ConfigurationConstants#PROGRESS_STORE}.
+ * {@link SqliteProgressStore} writes every checkpoint to the tasks table, {@link JournalProgressStore} appends them to
+ * a journal file that is compacted into the table from time to time
+ */
+public interface ProgressStore {
+
+    String SQLITE = "sqlite";
+    String JOURNAL = "journal";
+
+    void save(Collection<Download> downloads);
+
+    /**
+     * makes everything that was saved durable in the tasks table
+     */
+    void close();
+
+    static ProgressStore create(TaskStore tasksDAO, Path journalPath) throws IOException {
+        DownloadSettings settings = ConfigurationUtils.getSettings();
+        if (JOURNAL.equals(settings.progressStore())) {
+            return new JournalProgressStore(tasksDAO, journalPath, settings.journalSizeBytes(), settings.journalCompactionIntervalMillis());
+        }
+        return new SqliteProgressStore(tasksDAO);
+    }
+
+}
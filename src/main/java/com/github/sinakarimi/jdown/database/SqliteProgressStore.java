@@ -0,0 +1,30 @@
+package com.github.sinakarimi.jdown.database;
+
+import com.github.sinakarimi.jdown.download.Download;
+
+import java.util.Collection;
+
+/**
+ * writes every checkpoint to the tasks table in one transaction
+ */
+public class SqliteProgressStore implements ProgressStore {
+
+    private final TaskStore tasksDAO;
+
+    public SqliteProgressStore(TaskStore tasksDAO) {
+        this.tasksDAO = tasksDAO;
+    }
+
+    @Override
+    public void save(Collection<Download> downloads) {
+        // a queued progression must not be written after the newer one of the checkpoint
+        tasksDAO.flush();
+        tasksDAO.checkpoint(downloads);
+    }
+
+    @Override
+    public void close() {
+        // every checkpoint is already in the table
+    }
+
+}
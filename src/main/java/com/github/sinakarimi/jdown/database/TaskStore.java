@@ -0,0 +1,147 @@
+package com.github.sinakarimi.jdown.database;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.dataObjects.Status;
+import com.github.sinakarimi.jdown.download.Download;
+import com.github.sinakarimi.jdown.download.DownloadTask;
+import com.github.sinakarimi.jdown.download.HostProfile;
+import javafx.collections.ObservableList;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+/**
+ * where the download tasks and their segments are kept, chosen with {@link ConfigurationConstants#TASK_STORE}.
+ * {@link TasksDAO} keeps them in the SQLite database, {@link InMemoryTaskStore} only for the lifetime of the process
+ */
+public interface TaskStore {
+
+    String SQLITE = "sqlite";
+    String MEMORY = "memory";
+
+    /**
+     * the tasks shown in the downloads table, filled by {@link #loadActiveTasks()} and by the inserts
+     */
+    ObservableList<Download> getTasksList();
+
+    /**
+     * the inserts and deletes change {@link #getTasksList()} through the given executor, by default on the thread that
+     * called them. the list is shown in the table, so once the store is used off the FX thread its changes have to be
+     * handed to the FX thread. {@link #loadActiveTasks()} always fills the list right away
+     */
+    void setListExecutor(Executor listExecutor);
+
+    /**
+     * assigns the id of the download and adds it to {@link #getTasksList()}
+     */
+    void insert(Download download);
+
+    /**
+     * either all the given downloads are stored or none of them
+     */
+    void insertAll(List<Download> downloads);
+
+    void updateStatus(long id, Status status);
+
+    void updateDescription(long id, String description);
+
+    void updateProgression(long id, double progression);
+
+    /**
+     * writes the updates that were only queued so far
+     */
+    void flush();
+
+    /**
+     * replaces all the segments of a task
+     */
+    void updateSegments(long id, List<DownloadTask> downloadTasks);
+
+    /**
+     * @param index position of the segment in the segments of the task
+     */
+    void updateSegment(long id, int index, DownloadTask downloadTask);
+
+    default void checkpoint(Collection<Download> downloads) {
+        checkpointSnapshots(downloads.stream().map(ProgressSnapshot::of).toList());
+    }
+
+    /**
+     * stores the progress and the segments of all the snapshots at once, snapshots of deleted tasks are skipped
+     */
+    void checkpointSnapshots(Collection<ProgressSnapshot> snapshots);
+
+    void updateRemoteFile(long id, Long size, String etag, String lastModified);
+
+    /**
+     * stores the given status and the progress and segments of all the downloads at once, their status in memory is
+     * set by the caller
+     */
+    void updateAll(Collection<Download> downloads, Status status);
+
+    void delete(long id);
+
+    /**
+     * deletes all the given tasks at once
+     */
+    void delete(Collection<Long> ids);
+
+    void deleteAll();
+
+    /**
+     * puts the unfinished and the recently finished tasks into {@link #getTasksList()}, nothing is resumed here
+     */
+    void loadActiveTasks();
+
+    /**
+     * @return number of finished tasks that are not in {@link #getTasksList()}
+     */
+    int countHistory();
+
+    /**
+     * a page of the finished tasks that are not in {@link #getTasksList()}, the most recently touched first
+     */
+    List<Download> loadHistoryPage(int offset, int limit);
+
+    /**
+     * @return number of tasks whose name, url, description or type contain words starting with every word of the query
+     */
+    int countSearch(String query);
+
+    /**
+     * a page of the tasks matching the query, see {@link #countSearch(String)}
+     */
+    List<Download> search(String query, int offset, int limit);
+
+    /**
+     * @return number of tasks moved out of the history by {@link DatabaseMaintenance}
+     */
+    int countArchive();
+
+    /**
+     * a page of the archived tasks, the most recently touched first. they have no segments
+     */
+    List<Download> loadArchivePage(int offset, int limit);
+
+    Optional<Download> getTaskById(long id);
+
+    List<HostProfile> loadHostProfiles();
+
+    /**
+     * replaces the stored profiles of the hosts of the given profiles
+     */
+    void saveHostProfiles(Collection<HostProfile> profiles);
+
+    void close();
+
+    static TaskStore create(String dbName) {
+        if (MEMORY.equals(ConfigurationUtils.getSettings().taskStore())) {
+            return new InMemoryTaskStore();
+        }
+        return TasksDAO.getInstance(dbName);
+    }
+
+}
@@ -4,37 +4,230 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
 import com.github.sinakarimi.jdown.dataObjects.Range;
 import com.github.sinakarimi.jdown.dataObjects.Status;
 import com.github.sinakarimi.jdown.download.Download;
 import com.github.sinakarimi.jdown.download.DownloadTask;
+import com.github.sinakarimi.jdown.download.HostProfile;
 import com.github.sinakarimi.jdown.exception.DatabaseException;
 import com.github.sinakarimi.jdown.serialization.RangeDeserializer;
 import com.github.sinakarimi.jdown.serialization.RangeSerializer;
 import javafx.beans.property.SimpleDoubleProperty;
-import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 
 @Slf4j
-public class TasksDAO {
+public class TasksDAO implements TaskStore {
+
+    private static final String TASKS_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS TASKS (
+                ID INTEGER PRIMARY KEY AUTOINCREMENT,
+                NAME TEXT NOT NULL,
+                TYPE TEXT,
+                STATUS TEXT,
+                SIZE LONG,
+                SAVEPATH TEXT,
+                URL TEXT,
+                RESUMABLE INTEGER,
+                DESCRIPTION TEXT,
+                PROGRESSION REAL,
+                ETAG TEXT,
+                LAST_MODIFIED TEXT,
+                UPDATED_AT INTEGER NOT NULL DEFAULT 0
+            );
+            """;
+    /**
+     * finished tasks are paged by the time they were last touched, the index only covers them
+     */
+    private static final String HISTORY_INDEX_SQL = """
+            CREATE INDEX IF NOT EXISTS TASKS_HISTORY ON TASKS(UPDATED_AT DESC, ID DESC) WHERE STATUS IN ('COMPLETED', 'CANCELED');
+            """;
+    /**
+     * finished tasks older than {@link ConfigurationConstants#ARCHIVE_AFTER_DAYS} are moved here, without segments
+     */
+    private static final String ARCHIVE_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS TASKS_ARCHIVE (
+                ID INTEGER PRIMARY KEY,
+                NAME TEXT NOT NULL,
+                TYPE TEXT,
+                STATUS TEXT,
+                SIZE LONG,
+                SAVEPATH TEXT,
+                URL TEXT,
+                DESCRIPTION TEXT,
+                PROGRESSION REAL,
+                UPDATED_AT INTEGER NOT NULL
+            );
+            """;
+    private static final String ARCHIVE_INDEX_SQL = """
+            CREATE INDEX IF NOT EXISTS TASKS_ARCHIVE_UPDATED ON TASKS_ARCHIVE(UPDATED_AT DESC, ID DESC);
+            """;
+    /**
+     * full text index of the tasks, its content is read from TASKS. the triggers keep it in sync on every insert and
+     * delete and on updates of the indexed columns, so the frequent status and progress updates do not touch it
+     */
+    private static final String SEARCH_TABLE_SQL = """
+            CREATE VIRTUAL TABLE IF NOT EXISTS TASKS_SEARCH USING fts5(
+                NAME, URL, DESCRIPTION, TYPE, content = 'TASKS', content_rowid = 'ID'
+            );
+            """;
+    private static final List<String> SEARCH_TRIGGERS_SQL = List.of("""
+            CREATE TRIGGER IF NOT EXISTS TASKS_SEARCH_INSERT AFTER INSERT ON TASKS BEGIN
+                INSERT INTO TASKS_SEARCH(rowid, NAME, URL, DESCRIPTION, TYPE) VALUES (new.ID, new.NAME, new.URL, new.DESCRIPTION, new.TYPE);
+            END;
+            """, """
+            CREATE TRIGGER IF NOT EXISTS TASKS_SEARCH_DELETE AFTER DELETE ON TASKS BEGIN
+                INSERT INTO TASKS_SEARCH(TASKS_SEARCH, rowid, NAME, URL, DESCRIPTION, TYPE) VALUES ('delete', old.ID, old.NAME, old.URL, old.DESCRIPTION, old.TYPE);
+            END;
+            """, """
+            CREATE TRIGGER IF NOT EXISTS TASKS_SEARCH_UPDATE AFTER UPDATE OF NAME, URL, DESCRIPTION, TYPE ON TASKS BEGIN
+                INSERT INTO TASKS_SEARCH(TASKS_SEARCH, rowid, NAME, URL, DESCRIPTION, TYPE) VALUES ('delete', old.ID, old.NAME, old.URL, old.DESCRIPTION, old.TYPE);
+                INSERT INTO TASKS_SEARCH(rowid, NAME, URL, DESCRIPTION, TYPE) VALUES (new.ID, new.NAME, new.URL, new.DESCRIPTION, new.TYPE);
+            END;
+            """);
+    /**
+     * full text index of the archived tasks, searched together with TASKS_SEARCH. archived tasks are only inserted
+     * and deleted
+     */
+    private static final String ARCHIVE_SEARCH_TABLE_SQL = """
+            CREATE VIRTUAL TABLE IF NOT EXISTS ARCHIVE_SEARCH USING fts5(
+                NAME, URL, DESCRIPTION, TYPE, content = 'TASKS_ARCHIVE', content_rowid = 'ID'
+            );
+            """;
+    private static final List<String> ARCHIVE_SEARCH_TRIGGERS_SQL = List.of("""
+            CREATE TRIGGER IF NOT EXISTS ARCHIVE_SEARCH_INSERT AFTER INSERT ON TASKS_ARCHIVE BEGIN
+                INSERT INTO ARCHIVE_SEARCH(rowid, NAME, URL, DESCRIPTION, TYPE) VALUES (new.ID, new.NAME, new.URL, new.DESCRIPTION, new.TYPE);
+            END;
+            """, """
+            CREATE TRIGGER IF NOT EXISTS ARCHIVE_SEARCH_DELETE AFTER DELETE ON TASKS_ARCHIVE BEGIN
+                INSERT INTO ARCHIVE_SEARCH(ARCHIVE_SEARCH, rowid, NAME, URL, DESCRIPTION, TYPE) VALUES ('delete', old.ID, old.NAME, old.URL, old.DESCRIPTION, old.TYPE);
+            END;
+            """);
+    private static final String SEGMENTS_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS SEGMENTS (
+                TASK_ID INTEGER NOT NULL,
+                SEGMENT_INDEX INTEGER NOT NULL,
+                RANGE_FROM INTEGER NOT NULL,
+                RANGE_TO INTEGER NOT NULL,
+                WRITTEN INTEGER NOT NULL,
+                COMPLETED INTEGER NOT NULL,
+                PRIMARY KEY (TASK_ID, SEGMENT_INDEX)
+            ) WITHOUT ROWID;
+            """;
+    private static final String HOST_PROFILES_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS HOST_PROFILES (
+                HOST TEXT PRIMARY KEY,
+                CONNECTION_THROUGHPUT INTEGER NOT NULL,
+                BEST_SEGMENTS INTEGER NOT NULL,
+                BEST_THROUGHPUT INTEGER NOT NULL,
+                CEILING_SEGMENTS INTEGER NOT NULL,
+                RANGE_SUPPORTED INTEGER,
+                HTTP2 INTEGER,
+                REQUESTS INTEGER NOT NULL,
+                ERRORS INTEGER NOT NULL,
+                THROTTLED INTEGER NOT NULL,
+                UPDATED_AT INTEGER NOT NULL
+            ) WITHOUT ROWID;
+            """;
+    private static final String UPSERT_HOST_PROFILE_SQL = """
+            INSERT OR REPLACE INTO HOST_PROFILES(HOST, CONNECTION_THROUGHPUT, BEST_SEGMENTS, BEST_THROUGHPUT, CEILING_SEGMENTS, RANGE_SUPPORTED, HTTP2, REQUESTS, ERRORS, THROTTLED, UPDATED_AT)
+            VALUES (? , ? , ? , ? , ? , ? , ? , ? , ? , ? , ?);
+            """;
+    private static final String INSERT_SQL = """
+            INSERT INTO TASKS(NAME, TYPE, STATUS, SIZE, SAVEPATH, URL, RESUMABLE, PROGRESSION, DESCRIPTION, ETAG, LAST_MODIFIED, UPDATED_AT) VALUES (? , ? , ? , ? , ? , ? , ? , ? , ? , ? , ? , ?);
+            """;
+    private static final String UPSERT_SEGMENT_SQL = """
+            INSERT INTO SEGMENTS(TASK_ID, SEGMENT_INDEX, RANGE_FROM, RANGE_TO, WRITTEN, COMPLETED) VALUES (? , ? , ? , ? , ? , ?)
+            ON CONFLICT(TASK_ID, SEGMENT_INDEX) DO UPDATE SET
+                RANGE_FROM = excluded.RANGE_FROM,
+                RANGE_TO = excluded.RANGE_TO,
+                WRITTEN = excluded.WRITTEN,
+                COMPLETED = excluded.COMPLETED;
+            """;
+    private static final String DELETE_SEGMENTS_SQL = """
+            DELETE FROM SEGMENTS WHERE TASK_ID = ?;
+            """;
+    private static final String DELETE_SQL = """
+            DELETE FROM TASKS WHERE ID = ?;
+            """;
+    private static final String DELETE_ARCHIVED_SQL = """
+            DELETE FROM TASKS_ARCHIVE WHERE ID = ?;
+            """;
+
+    /**
+     * WAL lets the UI read while a checkpoint is written, and with it NORMAL synchronous is still crash safe
+     */
+    private static final List<String> PRAGMAS = List.of(
+            "PRAGMA journal_mode = WAL;",
+            "PRAGMA synchronous = NORMAL;",
+            "PRAGMA cache_size = -8000;",
+            "PRAGMA temp_store = MEMORY;",
+            "PRAGMA busy_timeout = 5000;"
+    );
+
+    private static final String UPDATE_STATUS_SQL = """
+            UPDATE TASKS SET STATUS = ?, UPDATED_AT = ? WHERE ID = ?;
+            """;
+    private static final String UPDATE_PROGRESSION_SQL = """
+            UPDATE TASKS SET PROGRESSION = ? WHERE ID = ?;
+            """;
+    private static final String UPDATE_STATE_SQL = """
+            UPDATE TASKS SET STATUS = ?, PROGRESSION = ?, UPDATED_AT = ? WHERE ID = ?;
+            """;
+    private static final String UPDATE_DESCRIPTION_SQL = """
+            UPDATE TASKS SET DESCRIPTION = ? WHERE ID = ?;
+            """;
+    private static final int INCREMENTAL_AUTO_VACUUM = 2;
 
     private String DB_URL = "jdbc:sqlite:";
     private static TasksDAO INSTANCE = null;
     private final ObjectMapper mapper;
 
+    /**
+     * one connection for the whole application, every method runs while holding the lock of the dao.
+     * prepared statements are kept per sql text and reused
+     */
+    private Connection connection;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+    private final WriteBehindQueue writeBehind;
+
     /**
      * utility class used to create Collection Framework classes. provides the same functionalities
      */
     @Getter
     private final ObservableList<Download> tasksList = FXCollections.observableArrayList();
+    /**
+     * the downloads of {@link #tasksList} by their id, kept in sync by a listener of the list so updates do not
+     * have to search it
+     */
+    private final Map<Long, Download> tasksById = new ConcurrentHashMap<>();
+    /**
+     * finished tasks last touched before this time are not in {@link #tasksList}, they are the history that is read
+     * in pages. fixed when the active tasks are loaded, so a task is either in the list or in the history
+     */
+    private volatile long historyCutoff = 0;
+    private volatile Executor listExecutor = Runnable::run;
 
     public static TasksDAO getInstance(String dbName) {
         if (INSTANCE == null) {
@@ -54,235 +247,1147 @@ public class TasksDAO {
         module.addKeyDeserializer(Range.class, new RangeDeserializer());
         mapper = new ObjectMapper();
         mapper.registerModule(module);
+
+        tasksList.addListener(this::indexTasks);
+
+        writeBehind = new WriteBehindQueue(this::writeUpdates, ConfigurationUtils.getSettings().writeBehindIntervalMillis());
     }
 
-    private void createTable() {
-        String sql = """
-                CREATE TABLE IF NOT EXISTS TASKS (
-                    NAME TEXT PRIMARY KEY,
-                    TYPE TEXT,
-                    STATUS TEXT,
-                    SIZE LONG,
-                    SAVEPATH TEXT,
-                    URL TEXT,
-                    RESUMABLE INTEGER,
-                    DESCRIPTION TEXT,
-                    PROGRESSION REAL,
-                    DATA TEXT
-                );
-                """;
+    private void indexTasks(ListChangeListener.Change<? extends Download> change) {
+        while (change.next()) {
+            // a download that was loaded twice stays indexed by its latest copy
+            change.getRemoved().forEach(d -> tasksById.remove(d.getId(), d));
+            change.getAddedSubList().forEach(d -> tasksById.put(d.getId(), d));
+        }
+    }
 
-        try (Connection connection = DriverManager.getConnection(DB_URL);
-             PreparedStatement ps = connection.prepareStatement(sql)) {
+    private synchronized Connection connection() throws SQLException {
+        if (connection == null || connection.isClosed()) {
+            statements.clear();
+            connection = DriverManager.getConnection(DB_URL);
+            try (Statement statement = connection.createStatement()) {
+                for (String pragma : PRAGMAS) {
+                    statement.execute(pragma);
+                }
+            }
+            log.info("opened database connection to {}", DB_URL);
+        }
+        return connection;
+    }
 
-            ps.execute();
+    private synchronized PreparedStatement statement(String sql) throws SQLException {
+        Connection current = connection();
+        PreparedStatement ps = statements.get(sql);
+        if (ps == null) {
+            ps = current.prepareStatement(sql);
+            statements.put(sql, ps);
+        }
+        return ps;
+    }
+
+    /**
+     * the values the connection runs with for each of the {@link #PRAGMAS}, by the name of the pragma
+     */
+    public synchronized Map<String, String> connectionSettings() {
+        Map<String, String> settings = new LinkedHashMap<>();
+        try (Statement statement = connection().createStatement()) {
+            for (String pragma : PRAGMAS) {
+                String name = pragma.split("\\s+")[1];
+                try (ResultSet resultSet = statement.executeQuery(String.format("PRAGMA %s;", name))) {
+                    settings.put(name, resultSet.next() ? resultSet.getString(1) : null);
+                }
+            }
+        } catch (SQLException e) {
+            log.error("failed to read the connection settings", e);
+            throw new DatabaseException("failed to read the connection settings", e);
+        }
+        return settings;
+    }
+
+    /**
+     * number of prepared statements kept for reuse, one per distinct sql text
+     */
+    public synchronized int cachedStatements() {
+        return statements.size();
+    }
+
+    /**
+     * writes the queued updates, then closes the cached statements and the connection
+     */
+    @Override
+    public void close() {
+        writeBehind.shutdown();
+        closeConnection();
+    }
+
+    private synchronized void closeConnection() {
+        try {
+            closeStatements();
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            log.error("failed to close the database connection", e);
+        }
+    }
+
+    private synchronized void closeStatements() throws SQLException {
+        for (PreparedStatement ps : statements.values()) {
+            ps.close();
+        }
+        statements.clear();
+    }
+
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            log.error("failed to roll back the transaction", e);
+        }
+    }
+
+    private void restoreAutoCommit() {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            log.error("failed to restore auto commit on the database connection", e);
+        }
+    }
+
+    private synchronized void createTable() {
+        try (Statement statement = connection().createStatement()) {
+
+            // only takes effect on a new database, existing ones are switched by enableIncrementalVacuum
+            statement.execute("PRAGMA auto_vacuum = INCREMENTAL;");
+            if (hasColumn(connection, "TASKS", "NAME") && !hasColumn(connection, "TASKS", "ID")) {
+                migrateFromNameKey();
+            }
+            statement.execute(TASKS_TABLE_SQL);
+            statement.execute(SEGMENTS_TABLE_SQL);
+            statement.execute(HISTORY_INDEX_SQL);
+            statement.execute(ARCHIVE_TABLE_SQL);
+            statement.execute(ARCHIVE_INDEX_SQL);
+            createSearchIndex(statement, "TASKS_SEARCH", SEARCH_TABLE_SQL, SEARCH_TRIGGERS_SQL);
+            createSearchIndex(statement, "ARCHIVE_SEARCH", ARCHIVE_SEARCH_TABLE_SQL, ARCHIVE_SEARCH_TRIGGERS_SQL);
+            statement.execute(HOST_PROFILES_TABLE_SQL);
         } catch (Exception e) {
             log.error("failed to create tasks table in the database", e);
             throw new DatabaseException("failed to create tasks table in the database", e);
         }
     }
 
-    public void insert(Download download) {
-        log.info("inserting download task {} into the database", download.getName());
-        String sql = """
-                INSERT INTO TASKS(NAME, TYPE, STATUS, SIZE, SAVEPATH, URL, RESUMABLE, PROGRESSION, DESCRIPTION, DATA) VALUES (? , ? , ? , ? , ? , ? , ? , ? , ? , ?);
+    /**
+     * the pages freed by archiving are only given back to the file system by {@link #maintain} when auto vacuum is
+     * incremental. databases of older versions are switched by vacuuming them as a whole once, which takes a while on
+     * a large database, so it is left to {@link DatabaseMaintenance}
+     */
+    public synchronized void enableIncrementalVacuum() {
+        try (Statement statement = connection().createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("PRAGMA auto_vacuum;")) {
+                if (resultSet.next() && resultSet.getInt(1) == INCREMENTAL_AUTO_VACUUM) {
+                    return;
+                }
+            }
+
+            // a vacuum fails while any of the cached statements is still open
+            closeStatements();
+            statement.execute("PRAGMA auto_vacuum = INCREMENTAL;");
+            statement.execute("VACUUM;");
+            log.info("switched the database to incremental auto vacuum");
+        } catch (Exception e) {
+            log.error("failed to switch the database to incremental auto vacuum", e);
+            throw new DatabaseException("failed to switch the database to incremental auto vacuum", e);
+        }
+    }
+
+    private void createSearchIndex(Statement statement, String index, String tableSql, List<String> triggersSql) throws SQLException {
+        boolean exists;
+        try (ResultSet resultSet = statement.executeQuery(String.format("SELECT 1 FROM sqlite_master WHERE NAME = '%s';", index))) {
+            exists = resultSet.next();
+        }
+
+        statement.execute(tableSql);
+        for (String trigger : triggersSql) {
+            statement.execute(trigger);
+        }
+        if (!exists) {
+            // the tasks of a database from an older version are indexed once
+            statement.execute(String.format("INSERT INTO %1$s(%1$s) VALUES ('rebuild');", index));
+            log.info("created the search index {}", index);
+        }
+    }
+
+    /**
+     * the first version used the name as the primary key of a task and kept its segments as a JSON list in the DATA
+     * column. sqlite cannot change the key of a table, so the table is created again with an ID column, the rows are
+     * copied and the segments are moved into the SEGMENTS table, all in one transaction
+     */
+    private void migrateFromNameKey() throws SQLException, JsonProcessingException {
+        String copyTasksSql = """
+                INSERT INTO TASKS(NAME, TYPE, STATUS, SIZE, SAVEPATH, URL, RESUMABLE, DESCRIPTION, PROGRESSION)
+                SELECT NAME, TYPE, STATUS, SIZE, SAVEPATH, URL, RESUMABLE, DESCRIPTION, PROGRESSION
+                FROM TASKS_OLD ORDER BY rowid;
                 """;
+        String segmentDataSql = """
+                SELECT t.ID, o.DATA FROM TASKS_OLD o JOIN TASKS t ON t.NAME = o.NAME WHERE o.DATA IS NOT NULL;
+                """;
+
+        try (Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(false);
 
-        try (Connection connection = DriverManager.getConnection(DB_URL);
-             PreparedStatement ps = connection.prepareStatement(sql)) {
+            statement.execute("ALTER TABLE TASKS RENAME TO TASKS_OLD;");
+            statement.execute(TASKS_TABLE_SQL);
+            statement.execute(SEGMENTS_TABLE_SQL);
+            statement.execute(copyTasksSql);
 
-            ps.setString(1, download.getName());
-            ps.setString(2, download.getType());
-            ps.setString(3, download.getStatusProperty().get().name());
-            ps.setLong(4, download.getSize());
-            ps.setString(5, download.getSavePath());
-            ps.setString(6, download.getDownloadUrl());
-            ps.setBoolean(7, download.getResumable());
-            ps.setDouble(8, 0);
+            int migrated = 0;
+            try (PreparedStatement select = connection.prepareStatement(segmentDataSql);
+                 PreparedStatement upsert = connection.prepareStatement(UPSERT_SEGMENT_SQL);
+                 ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    List<DownloadTask> downloadTasks = mapper.readValue(resultSet.getString("DATA"), new TypeReference<>() {});
+                    if (downloadTasks != null) {
+                        addSegmentsBatch(upsert, resultSet.getLong("ID"), downloadTasks);
+                        migrated++;
+                    }
+                }
+                upsert.executeBatch();
+            }
+            statement.execute("DROP TABLE TASKS_OLD;");
 
-            // to avoid further exceptions
-            String valueSafe = download.getDescriptionProperty() != null ? download.getDescriptionProperty().getValueSafe() : "";
-            ps.setString(9, valueSafe);
+            connection.commit();
+            log.info("moved the tasks table to a numeric primary key and the segments of {} tasks into the segments table", migrated);
+        } catch (SQLException | JsonProcessingException e) {
+            rollback();
+            throw e;
+        } finally {
+            restoreAutoCommit();
+        }
+    }
+
+    private void addSegmentsBatch(PreparedStatement ps, long id, List<DownloadTask> downloadTasks) throws SQLException {
+        for (int i = 0; i < downloadTasks.size(); i++) {
+            bindSegmentParameters(ps, id, i, downloadTasks.get(i));
+            ps.addBatch();
+        }
+    }
+
+    private void bindSegmentParameters(PreparedStatement ps, long id, int index, DownloadTask task) throws SQLException {
+        ps.setLong(1, id);
+        ps.setInt(2, index);
+        ps.setInt(3, task.getRange().getFrom());
+        ps.setInt(4, task.getRange().getTo());
+        ps.setInt(5, task.getWritten());
+        ps.setBoolean(6, task.isCompleted());
+    }
 
-            String data = mapper.writeValueAsString(download.getDownloadTasks());
-            ps.setString(10, data);
+    /**
+     * @return false also if the table does not exist
+     */
+    private boolean hasColumn(Connection connection, String table, String column) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(String.format("PRAGMA table_info(%s);", table));
+             ResultSet resultSet = ps.executeQuery()) {
+
+            while (resultSet.next()) {
+                if (column.equalsIgnoreCase(resultSet.getString("name"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void setListExecutor(Executor listExecutor) {
+        this.listExecutor = listExecutor;
+    }
 
+    @Override
+    public synchronized void insert(Download download) {
+        log.info("inserting download task {} into the database", download.getName());
+
+        try {
+            PreparedStatement ps = statement(INSERT_SQL);
+            PreparedStatement segmentsPs = statement(UPSERT_SEGMENT_SQL);
+
+            connection.setAutoCommit(false);
+
+            bindInsertParameters(ps, download);
             int i = ps.executeUpdate();
+            download.setId(lastInsertId());
+            if (download.getDownloadTasks() != null) {
+                addSegmentsBatch(segmentsPs, download.getId(), download.getDownloadTasks());
+                segmentsPs.executeBatch();
+            }
+
+            connection.commit();
             log.info("{} record inserted for task {}", i, download.getName());
 
-            tasksList.add(download);
+            listExecutor.execute(() -> tasksList.add(download));
         } catch (Exception e) {
+            rollback();
             log.error("failed to insert download task {} in to the database", download, e);
             throw new DatabaseException("failed to insert a download task in to the database", e);
+        } finally {
+            restoreAutoCommit();
         }
     }
 
-    public void insertAll(List<Download> downloads) {
-        for (Download download: downloads) {
-            insert(download);
+    /**
+     * inserts all the given downloads as one JDBC batch inside a single transaction, either all of them
+     * are persisted or none of them
+     */
+    @Override
+    public synchronized void insertAll(List<Download> downloads) {
+        log.info("inserting {} download tasks into the database", downloads.size());
+
+        try {
+            PreparedStatement ps = statement(INSERT_SQL);
+            PreparedStatement segmentsPs = statement(UPSERT_SEGMENT_SQL);
+
+            connection.setAutoCommit(false);
+
+            for (Download download : downloads) {
+                bindInsertParameters(ps, download);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+
+            // the transaction holds the write lock and AUTOINCREMENT hands out increasing ids, so the rows of the
+            // batch got the ids up to the last one in their order
+            long firstId = lastInsertId() - downloads.size() + 1;
+            for (int i = 0; i < downloads.size(); i++) {
+                Download download = downloads.get(i);
+                download.setId(firstId + i);
+                if (download.getDownloadTasks() != null) {
+                    addSegmentsBatch(segmentsPs, download.getId(), download.getDownloadTasks());
+                }
+            }
+
+            segmentsPs.executeBatch();
+            connection.commit();
+            log.info("{} records inserted in one transaction", downloads.size());
+
+            listExecutor.execute(() -> tasksList.addAll(downloads));
+        } catch (Exception e) {
+            rollback();
+            log.error("failed to insert {} download tasks in to the database", downloads.size(), e);
+            throw new DatabaseException("failed to insert download tasks in to the database", e);
+        } finally {
+            restoreAutoCommit();
         }
     }
 
-    public void updateStatus(String pk, Status status) {
-        log.info("updating status of task with pk {} into the database", pk);
-        String sql = """
-                UPDATE TASKS SET STATUS = ? WHERE NAME = ?;
-                """;
+    private long lastInsertId() throws SQLException {
+        try (ResultSet resultSet = statement("SELECT last_insert_rowid();").executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
 
-        try (Connection connection = DriverManager.getConnection(DB_URL);
-             PreparedStatement ps = connection.prepareStatement(sql)) {
+    private void bindInsertParameters(PreparedStatement ps, Download download) throws SQLException {
+        ps.setString(1, download.getName());
+        ps.setString(2, download.getType());
+        ps.setString(3, download.getStatus().name());
+        ps.setLong(4, download.getSize());
+        ps.setString(5, download.getSavePath());
+        ps.setString(6, download.getDownloadUrl());
+        ps.setBoolean(7, download.getResumable());
+        ps.setDouble(8, 0);
 
-            ps.setString(1, status.getValue());
-            ps.setString(2, pk);
+        // to avoid further exceptions
+        String valueSafe = download.getDescriptionProperty() != null ? download.getDescriptionProperty().getValueSafe() : "";
+        ps.setString(9, valueSafe);
 
-            int i = ps.executeUpdate();
+        ps.setString(10, download.getEtag());
+        ps.setString(11, download.getLastModified());
+        ps.setLong(12, System.currentTimeMillis());
+    }
 
-            for (Download download : tasksList) {
-                if (download.getName().equals(pk)) {
-                    download.setStatus(status);
+    /**
+     * the task in the list is updated right away, the row is written later by the write-behind queue
+     */
+    @Override
+    public void updateStatus(long id, Status status) {
+        log.info("queueing status update of task with id {}", id);
+        Download download = tasksById.get(id);
+        if (download != null) {
+            download.setStatus(status);
+        }
+
+        writeBehind.status(id, status);
+    }
+
+    @Override
+    public void updateDescription(long id, String description) {
+        log.info("queueing description update of task with id {}", id);
+        Download download = tasksById.get(id);
+        if (download != null) {
+            download.setDescription(description);
+        }
+
+        writeBehind.description(id, description);
+    }
+
+    @Override
+    public void updateProgression(long id, double progression) {
+        log.info("queueing progression update of task with id {}", id);
+        Download download = tasksById.get(id);
+        if (download != null) {
+            download.setProgress(progression);
+        }
+
+        writeBehind.progression(id, progression);
+    }
+
+    /**
+     * writes the queued status, progression and description updates now instead of waiting for the writer thread
+     */
+    @Override
+    public void flush() {
+        writeBehind.flush();
+    }
+
+    public int pendingUpdates() {
+        return writeBehind.size();
+    }
+
+    /**
+     * writes a batch of the write-behind queue in one transaction
+     */
+    private synchronized void writeUpdates(List<PendingUpdate> updates) {
+        log.info("writing {} queued task updates into the database", updates.size());
+
+        try {
+            PreparedStatement statusPs = statement(UPDATE_STATUS_SQL);
+            PreparedStatement progressionPs = statement(UPDATE_PROGRESSION_SQL);
+            PreparedStatement descriptionPs = statement(UPDATE_DESCRIPTION_SQL);
+
+            connection.setAutoCommit(false);
+            long now = System.currentTimeMillis();
+
+            for (PendingUpdate update : updates) {
+                if (update.getStatus() != null) {
+                    statusPs.setString(1, update.getStatus().name());
+                    statusPs.setLong(2, now);
+                    statusPs.setLong(3, update.getId());
+                    statusPs.addBatch();
+                }
+                if (update.getProgression() != null) {
+                    progressionPs.setDouble(1, update.getProgression());
+                    progressionPs.setLong(2, update.getId());
+                    progressionPs.addBatch();
+                }
+                if (update.getDescription() != null) {
+                    descriptionPs.setString(1, update.getDescription());
+                    descriptionPs.setLong(2, update.getId());
+                    descriptionPs.addBatch();
                 }
             }
 
-            log.info("{} record updated for task with pk {}", i, pk);
+            statusPs.executeBatch();
+            progressionPs.executeBatch();
+            descriptionPs.executeBatch();
+            connection.commit();
+        } catch (Exception e) {
+            rollback();
+            log.error("failed to write {} queued task updates in to the database", updates.size(), e);
+            throw new DatabaseException("failed to write queued task updates in to the database", e);
+        } finally {
+            restoreAutoCommit();
+        }
+    }
+
+    /**
+     * replaces all the segments of a task, used when the segments of the task are created again
+     */
+    @Override
+    public synchronized void updateSegments(long id, List<DownloadTask> downloadTasks) {
+        log.info("updating segments of task with id {} into the database", id);
+
+        try {
+            PreparedStatement deletePs = statement(DELETE_SEGMENTS_SQL);
+            PreparedStatement upsertPs = statement(UPSERT_SEGMENT_SQL);
+
+            connection.setAutoCommit(false);
+
+            deletePs.setLong(1, id);
+            deletePs.executeUpdate();
+            addSegmentsBatch(upsertPs, id, downloadTasks);
+            int[] results = upsertPs.executeBatch();
+
+            connection.commit();
+            log.info("{} segments written for task with id {}", results.length, id);
         } catch (Exception e) {
-            log.error("failed to update task with id {} in to the database", pk, e);
+            rollback();
+            log.error("failed to update task with id {} in to the database", id, e);
             throw new DatabaseException("failed to update a task in to the database", e);
+        } finally {
+            restoreAutoCommit();
         }
     }
 
-    public void updateDescription(String pk, String description) {
-        log.info("updating description of task with pk {} into the database", pk);
-        String sql = """
-                UPDATE TASKS SET DESCRIPTION = ? WHERE NAME = ?;
-                """;
+    /**
+     * persists the state of a single segment, most importantly how much of it is written
+     * @param index position of the segment in the segments of the task
+     */
+    @Override
+    public synchronized void updateSegment(long id, int index, DownloadTask downloadTask) {
+        try {
+            PreparedStatement ps = statement(UPSERT_SEGMENT_SQL);
 
-        try (Connection connection = DriverManager.getConnection(DB_URL);
-             PreparedStatement ps = connection.prepareStatement(sql)) {
+            bindSegmentParameters(ps, id, index, downloadTask);
+            ps.executeUpdate();
+        } catch (Exception e) {
+            log.error("failed to update segment {} of task with id {} in to the database", index, id, e);
+            throw new DatabaseException("failed to update a segment in to the database", e);
+        }
+    }
 
-            ps.setString(1, description);
-            ps.setString(2, pk);
+    /**
+     * persists the given progress snapshots in a single transaction, snapshots of deleted tasks are skipped
+     */
+    @Override
+    public synchronized void checkpointSnapshots(Collection<ProgressSnapshot> snapshots) {
+        log.info("checkpointing {} downloads into the database", snapshots.size());
+        try {
+            PreparedStatement ps = statement(UPDATE_PROGRESSION_SQL);
+            PreparedStatement segmentsPs = statement(UPSERT_SEGMENT_SQL);
 
-            int i = ps.executeUpdate();
+            connection.setAutoCommit(false);
 
-            for (Download download : tasksList) {
-                if (download.getName().equals(pk)) {
-                    download.setDescription(description);
+            for (ProgressSnapshot snapshot : snapshots) {
+                ps.setDouble(1, snapshot.progression());
+                ps.setLong(2, snapshot.taskId());
+                ps.addBatch();
+            }
+            int[] results = ps.executeBatch();
+
+            int i = 0;
+            for (ProgressSnapshot snapshot : snapshots) {
+                // row level updates, the other segments of the task are not rewritten
+                if (results[i++] > 0) {
+                    addSegmentsBatch(segmentsPs, snapshot.taskId(), snapshot.segments());
                 }
             }
+            segmentsPs.executeBatch();
 
-            log.info("{} record updated for task with pk {}", i, pk);
+            connection.commit();
+            log.info("{} records checkpointed in one transaction", results.length);
         } catch (Exception e) {
-            log.error("failed to update task with id {} in to the database", pk, e);
-            throw new DatabaseException("failed to update a task in to the database", e);
+            rollback();
+            log.error("failed to checkpoint {} downloads in to the database", snapshots.size(), e);
+            throw new DatabaseException("failed to checkpoint downloads in to the database", e);
+        } finally {
+            restoreAutoCommit();
         }
     }
 
-    public void updateProgression(String pk, double progression) {
-        log.info("updating progression of task with pk {} into the database", pk);
+    /**
+     * persists what is known about the remote file after it was probed again
+     */
+    @Override
+    public synchronized void updateRemoteFile(long id, Long size, String etag, String lastModified) {
+        log.info("updating remote file info of task with id {} into the database", id);
         String sql = """
-                UPDATE TASKS SET PROGRESSION = ? WHERE NAME = ?;
+                UPDATE TASKS SET SIZE = ?, ETAG = ?, LAST_MODIFIED = ?, PROGRESSION = 0 WHERE ID = ?;
                 """;
 
-        try (Connection connection = DriverManager.getConnection(DB_URL);
-             PreparedStatement ps = connection.prepareStatement(sql)) {
+        try {
+            PreparedStatement ps = statement(sql);
 
-            ps.setDouble(1, progression);
-            ps.setString(2, pk);
+            ps.setLong(1, size);
+            ps.setString(2, etag);
+            ps.setString(3, lastModified);
+            ps.setLong(4, id);
 
             int i = ps.executeUpdate();
+            log.info("{} record updated for task with id {}", i, id);
+        } catch (Exception e) {
+            log.error("failed to update task with id {} in to the database", id, e);
+            throw new DatabaseException("failed to update a task in to the database", e);
+        }
+    }
+
+    @Override
+    public void updateAll(Collection<Download> downloads, Status status) {
+        log.info("updating {} tasks to status {} in one transaction", downloads.size(), status);
+        List<ProgressSnapshot> snapshots = downloads.stream().map(ProgressSnapshot::of).toList();
+
+        // a queued update of one of the tasks must not be written over this one later
+        writeBehind.flush();
+        synchronized (this) {
+            try {
+                PreparedStatement ps = statement(UPDATE_STATE_SQL);
+                PreparedStatement deleteSegmentsPs = statement(DELETE_SEGMENTS_SQL);
+                PreparedStatement segmentsPs = statement(UPSERT_SEGMENT_SQL);
 
-            for (Download download : tasksList) {
-                if (download.getName().equals(pk)) {
-                    download.setProgress(progression);
+                connection.setAutoCommit(false);
+                long now = System.currentTimeMillis();
+
+                for (ProgressSnapshot snapshot : snapshots) {
+                    ps.setString(1, status.name());
+                    ps.setDouble(2, snapshot.progression());
+                    ps.setLong(3, now);
+                    ps.setLong(4, snapshot.taskId());
+                    ps.addBatch();
+                }
+                int[] results = ps.executeBatch();
+
+                int i = 0;
+                for (ProgressSnapshot snapshot : snapshots) {
+                    // the segments are replaced, like a single pause does, and skipped for tasks that were deleted
+                    if (results[i++] > 0 && snapshot.segments() != null) {
+                        deleteSegmentsPs.setLong(1, snapshot.taskId());
+                        deleteSegmentsPs.addBatch();
+                        addSegmentsBatch(segmentsPs, snapshot.taskId(), snapshot.segments());
+                    }
                 }
+                deleteSegmentsPs.executeBatch();
+                segmentsPs.executeBatch();
+
+                connection.commit();
+                log.info("{} tasks updated to status {}", results.length, status);
+            } catch (Exception e) {
+                rollback();
+                log.error("failed to update {} tasks to status {} in the database", downloads.size(), status, e);
+                throw new DatabaseException("failed to update tasks in the database", e);
+            } finally {
+                restoreAutoCommit();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void delete(Collection<Long> ids) {
+        log.info("deleting {} tasks from database", ids.size());
+
+        try {
+            PreparedStatement segmentsPs = statement(DELETE_SEGMENTS_SQL);
+            PreparedStatement ps = statement(DELETE_SQL);
+            PreparedStatement archivePs = statement(DELETE_ARCHIVED_SQL);
+
+            connection.setAutoCommit(false);
+
+            for (long id : ids) {
+                segmentsPs.setLong(1, id);
+                segmentsPs.addBatch();
+                ps.setLong(1, id);
+                ps.addBatch();
+                archivePs.setLong(1, id);
+                archivePs.addBatch();
             }
+            segmentsPs.executeBatch();
+            ps.executeBatch();
+            archivePs.executeBatch();
+
+            connection.commit();
+            ids.forEach(writeBehind::discard);
+            log.info("{} tasks deleted in one transaction", ids.size());
 
-            log.info("{} record updated for task with pk {}", i, pk);
+            Set<Long> deleted = new HashSet<>(ids);
+            listExecutor.execute(() -> tasksList.removeIf(d -> deleted.contains(d.getId())));
         } catch (Exception e) {
-            log.error("failed to update task with id {} in to the database", pk, e);
-            throw new DatabaseException("failed to update a task in to the database", e);
+            rollback();
+            log.error("failed to delete {} tasks in to the database", ids.size(), e);
+            throw new DatabaseException("failed to delete tasks in to the database", e);
+        } finally {
+            restoreAutoCommit();
         }
     }
 
-    public void delete(String key) {
-        log.info("deleting task {} from database", key);
-        String sql = """
-                DELETE FROM TASKS WHERE NAME = ?;
-                """;
+    @Override
+    public synchronized void delete(long id) {
+        log.info("deleting task with id {} from database", id);
 
-        try (Connection connection = DriverManager.getConnection(DB_URL);
-             PreparedStatement ps = connection.prepareStatement(sql)) {
+        try {
+            PreparedStatement ps = statement(DELETE_SQL);
+            PreparedStatement segmentsPs = statement(DELETE_SEGMENTS_SQL);
+            PreparedStatement archivePs = statement(DELETE_ARCHIVED_SQL);
 
-            ps.setString(1, key);
+            connection.setAutoCommit(false);
+
+            segmentsPs.setLong(1, id);
+            segmentsPs.executeUpdate();
+            ps.setLong(1, id);
             int i = ps.executeUpdate();
-            log.info("{} record deleted from tasks, task {} was deleted", i, key);
-            tasksList.removeIf(d -> d.getName().equals(key));
+            archivePs.setLong(1, id);
+            i += archivePs.executeUpdate();
+
+            connection.commit();
+            writeBehind.discard(id);
+            log.info("{} record deleted from tasks, task with id {} was deleted", i, id);
+            listExecutor.execute(() -> tasksList.removeIf(d -> d.getId() == id));
         } catch (Exception e) {
-            log.error("failed to delete task {} in to the database", key, e);
+            rollback();
+            log.error("failed to delete task with id {} in to the database", id, e);
             throw new DatabaseException("failed to delete an task in to the database", e);
+        } finally {
+            restoreAutoCommit();
         }
     }
 
-    public void deleteAll() {
+    @Override
+    public synchronized void deleteAll() {
         log.info("deleting all task from database");
         String sql = """
                 DELETE FROM TASKS;
                 """;
 
-        try (Connection connection = DriverManager.getConnection(DB_URL);
-             PreparedStatement ps = connection.prepareStatement(sql)) {
+        try {
+            PreparedStatement ps = statement(sql);
+            PreparedStatement segmentsPs = statement("""
+                    DELETE FROM SEGMENTS;
+                    """);
+            PreparedStatement archivePs = statement("""
+                    DELETE FROM TASKS_ARCHIVE;
+                    """);
+
+            connection.setAutoCommit(false);
 
+            segmentsPs.executeUpdate();
+            archivePs.executeUpdate();
             int i = ps.executeUpdate();
-            log.info("{} record deleted from tasks, all task were deleted", i);
 
+            connection.commit();
+            writeBehind.discardAll();
+            log.info("{} record deleted from tasks, all task were deleted", i);
         } catch (Exception e) {
+            rollback();
             log.error("failed to delete all task in the database", e);
             throw new DatabaseException("failed to delete all tasks in the database", e);
+        } finally {
+            restoreAutoCommit();
+        }
+    }
+
+    /**
+     * puts the unfinished tasks and the ones finished in the last {@link ConfigurationConstants#RECENT_HISTORY_MILLIS}
+     * into {@link #tasksList}, the older ones are read on demand with {@link #loadHistoryPage}. the tasks are only
+     * read, nothing is resumed here
+     */
+    @Override
+    public void loadActiveTasks() {
+        log.info("getting the active tasks from the database");
+        String sql = """
+                SELECT * FROM TASKS WHERE STATUS NOT IN ('COMPLETED', 'CANCELED') OR UPDATED_AT >= ? ORDER BY ID;
+                """;
+        String segmentsSql = """
+                SELECT s.* FROM SEGMENTS s JOIN TASKS t ON t.ID = s.TASK_ID
+                WHERE t.STATUS NOT IN ('COMPLETED', 'CANCELED') OR t.UPDATED_AT >= ?
+                ORDER BY s.TASK_ID, s.SEGMENT_INDEX;
+                """;
+        int recentHistory = ConfigurationUtils.getSettings().recentHistoryMillis();
+        historyCutoff = System.currentTimeMillis() - recentHistory;
+
+        // the queued updates are written first, so the read sees them
+        writeBehind.flush();
+
+        List<Download> downloads = new ArrayList<>();
+        synchronized (this) {
+            try {
+                PreparedStatement ps = statement(sql);
+                ps.setLong(1, historyCutoff);
+
+                try (ResultSet resultSet = ps.executeQuery()) {
+                    while (resultSet.next()) {
+                        downloads.add(getDownloadTask(resultSet));
+                    }
+                }
+
+                // the segments of all tasks are streamed in one pass, ordered so each task gets them in its order
+                Map<Long, List<DownloadTask>> segments = new HashMap<>();
+                PreparedStatement segmentsPs = statement(segmentsSql);
+                segmentsPs.setLong(1, historyCutoff);
+                try (ResultSet resultSet = segmentsPs.executeQuery()) {
+                    while (resultSet.next()) {
+                        segments.computeIfAbsent(resultSet.getLong("TASK_ID"), k -> new ArrayList<>()).add(getSegment(resultSet));
+                    }
+                }
+                downloads.forEach(d -> d.setDownloadTasks(segments.get(d.getId())));
+            } catch (Exception e) {
+                log.error("failed to fetch all tasks from database", e);
+                throw new DatabaseException("failed to fetch all tasks from database", e);
+            }
+        }
+
+        tasksList.addAll(downloads);
+        log.info("finished getting the active tasks from the database, number of records fetched: {}", downloads.size());
+    }
+
+    /**
+     * @return number of finished tasks that are not in {@link #tasksList}
+     */
+    @Override
+    public int countHistory() {
+        String sql = """
+                SELECT COUNT(*) FROM TASKS WHERE STATUS IN ('COMPLETED', 'CANCELED') AND UPDATED_AT < ?;
+                """;
+
+        writeBehind.flush();
+        synchronized (this) {
+            try {
+                PreparedStatement ps = statement(sql);
+                ps.setLong(1, historyCutoff);
+
+                try (ResultSet resultSet = ps.executeQuery()) {
+                    return resultSet.next() ? resultSet.getInt(1) : 0;
+                }
+            } catch (Exception e) {
+                log.error("failed to count the task history in the database", e);
+                throw new DatabaseException("failed to count the task history in the database", e);
+            }
+        }
+    }
+
+    /**
+     * reads a page of the finished tasks that are not in {@link #tasksList}, the most recently touched first
+     */
+    @Override
+    public List<Download> loadHistoryPage(int offset, int limit) {
+        log.info("getting {} history tasks from offset {} from the database", limit, offset);
+        String sql = """
+                SELECT * FROM TASKS WHERE STATUS IN ('COMPLETED', 'CANCELED') AND UPDATED_AT < ?
+                ORDER BY UPDATED_AT DESC, ID DESC LIMIT ? OFFSET ?;
+                """;
+
+        writeBehind.flush();
+        synchronized (this) {
+            try {
+                PreparedStatement ps = statement(sql);
+                ps.setLong(1, historyCutoff);
+                ps.setInt(2, limit);
+                ps.setInt(3, offset);
+
+                List<Download> page = new ArrayList<>(limit);
+                try (ResultSet resultSet = ps.executeQuery()) {
+                    while (resultSet.next()) {
+                        page.add(getDownloadTask(resultSet));
+                    }
+                }
+                for (Download download : page) {
+                    download.setDownloadTasks(readSegments(download.getId()));
+                }
+                return page;
+            } catch (Exception e) {
+                log.error("failed to fetch the task history from database", e);
+                throw new DatabaseException("failed to fetch the task history from database", e);
+            }
+        }
+    }
+
+    @Override
+    public int countSearch(String query) {
+        String match = toMatchExpression(query);
+        if (match.isEmpty()) {
+            return 0;
+        }
+
+        writeBehind.flush();
+        synchronized (this) {
+            try {
+                PreparedStatement ps = statement("""
+                        SELECT (SELECT COUNT(*) FROM TASKS_SEARCH WHERE TASKS_SEARCH MATCH ?)
+                            + (SELECT COUNT(*) FROM ARCHIVE_SEARCH WHERE ARCHIVE_SEARCH MATCH ?);
+                        """);
+                ps.setString(1, match);
+                ps.setString(2, match);
+
+                try (ResultSet resultSet = ps.executeQuery()) {
+                    return resultSet.next() ? resultSet.getInt(1) : 0;
+                }
+            } catch (Exception e) {
+                log.error("failed to count the tasks matching {} in the database", query, e);
+                throw new DatabaseException("failed to search the tasks in the database", e);
+            }
+        }
+    }
+
+    /**
+     * the newest matches come first, the archived tasks are searched as well. tasks that are in {@link #tasksList} are
+     * returned as they are there, so their progress keeps updating in the results
+     */
+    @Override
+    public List<Download> search(String query, int offset, int limit) {
+        log.info("searching {} tasks from offset {} matching {}", limit, offset, query);
+        String match = toMatchExpression(query);
+        if (match.isEmpty()) {
+            return List.of();
+        }
+        // the archive has no remote file columns, its tasks are read like those of loadArchivePage
+        String sql = """
+                SELECT t.ID, t.NAME, t.TYPE, t.STATUS, t.SIZE, t.SAVEPATH, t.URL, t.RESUMABLE, t.DESCRIPTION, t.PROGRESSION,
+                       t.ETAG, t.LAST_MODIFIED, 0 AS ARCHIVED
+                FROM TASKS_SEARCH s JOIN TASKS t ON t.ID = s.rowid WHERE TASKS_SEARCH MATCH ?
+                UNION ALL
+                SELECT a.ID, a.NAME, a.TYPE, a.STATUS, a.SIZE, a.SAVEPATH, a.URL, 0, a.DESCRIPTION, a.PROGRESSION,
+                       NULL, NULL, 1
+                FROM ARCHIVE_SEARCH s JOIN TASKS_ARCHIVE a ON a.ID = s.rowid WHERE ARCHIVE_SEARCH MATCH ?
+                ORDER BY ID DESC LIMIT ? OFFSET ?;
+                """;
+
+        writeBehind.flush();
+        synchronized (this) {
+            try {
+                PreparedStatement ps = statement(sql);
+                ps.setString(1, match);
+                ps.setString(2, match);
+                ps.setInt(3, limit);
+                ps.setInt(4, offset);
+
+                List<Download> page = new ArrayList<>(limit);
+                // archived tasks have no segments
+                List<Download> withSegments = new ArrayList<>();
+                try (ResultSet resultSet = ps.executeQuery()) {
+                    while (resultSet.next()) {
+                        Download loaded = tasksById.get(resultSet.getLong("ID"));
+                        if (loaded != null) {
+                            page.add(loaded);
+                            continue;
+                        }
+                        Download download = getDownloadTask(resultSet);
+                        page.add(download);
+                        if (!resultSet.getBoolean("ARCHIVED")) {
+                            withSegments.add(download);
+                        }
+                    }
+                }
+                for (Download download : withSegments) {
+                    download.setDownloadTasks(readSegments(download.getId()));
+                }
+                return page;
+            } catch (Exception e) {
+                log.error("failed to search the tasks matching {} in the database", query, e);
+                throw new DatabaseException("failed to search the tasks in the database", e);
+            }
+        }
+    }
+
+    /**
+     * every word of the query has to match the start of a word of the name, url, description or type. the words are
+     * quoted, so nothing the user types is read as FTS5 query syntax
+     */
+    static String toMatchExpression(String query) {
+        if (query == null) {
+            return "";
+        }
+        return Arrays.stream(query.trim().split("\\s+"))
+                .filter(word -> !word.isEmpty())
+                .map(word -> "\"" + word.replace("\"", "\"\"") + "\"*")
+                .collect(Collectors.joining(" "));
+    }
+
+    /**
+     * moves the finished tasks last touched before the given time from TASKS into TASKS_ARCHIVE and deletes their
+     * segments, they are not needed to show a finished task
+     * @return number of archived tasks
+     */
+    public int archiveHistory(long finishedBefore) {
+        String copySql = """
+                INSERT OR REPLACE INTO TASKS_ARCHIVE(ID, NAME, TYPE, STATUS, SIZE, SAVEPATH, URL, DESCRIPTION, PROGRESSION, UPDATED_AT)
+                SELECT ID, NAME, TYPE, STATUS, SIZE, SAVEPATH, URL, DESCRIPTION, PROGRESSION, UPDATED_AT
+                FROM TASKS WHERE STATUS IN ('COMPLETED', 'CANCELED') AND UPDATED_AT < ?;
+                """;
+        String deleteSegmentsSql = """
+                DELETE FROM SEGMENTS WHERE TASK_ID IN (
+                    SELECT ID FROM TASKS WHERE STATUS IN ('COMPLETED', 'CANCELED') AND UPDATED_AT < ?
+                );
+                """;
+        String deleteSql = """
+                DELETE FROM TASKS WHERE STATUS IN ('COMPLETED', 'CANCELED') AND UPDATED_AT < ?;
+                """;
+
+        // the queued updates are written first, a task finished a moment ago must not be archived with its old status
+        writeBehind.flush();
+        synchronized (this) {
+            try {
+                PreparedStatement copyPs = statement(copySql);
+                PreparedStatement deleteSegmentsPs = statement(deleteSegmentsSql);
+                PreparedStatement deletePs = statement(deleteSql);
+
+                connection.setAutoCommit(false);
+
+                copyPs.setLong(1, finishedBefore);
+                copyPs.executeUpdate();
+                deleteSegmentsPs.setLong(1, finishedBefore);
+                deleteSegmentsPs.executeUpdate();
+                deletePs.setLong(1, finishedBefore);
+                int archived = deletePs.executeUpdate();
+
+                connection.commit();
+                log.info("{} finished tasks moved into the archive", archived);
+                return archived;
+            } catch (Exception e) {
+                rollback();
+                log.error("failed to archive the finished tasks in the database", e);
+                throw new DatabaseException("failed to archive the finished tasks in the database", e);
+            } finally {
+                restoreAutoCommit();
+            }
+        }
+    }
+
+    @Override
+    public synchronized int countArchive() {
+        try (ResultSet resultSet = statement("""
+                SELECT COUNT(*) FROM TASKS_ARCHIVE;
+                """).executeQuery()) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        } catch (Exception e) {
+            log.error("failed to count the archived tasks in the database", e);
+            throw new DatabaseException("failed to count the archived tasks in the database", e);
         }
     }
 
-    public void loadAllTasks() {
-        log.info("getting all tasks from the database");
+    /**
+     * reads a page of the archived tasks, the most recently touched first. they have no segments
+     */
+    @Override
+    public synchronized List<Download> loadArchivePage(int offset, int limit) {
+        log.info("getting {} archived tasks from offset {} from the database", limit, offset);
         String sql = """
-                SELECT * FROM TASKS;
+                SELECT * FROM TASKS_ARCHIVE ORDER BY UPDATED_AT DESC, ID DESC LIMIT ? OFFSET ?;
                 """;
 
-        try (Connection connection = DriverManager.getConnection(DB_URL);
-             PreparedStatement ps = connection.prepareStatement(sql)) {
+        try {
+            PreparedStatement ps = statement(sql);
+            ps.setInt(1, limit);
+            ps.setInt(2, offset);
 
-            ResultSet resultSet = ps.executeQuery();
+            List<Download> page = new ArrayList<>(limit);
+            try (ResultSet resultSet = ps.executeQuery()) {
+                while (resultSet.next()) {
+                    page.add(Download.builder()
+                            .tasksDAO(this)
+                            .id(resultSet.getLong("ID"))
+                            .name(resultSet.getString("NAME"))
+                            .type(resultSet.getString("TYPE"))
+                            .status(Status.valueOf(resultSet.getString("STATUS")))
+                            .size(resultSet.getLong("SIZE"))
+                            .savePath(resultSet.getString("SAVEPATH"))
+                            .downloadUrl(resultSet.getString("URL"))
+                            .resumable(false)
+                            .descriptionProperty(new SimpleStringProperty(resultSet.getString("DESCRIPTION")))
+                            .progressProperty(new SimpleDoubleProperty(resultSet.getDouble("PROGRESSION")))
+                            .build());
+                }
+            }
+            return page;
+        } catch (Exception e) {
+            log.error("failed to fetch the archived tasks from database", e);
+            throw new DatabaseException("failed to fetch the archived tasks from database", e);
+        }
+    }
+
+    /**
+     * gives up to the given number of free pages back to the file system and refreshes the statistics of the query
+     * planner where they are out of date. both are bounded, so it can run while downloads are checkpointed
+     */
+    public synchronized void maintain(int vacuumPages) {
+        try (Statement statement = connection().createStatement()) {
+            statement.execute(String.format("PRAGMA incremental_vacuum(%d);", vacuumPages));
+            // optimize only analyzes the tables whose statistics changed, the limit bounds each of them
+            statement.execute("PRAGMA analysis_limit = 400;");
+            statement.execute("PRAGMA optimize;");
+            log.info("database maintenance done, up to {} free pages released", vacuumPages);
+        } catch (Exception e) {
+            log.error("failed to run the database maintenance", e);
+            throw new DatabaseException("failed to run the database maintenance", e);
+        }
+    }
+
+    @Override
+    public synchronized List<HostProfile> loadHostProfiles() {
+        try (ResultSet resultSet = statement("""
+                SELECT * FROM HOST_PROFILES;
+                """).executeQuery()) {
+            List<HostProfile> profiles = new ArrayList<>();
             while (resultSet.next()) {
-                Download download = getDownloadTask(resultSet);
-                download.reloadSegments();
-                tasksList.add(download);
+                profiles.add(new HostProfile(
+                        resultSet.getString("HOST"),
+                        resultSet.getLong("CONNECTION_THROUGHPUT"),
+                        resultSet.getInt("BEST_SEGMENTS"),
+                        resultSet.getLong("BEST_THROUGHPUT"),
+                        resultSet.getInt("CEILING_SEGMENTS"),
+                        resultSet.getObject("RANGE_SUPPORTED") != null ? resultSet.getBoolean("RANGE_SUPPORTED") : null,
+                        resultSet.getObject("HTTP2") != null ? resultSet.getBoolean("HTTP2") : null,
+                        resultSet.getLong("REQUESTS"),
+                        resultSet.getLong("ERRORS"),
+                        resultSet.getLong("THROTTLED"),
+                        resultSet.getLong("UPDATED_AT")));
             }
+            return profiles;
+        } catch (Exception e) {
+            log.error("failed to fetch the host profiles from database", e);
+            throw new DatabaseException("failed to fetch the host profiles from database", e);
+        }
+    }
+
+    @Override
+    public synchronized void saveHostProfiles(Collection<HostProfile> profiles) {
+        try {
+            PreparedStatement ps = statement(UPSERT_HOST_PROFILE_SQL);
 
-            log.info("finished getting all tasks from the database, number of records fetched: {}", tasksList.size());
+            connection.setAutoCommit(false);
+
+            for (HostProfile profile : profiles) {
+                ps.setString(1, profile.host());
+                ps.setLong(2, profile.connectionThroughput());
+                ps.setInt(3, profile.bestSegments());
+                ps.setLong(4, profile.bestThroughput());
+                ps.setInt(5, profile.ceilingSegments());
+                ps.setObject(6, profile.rangeSupported() != null ? (profile.rangeSupported() ? 1 : 0) : null);
+                ps.setObject(7, profile.http2() != null ? (profile.http2() ? 1 : 0) : null);
+                ps.setLong(8, profile.requests());
+                ps.setLong(9, profile.errors());
+                ps.setLong(10, profile.throttled());
+                ps.setLong(11, profile.updatedAt());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+
+            connection.commit();
+            log.info("{} host profiles stored in one transaction", profiles.size());
         } catch (Exception e) {
-            log.error("failed to fetch all tasks from database", e);
-            throw new DatabaseException("failed to fetch all tasks from database", e);
+            rollback();
+            log.error("failed to store {} host profiles in to the database", profiles.size(), e);
+            throw new DatabaseException("failed to store the host profiles in to the database", e);
+        } finally {
+            restoreAutoCommit();
         }
     }
 
-    public Optional<Download> getTaskByKey(String key) {
-        log.info("getting a specific task with name {} from database", key);
+    @Override
+    public Optional<Download> getTaskById(long id) {
+        // the queued updates are written first, so the read sees them
+        writeBehind.flush();
+        return readTaskById(id);
+    }
+
+    private synchronized Optional<Download> readTaskById(long id) {
+        log.info("getting a specific task with id {} from database", id);
         Download result = null;
 
         String sql = """
-                SELECT * FROM TASKS WHERE NAME = ?
+                SELECT * FROM TASKS WHERE ID = ?
                 """;
 
-        try (Connection connection = DriverManager.getConnection(DB_URL);
-             PreparedStatement ps = connection.prepareStatement(sql)) {
+        try {
+            PreparedStatement ps = statement(sql);
 
-            ps.setString(1, key);
+            ps.setLong(1, id);
 
-            ResultSet resultSet = ps.executeQuery();
-            while (resultSet.next()) {
-                result = getDownloadTask(resultSet);
+            try (ResultSet resultSet = ps.executeQuery()) {
+                while (resultSet.next()) {
+                    result = getDownloadTask(resultSet);
+                }
             }
 
-            log.info("finished getting task with name {} from the database, record fetched: {}", key, result);
+            if (result != null) {
+                result.setDownloadTasks(readSegments(id));
+            }
+
+            log.info("finished getting task with id {} from the database, record fetched: {}", id, result);
             return Optional.ofNullable(result);
         } catch (Exception e) {
             log.error("failed to fetch all tasks from database", e);
@@ -290,8 +1395,35 @@ public class TasksDAO {
         }
     }
 
-    private Download getDownloadTask(ResultSet resultSet) throws SQLException, JsonProcessingException {
+    /**
+     * @return the segments of the task in their order, null if the task has no segments
+     */
+    private List<DownloadTask> readSegments(long id) throws SQLException {
+        PreparedStatement ps = statement("""
+                SELECT * FROM SEGMENTS WHERE TASK_ID = ? ORDER BY SEGMENT_INDEX;
+                """);
+        ps.setLong(1, id);
+
+        List<DownloadTask> downloadTasks = new ArrayList<>();
+        try (ResultSet resultSet = ps.executeQuery()) {
+            while (resultSet.next()) {
+                downloadTasks.add(getSegment(resultSet));
+            }
+        }
+        return downloadTasks.isEmpty() ? null : downloadTasks;
+    }
+
+    private DownloadTask getSegment(ResultSet resultSet) throws SQLException {
+        DownloadTask downloadTask = new DownloadTask();
+        downloadTask.setRange(new Range(resultSet.getInt("RANGE_FROM"), resultSet.getInt("RANGE_TO")));
+        downloadTask.setWritten(resultSet.getInt("WRITTEN"));
+        downloadTask.setCompleted(resultSet.getBoolean("COMPLETED"));
+        return downloadTask;
+    }
+
+    private Download getDownloadTask(ResultSet resultSet) throws SQLException {
         Download result;
+        long id = resultSet.getLong("ID");
         String name = resultSet.getString("NAME");
         String type = resultSet.getString("TYPE");
         String status = resultSet.getString("STATUS");
@@ -301,21 +1433,23 @@ public class TasksDAO {
         int resumable = resultSet.getInt("RESUMABLE");
         String description = resultSet.getString("DESCRIPTION");
         double progress = resultSet.getDouble("PROGRESSION");
-
-        String data = resultSet.getString("DATA");
-        List<DownloadTask> downloadTasks = mapper.readValue(data, new TypeReference<>() {});
+        String etag = resultSet.getString("ETAG");
+        String lastModified = resultSet.getString("LAST_MODIFIED");
 
         result = Download.builder()
+                .tasksDAO(this)
+                .id(id)
                 .name(name)
                 .type(type)
-                .statusProperty(new SimpleObjectProperty<>(Status.valueOf(status)))
+                .status(Status.valueOf(status))
                 .size(size)
                 .savePath(savePath)
                 .downloadUrl(url)
                 .resumable(resumable == 1)
                 .descriptionProperty(new SimpleStringProperty(description))
                 .progressProperty(new SimpleDoubleProperty(progress))
-                .downloadTasks(downloadTasks)
+                .etag(etag)
+                .lastModified(lastModified)
                 .build();
         return result;
     }
@@ -0,0 +1,108 @@
+package com.github.sinakarimi.jdown.database;
+
+import com.github.sinakarimi.jdown.dataObjects.Status;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * collects the status, progress and description updates of the tasks and writes them from a single writer thread.
+ * only the latest value of each field of a task is kept, so a burst of progress updates becomes one row update
+ */
+@Slf4j
+class WriteBehindQueue {
+
+    private final Map<Long, PendingUpdate> pending = new LinkedHashMap<>();
+    private final Consumer<List<PendingUpdate>> writer;
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param writer writes a batch of updates in one transaction
+     */
+    WriteBehindQueue(Consumer<List<PendingUpdate>> writer, int intervalMillis) {
+        this.writer = writer;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tasks-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void status(long id, Status status) {
+        pending.computeIfAbsent(id, PendingUpdate::new).status(status);
+    }
+
+    synchronized void progression(long id, double progression) {
+        pending.computeIfAbsent(id, PendingUpdate::new).progression(progression);
+    }
+
+    synchronized void description(long id, String description) {
+        pending.computeIfAbsent(id, PendingUpdate::new).description(description);
+    }
+
+    /**
+     * drops the pending updates of a deleted task
+     */
+    synchronized void discard(long id) {
+        pending.remove(id);
+    }
+
+    synchronized void discardAll() {
+        pending.clear();
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * writes everything that is pending on the calling thread, failed updates are queued again unless newer ones came
+     */
+    void flush() {
+        // flushes must not overtake each other, otherwise an older batch could be written after a newer one
+        synchronized (flushLock) {
+            List<PendingUpdate> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+
+            try {
+                writer.accept(batch);
+            } catch (Exception e) {
+                log.error("failed to write {} pending task updates, they are retried with the next flush", batch.size(), e);
+                synchronized (this) {
+                    for (PendingUpdate update : batch) {
+                        pending.merge(update.getId(), update, PendingUpdate::mergeOlder);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * stops the writer thread and writes what is left
+     */
+    void shutdown() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+}
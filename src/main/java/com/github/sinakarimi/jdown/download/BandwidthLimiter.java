@@ -0,0 +1,61 @@
+package com.github.sinakarimi.jdown.download;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * keeps all the segments together under {@link ConfigurationConstants#MAX_BYTES_PER_SECOND}. the limit is read on
+ * every call, so a changed setting applies to the running downloads right away. at most a second of unused rate is
+ * saved up, a segment that read more than is available waits until the rate caught up with it
+ */
+public class BandwidthLimiter {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static BandwidthLimiter instance;
+
+    /**
+     * the time at which the bytes read so far are paid for at the current rate, in the past while they are below it
+     */
+    private long paidUntil = System.nanoTime();
+
+    public BandwidthLimiter() {
+    }
+
+    public static synchronized BandwidthLimiter getInstance() {
+        if (instance == null) {
+            instance = new BandwidthLimiter();
+        }
+        return instance;
+    }
+
+    /**
+     * accounts for the given number of bytes that were read and waits if they went over the limit
+     */
+    public void acquire(int bytes) throws InterruptedIOException {
+        int rate = ConfigurationUtils.getSettings().maxBytesPerSecond();
+        if (rate <= 0) {
+            return;
+        }
+
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            paidUntil = Math.max(paidUntil, now - NANOS_PER_SECOND) + bytes * NANOS_PER_SECOND / rate;
+            waitNanos = paidUntil - now;
+        }
+
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the bandwidth limit");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,308 @@
+package com.github.sinakarimi.jdown.download;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.github.sinakarimi.jdown.common.HttpConstants.CONTENT_LENGTH_HEADER;
+import static com.github.sinakarimi.jdown.common.HttpConstants.GET_METHOD;
+import static com.github.sinakarimi.jdown.common.HttpConstants.TRANSFER_ENCODING_HEADER;
+
+/**
+ * a minimal HTTP/1.1 GET over a socket bound to a given local address. {@link java.net.HttpURLConnection} always
+ * connects from the default route and cannot be bound, so segments that are spread over several uplinks use this
+ * instead. the connection is not kept alive, it is closed once the range is read
+ */
+@Slf4j
+class BoundSegmentConnection implements SegmentConnection {
+
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    private final URL url;
+    private final InetAddress localAddress;
+    private final Map<String, String> requestProperties = new LinkedHashMap<>();
+    private final Map<String, String> responseHeaders = new LinkedHashMap<>();
+    private int connectTimeout = 0;
+    private int readTimeout = 0;
+
+    private Socket socket;
+    private InputStream in;
+    private int responseCode = -1;
+
+    BoundSegmentConnection(URL url, InetAddress localAddress) {
+        this.url = url;
+        this.localAddress = localAddress;
+    }
+
+    @Override
+    public void setConnectTimeout(int timeoutMillis) {
+        connectTimeout = timeoutMillis;
+    }
+
+    @Override
+    public void setReadTimeout(int timeoutMillis) {
+        readTimeout = timeoutMillis;
+    }
+
+    @Override
+    public void setRequestProperty(String key, String value) {
+        requestProperties.put(key, value);
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        if (responseCode == -1) {
+            connect();
+            sendRequest();
+            readResponseHead();
+        }
+        return responseCode;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        getResponseCode();
+
+        if ("chunked".equalsIgnoreCase(responseHeaders.get(TRANSFER_ENCODING_HEADER.getValue().toLowerCase()))) {
+            return new ChunkedInputStream(in);
+        }
+
+        String contentLength = responseHeaders.get(CONTENT_LENGTH_HEADER.getValue().toLowerCase());
+        if (contentLength != null) {
+            return new LimitedInputStream(in, Long.parseLong(contentLength.trim()));
+        }
+
+        // no framing, the body ends when the server closes the connection
+        return in;
+    }
+
+    @Override
+    public void disconnect() {
+        if (socket == null) {
+            return;
+        }
+
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.warn("failed to close the connection to {}", url.getHost(), e);
+        }
+    }
+
+    private void connect() throws IOException {
+        boolean https = "https".equalsIgnoreCase(url.getProtocol());
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        InetAddress remoteAddress = pickRemoteAddress(DnsCache.resolve(url.getHost()));
+
+        socket = new Socket();
+        socket.bind(new InetSocketAddress(localAddress, 0));
+        socket.connect(new InetSocketAddress(remoteAddress, port), connectTimeout);
+        socket.setSoTimeout(readTimeout);
+
+        if (https) {
+            SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+            SSLSocket sslSocket = (SSLSocket) factory.createSocket(socket, url.getHost(), port, true);
+            SSLParameters parameters = sslSocket.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            sslSocket.setSSLParameters(parameters);
+            sslSocket.startHandshake();
+            socket = sslSocket;
+        }
+
+        in = new BufferedInputStream(socket.getInputStream());
+    }
+
+    /**
+     * the remote address has to be of the same family as the local one
+     */
+    private InetAddress pickRemoteAddress(InetAddress[] addresses) throws IOException {
+        return Arrays.stream(addresses)
+                .filter(a -> a.getClass().equals(localAddress.getClass()))
+                .findFirst()
+                .orElseThrow(() -> new IOException(String.format("%s has no address reachable from %s", url.getHost(), localAddress.getHostAddress())));
+    }
+
+    private void sendRequest() throws IOException {
+        String path = url.getFile().isEmpty() ? "/" : url.getFile();
+        String host = url.getPort() != -1 ? url.getHost() + ":" + url.getPort() : url.getHost();
+
+        StringBuilder request = new StringBuilder()
+                .append(GET_METHOD.getValue()).append(' ').append(path).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(host).append("\r\n")
+                .append("Accept: */*\r\n")
+                .append("Connection: close\r\n");
+        requestProperties.forEach((key, value) -> request.append(key).append(": ").append(value).append("\r\n"));
+        request.append("\r\n");
+
+        OutputStream out = socket.getOutputStream();
+        out.write(request.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    private void readResponseHead() throws IOException {
+        String statusLine;
+        do {
+            statusLine = readLine(in);
+            String[] parts = statusLine.split(" ", 3);
+            if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+                throw new IOException("invalid status line from " + url.getHost() + ": " + statusLine);
+            }
+            responseCode = Integer.parseInt(parts[1]);
+
+            responseHeaders.clear();
+            String header;
+            while (!(header = readLine(in)).isEmpty()) {
+                int colon = header.indexOf(':');
+                if (colon > 0) {
+                    responseHeaders.put(header.substring(0, colon).trim().toLowerCase(), header.substring(colon + 1).trim());
+                }
+            }
+            // interim responses are followed by the real one
+        } while (responseCode >= 100 && responseCode < 200);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                throw new EOFException("connection closed in the middle of the response head");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+            if (line.size() > MAX_LINE_LENGTH) {
+                throw new IOException("response header line is too long");
+            }
+        }
+        return line.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * ends the body after Content-Length bytes
+     */
+    private static class LimitedInputStream extends InputStream {
+
+        private final InputStream source;
+        private long remaining;
+
+        private LimitedInputStream(InputStream source, long length) {
+            this.source = source;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            int b = source.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            int read = source.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+
+    /**
+     * decodes a chunked body, the trailers are read and dropped
+     */
+    private static class ChunkedInputStream extends InputStream {
+
+        private final InputStream source;
+        private long chunkRemaining = 0;
+        private boolean finished = false;
+
+        private ChunkedInputStream(InputStream source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (finished || !nextChunk()) {
+                return -1;
+            }
+
+            int read = source.read(b, off, (int) Math.min(len, chunkRemaining));
+            if (read == -1) {
+                throw new EOFException("connection closed in the middle of a chunk");
+            }
+            chunkRemaining -= read;
+            return read;
+        }
+
+        /**
+         * @return false once the last chunk was read
+         */
+        private boolean nextChunk() throws IOException {
+            if (chunkRemaining > 0) {
+                return true;
+            }
+
+            String sizeLine = readLine(source);
+            if (sizeLine.isEmpty()) {
+                // the line break that ends the previous chunk
+                sizeLine = readLine(source);
+            }
+
+            int extension = sizeLine.indexOf(';');
+            chunkRemaining = Long.parseLong((extension >= 0 ? sizeLine.substring(0, extension) : sizeLine).trim(), 16);
+            if (chunkRemaining == 0) {
+                while (!readLine(source).isEmpty()) {
+                    // trailers are not used
+                }
+                finished = true;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.github.sinakarimi.jdown.download;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.configuration.DownloadSettings;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * shared buffers for the segment workers. a released buffer is handed to the next segment instead of allocating a
+ * new one on every start and restart, and at most {@link ConfigurationConstants#MAX_BUFFER_MEMORY} bytes of buffers
+ * exist at the same time, a segment waits for a free buffer when the limit is reached. a changed buffer setting
+ * replaces the pool, the buffers of the old one are given back to it and dropped with it
+ */
+@Slf4j
+public class BufferPool {
+
+    private static BufferPool instance;
+
+    @Getter
+    private final int bufferSize;
+    private final boolean direct;
+    private final long maxMemory;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<ByteBuffer> free = new ConcurrentLinkedDeque<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+
+    /**
+     * @param maxMemory upper bound of the memory of all buffers together, at least one buffer is always allowed
+     */
+    public BufferPool(int bufferSize, boolean direct, long maxMemory) {
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        this.maxMemory = maxMemory;
+        this.permits = new Semaphore((int) Math.max(1, maxMemory / bufferSize));
+    }
+
+    /**
+     * a buffer has to be released to the pool it was acquired from, which is not this one after a settings change
+     */
+    public static synchronized BufferPool getInstance() {
+        DownloadSettings settings = ConfigurationUtils.getSettings();
+        if (instance == null || !instance.matches(settings)) {
+            // the segments running on the old pool keep their buffers until they end, so both limits can apply for a while
+            instance = new BufferPool(settings.bufferSize(), settings.directBuffers(), settings.maxBufferMemory());
+            log.info("buffer pool created with {} {} byte {} buffers", instance.permits.availablePermits(), settings.bufferSize(), settings.directBuffers() ? "direct" : "heap");
+        }
+        return instance;
+    }
+
+    private boolean matches(DownloadSettings settings) {
+        return bufferSize == settings.bufferSize() && direct == settings.directBuffers() && maxMemory == settings.maxBufferMemory();
+    }
+
+    /**
+     * blocks until a buffer is free if the memory limit is reached, the buffer must be given back with {@link #release}
+     */
+    public ByteBuffer acquire() throws InterruptedIOException {
+        if (!permits.tryAcquire()) {
+            waits.incrementAndGet();
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for a free buffer");
+            }
+        }
+
+        ByteBuffer buffer = free.pollFirst();
+        if (buffer != null) {
+            hits.incrementAndGet();
+            return buffer;
+        }
+
+        misses.incrementAndGet();
+        return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        free.addFirst(buffer);
+        permits.release();
+    }
+
+    /**
+     * number of buffers that can be acquired without waiting
+     */
+    public int getAvailableBuffers() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * number of acquires served by a buffer that was already allocated
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * number of acquires that had to allocate a new buffer
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * number of acquires that had to wait because the memory limit was reached
+     */
+    public long getWaits() {
+        return waits.get();
+    }
+
+}
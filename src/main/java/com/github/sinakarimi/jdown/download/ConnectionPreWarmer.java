@@ -0,0 +1,88 @@
+package com.github.sinakarimi.jdown.download;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static com.github.sinakarimi.jdown.common.HttpConstants.HEAD_METHOD;
+
+/**
+ * opens the connections a download is going to need while the user is still looking at the confirmation dialog.
+ * the host is resolved once, then the connections are opened (and TLS handshaked) in parallel and handed over to the
+ * keep-alive cache of {@link HttpURLConnection}, where the segments pick them up when the download starts
+ */
+@Slf4j
+public class ConnectionPreWarmer {
+
+    private static final int CONNECT_WAIT_SECONDS = 10;
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "connection-pre-warmer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * the keep-alive cache of {@link HttpURLConnection} only keeps 5 idle connections per host by default, it has to
+     * hold one per segment. must be called before the first connection is opened, the limit is read only once
+     */
+    public static void configureKeepAliveCache(int connectionsPerHost) {
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(Math.max(connectionsPerHost, 5)));
+        }
+    }
+
+    public static CompletableFuture<Void> preWarm(String url, int connections) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                URL target = new URL(url);
+                DnsCache.resolve(target.getHost());
+
+                // all connections have to be open at the same time, otherwise they would just reuse each other
+                CountDownLatch allConnected = new CountDownLatch(connections);
+                CompletableFuture<?>[] warmUps = IntStream.range(0, connections)
+                        .mapToObj(i -> CompletableFuture.runAsync(() -> openConnection(target, allConnected), EXECUTOR))
+                        .toArray(CompletableFuture[]::new);
+
+                CompletableFuture.allOf(warmUps).join();
+                log.info("pre-warmed {} connections to {}", connections, target.getHost());
+            } catch (IOException e) {
+                log.warn("failed to pre-warm connections to {}", url, e);
+            }
+        }, EXECUTOR);
+    }
+
+    private static void openConnection(URL url, CountDownLatch allConnected) {
+        HttpURLConnection connection;
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod(HEAD_METHOD.getValue());
+            connection.connect();
+        } catch (IOException e) {
+            log.warn("failed to pre-warm a connection to {}", url, e);
+            return;
+        } finally {
+            allConnected.countDown();
+        }
+
+        try {
+            allConnected.await(CONNECT_WAIT_SECONDS, TimeUnit.SECONDS);
+
+            connection.getResponseCode();
+            // closing the stream instead of disconnecting puts the connection in the keep-alive cache
+            connection.getInputStream().close();
+        } catch (IOException e) {
+            log.warn("failed to pre-warm a connection to {}", url, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.github.sinakarimi.jdown.download;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+
+import static com.github.sinakarimi.jdown.common.HttpConstants.GET_METHOD;
+
+/**
+ * a segment connection over {@link HttpURLConnection}, it takes part in the keep-alive cache of the JVM
+ */
+class DefaultSegmentConnection implements SegmentConnection {
+
+    private final HttpURLConnection connection;
+
+    DefaultSegmentConnection(HttpURLConnection connection) throws ProtocolException {
+        this.connection = connection;
+        connection.setRequestMethod(GET_METHOD.getValue());
+    }
+
+    @Override
+    public void setConnectTimeout(int timeoutMillis) {
+        connection.setConnectTimeout(timeoutMillis);
+    }
+
+    @Override
+    public void setReadTimeout(int timeoutMillis) {
+        connection.setReadTimeout(timeoutMillis);
+    }
+
+    @Override
+    public void setRequestProperty(String key, String value) {
+        connection.setRequestProperty(key, value);
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        return connection.getResponseCode();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return connection.getInputStream();
+    }
+
+    @Override
+    public void disconnect() {
+        connection.disconnect();
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.github.sinakarimi.jdown.download;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.Security;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * resolves each host once and keeps its addresses for {@link ConfigurationConstants#DNS_CACHE_TTL_SECONDS} seconds.
+ * the JVM wide address cache is configured with the same ttl, so the segment connections opened through
+ * {@link java.net.HttpURLConnection} find the host already resolved as well
+ */
+@Slf4j
+public class DnsCache {
+
+    private static final Map<String, CachedAddresses> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * must be called before the first lookup, the JVM reads its cache policy only once
+     */
+    public static void configureJvmCache() {
+        Security.setProperty("networkaddress.cache.ttl", String.valueOf(ttlSeconds()));
+    }
+
+    public static InetAddress[] resolve(String host) throws UnknownHostException {
+        long now = System.currentTimeMillis();
+        CachedAddresses cached = CACHE.get(host);
+
+        if (cached != null && cached.expiresAt > now) {
+            return cached.addresses;
+        }
+
+        InetAddress[] addresses = InetAddress.getAllByName(host);
+        CACHE.put(host, new CachedAddresses(addresses, now + ttlSeconds() * 1000L));
+        log.info("resolved {} to {} addresses", host, addresses.length);
+        return addresses;
+    }
+
+    public static void clear() {
+        CACHE.clear();
+    }
+
+    private static int ttlSeconds() {
+        return ConfigurationUtils.getSettings().dnsCacheTtlSeconds();
+    }
+
+    private static class CachedAddresses {
+        private final InetAddress[] addresses;
+        private final long expiresAt;
+
+        private CachedAddresses(InetAddress[] addresses, long expiresAt) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
@@ -1,23 +1,36 @@
 package com.github.sinakarimi.jdown.download;
 
 import com.github.sinakarimi.jdown.ClassManager;
-import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
 import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.configuration.DownloadSettings;
 import com.github.sinakarimi.jdown.dataObjects.Range;
 import com.github.sinakarimi.jdown.dataObjects.Status;
-import com.github.sinakarimi.jdown.database.TasksDAO;
+import com.github.sinakarimi.jdown.database.TaskStore;
 import com.github.sinakarimi.jdown.exception.DownloadFailedException;
 import com.github.sinakarimi.jdown.exception.DownloadNotResumableException;
-import javafx.beans.property.ObjectProperty;
+import com.github.sinakarimi.jdown.exception.RemoteFileChangedException;
+import com.github.sinakarimi.jdown.exception.ResolvedUrlExpiredException;
 import javafx.beans.property.SimpleDoubleProperty;
-import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static com.github.sinakarimi.jdown.common.HttpConstants.CONTENT_LENGTH_HEADER;
+import static com.github.sinakarimi.jdown.common.HttpConstants.ETAG_HEADER;
+import static com.github.sinakarimi.jdown.common.HttpConstants.LAST_MODIFIED_HEADER;
 
 @Builder
 @EqualsAndHashCode
@@ -25,8 +38,14 @@ import java.util.List;
 @AllArgsConstructor
 public class Download implements Serializable {
 
-    private final TasksDAO tasksDAO;
+    private final TaskStore tasksDAO;
 
+    /**
+     * surrogate key of the download in the database, assigned when it is inserted
+     */
+    @Getter
+    @Setter
+    private long id;
     @Getter
     @Setter
     private String name;
@@ -45,23 +64,75 @@ public class Download implements Serializable {
     @Getter
     @Setter
     private Boolean resumable;
+    /**
+     * the final url at the end of the redirect chain of {@link #downloadUrl}, segments connect to it directly.
+     * it is not persisted, signed urls expire so after a restart it is resolved again
+     */
+    @Getter
+    @Setter
+    private String resolvedUrl;
+    /**
+     * validators of the remote file captured when it was probed, used to detect that the file changed before resuming
+     */
     @Getter
-    private ObjectProperty<Status> statusProperty;
+    @Setter
+    private String etag;
+    @Getter
+    @Setter
+    private String lastModified;
+    /**
+     * set from the segment, store and resumer threads, so it is no FX property. the table samples it like the progress
+     */
+    @Getter
+    @EqualsAndHashCode.Exclude
+    private volatile Status status;
     @Getter
     private SimpleDoubleProperty progressProperty;
     @Getter
     private SimpleStringProperty descriptionProperty;
     @Getter
+    @Setter
     List<DownloadTask> downloadTasks;
 
     private int totalBytesRead;
+    @EqualsAndHashCode.Exclude
+    private final Object remoteStateLock = new Object();
+    /**
+     * false for downloads read from the database whose segments have not been started in this session yet
+     */
+    @Getter
+    @EqualsAndHashCode.Exclude
+    private volatile boolean segmentsRunning;
+    /**
+     * when the segments were started from scratch, 0 once the download was paused or reloaded, only a download that
+     * ran in one go tells how fast its number of segments is
+     */
+    @EqualsAndHashCode.Exclude
+    private volatile long startedAt;
+    /**
+     * how often {@link #resolvedUrl} was resolved again since the download was started or resumed, guarded by
+     * {@link #remoteStateLock}. a server that rejects every fresh url would otherwise restart the segments forever
+     */
+    @EqualsAndHashCode.Exclude
+    private int urlRefreshes;
+
+    /**
+     * told about every change of the status, on the thread that changed it
+     */
+    @EqualsAndHashCode.Exclude
+    private final List<Consumer<Status>> statusListeners = new CopyOnWriteArrayList<>();
 
     public void setStatus(Status status) {
-        if (statusProperty == null) {
-            statusProperty = new SimpleObjectProperty<>(status);
-        } else {
-            statusProperty.set(status);
-        }
+        this.status = status;
+        statusListeners.forEach(listener -> listener.accept(status));
+    }
+
+    public void addStatusListener(Consumer<Status> listener) {
+        statusListeners.add(listener);
+    }
+
+    public void removeStatusListener(Consumer<Status> listener) {
+        statusListeners.remove(listener);
     }
 
     public void setProgress(double progress) {
@@ -82,17 +153,40 @@ public class Download implements Serializable {
         }
     }
 
+    /**
+     * number of bytes of the file that are downloaded so far
+     */
+    public synchronized int getTotalBytesRead() {
+        return totalBytesRead;
+    }
+
+    /**
+     * progress of the download as the segments report it. the segments do not touch {@link #progressProperty}, it
+     * only holds the stored progress until the download runs in this session
+     */
+    public synchronized double getProgress() {
+        if (!segmentsRunning || size == null || size == 0) {
+            return progressProperty != null ? progressProperty.get() : 0;
+        }
+        return (double) totalBytesRead / size;
+    }
+
     public void start() throws DownloadFailedException {
         log.info("started to create a request for the {}", name);
         List<Range> ranges = createRanges(size);
 
         createDownloadTasks(ranges);
 
+        // the segments report progress as soon as they are started, so the status is set up first
+        markInProgress();
+
         String filePath = getFilePath();
-        downloadTasks.forEach(t -> t.start(downloadUrl, filePath));
+        String segmentUrl = resolvedUrl != null ? resolvedUrl : downloadUrl;
+        String validator = validator();
+        startedAt = System.nanoTime();
+        segmentsRunning = true;
+        downloadTasks.forEach(t -> t.start(segmentUrl, filePath, validator));
 
-        this.progressProperty = new SimpleDoubleProperty(0);
-        statusProperty.set(Status.IN_PROGRESS);
         log.info("Finished creating request for {}", name);
     }
 
@@ -106,18 +200,112 @@ public class Download implements Serializable {
                 .filter(d -> !d.isCompleted())
                 .toList();
 
+        if (notCompletedTasks.isEmpty()) {
+            log.info("no unfinished segments to reload");
+            return;
+        }
+
+        // one HEAD request both resolves the redirect chain once instead of once per segment, and tells us
+        // whether the file changed while we were not running
+        Optional<HttpResponse<Void>> probe = UrlResolver.probe(downloadUrl);
+        if (probe.isPresent()) {
+            resolvedUrl = probe.get().uri().toString();
+            Map<String, List<String>> headers = probe.get().headers().map();
+
+            if (hasRemoteFileChanged(headers)) {
+                restartFromScratch(headers);
+                return;
+            }
+        } else if (resolvedUrl == null) {
+            resolvedUrl = downloadUrl;
+        }
+
+        totalBytesRead = downloadTasks.stream()
+                .mapToInt(t -> t.isCompleted() ? t.getRange().getTo() - t.getRange().getFrom() + 1 : t.getWritten())
+                .sum();
+
+        segmentsRunning = true;
+        String validator = validator();
         for (DownloadTask task : notCompletedTasks) {
-            task.start(downloadUrl, getFilePath());
+            // segments read from the database do not have any callbacks yet
+            task.setCallbacks(this::updateProgress, this::updateStatus);
+            task.start(resolvedUrl, getFilePath(), validator);
         }
 
-        downloadTasks = notCompletedTasks;
         log.info("finished reloading unfinished segments");
     }
 
+    /**
+     * sets the ETag and Last-Modified validators from the headers of a probe response
+     */
+    public void applyValidators(Map<String, List<String>> headers) {
+        List<String> etagHeader = headers.get(ETAG_HEADER.getValue());
+        etag = etagHeader != null && !etagHeader.isEmpty() ? etagHeader.get(0) : null;
+
+        List<String> lastModifiedHeader = headers.get(LAST_MODIFIED_HEADER.getValue());
+        lastModified = lastModifiedHeader != null && !lastModifiedHeader.isEmpty() ? lastModifiedHeader.get(0) : null;
+    }
+
+    /**
+     * If-Range only accepts a strong ETag, otherwise the Last-Modified date is used
+     */
+    private String validator() {
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+
+        return lastModified;
+    }
+
+    private boolean hasRemoteFileChanged(Map<String, List<String>> headers) {
+        List<String> etagHeader = headers.get(ETAG_HEADER.getValue());
+        if (etag != null && etagHeader != null && !etagHeader.isEmpty()) {
+            return !etag.equals(etagHeader.get(0));
+        }
+
+        List<String> lastModifiedHeader = headers.get(LAST_MODIFIED_HEADER.getValue());
+        if (lastModified != null && lastModifiedHeader != null && !lastModifiedHeader.isEmpty()) {
+            return !lastModified.equals(lastModifiedHeader.get(0));
+        }
+
+        return false;
+    }
+
+    /**
+     * throws away everything downloaded so far and downloads the new version of the remote file
+     * @param headers headers of a fresh probe of the changed file
+     */
+    private void restartFromScratch(Map<String, List<String>> headers) {
+        log.info("remote file of {} has changed, restarting the download from scratch", name);
+        downloadTasks.forEach(DownloadTask::cancel);
+
+        List<String> contentLength = headers.get(CONTENT_LENGTH_HEADER.getValue());
+        if (contentLength != null && !contentLength.isEmpty()) {
+            size = Long.valueOf(contentLength.get(0));
+        }
+        applyValidators(headers);
+
+        try {
+            Files.deleteIfExists(Path.of(getFilePath()));
+        } catch (IOException e) {
+            throw new DownloadFailedException("failed to remove the outdated file " + getFilePath(), e);
+        }
+
+        totalBytesRead = 0;
+        start();
+
+        if (tasksDAO != null) {
+            tasksDAO.updateRemoteFile(id, size, etag, lastModified);
+            tasksDAO.updateSegments(id, downloadTasks);
+        }
+    }
+
     private List<Range> createRanges(long size) {
         List<Range> ranges = new ArrayList<>();
 
-        Integer numberOfThreads = ConfigurationUtils.getConfig(ConfigurationConstants.NUMBER_OF_THREADS, Integer.class);
+        // what was learned from earlier downloads of the host decides, the configured number before the first one
+        String segmentUrl = resolvedUrl != null ? resolvedUrl : downloadUrl;
+        int numberOfThreads = HostProfiles.getInstance().segmentsFor(segmentUrl, ConfigurationUtils.getSettings());
 
         int interval = (int) Math.floorDiv(size, numberOfThreads);
         int start = 0;
@@ -150,20 +338,33 @@ public class Download implements Serializable {
         return savePath + "/" + name;
     }
 
+    /**
+     * called by the segment threads for every chunk, the table samples {@link #getProgress()} at its own pace
+     */
     private synchronized void updateProgress(int bytesRead) {
         totalBytesRead += bytesRead;
-        double completedPercentage = (double) (totalBytesRead) / size;
-        log.info("Download progress: {}\n", completedPercentage);
-        progressProperty.set(completedPercentage);
     }
 
-    private void updateStatus(Exception e) {
+    private void updateStatus(DownloadTask task, Exception e) {
         log.info("inside update status method, with input : {} , and thread: {}", e == null, Thread.currentThread().getId());
+        if (e instanceof ResolvedUrlExpiredException expired) {
+            String freshUrl = refreshResolvedUrl(expired.getExpiredUrl());
+            if (!freshUrl.equals(expired.getExpiredUrl())) {
+                log.info("resolved url of {} expired, restarting segment {} with the fresh url", name, task.getRange().rangeString());
+                task.start(freshUrl, getFilePath(), validator());
+                return;
+            }
+        }
+
+        if (e instanceof RemoteFileChangedException changed && onRemoteFileChanged(changed)) {
+            return;
+        }
+
         if (e != null) {
             log.info("inside update status method, with thread: {}, setting to ERROR", Thread.currentThread().getId());
             cancel();
-            statusProperty.set(Status.ERROR);
-            tasksDAO.updateStatus(name, Status.COMPLETED);
+            setStatus(Status.ERROR);
+            tasksDAO.updateStatus(id, Status.ERROR);
         } else {
             log.info("inside update status method, with thread: {}, setting to COMPLETE", Thread.currentThread().getId());
             boolean downloadComplete = downloadTasks.stream()
@@ -171,37 +372,182 @@ public class Download implements Serializable {
                     .allMatch(DownloadTask::isCompleted);
             if (!downloadComplete) {
                 log.info("inside update status method, with thread: {}, IS COMPLETE: {}", Thread.currentThread().getId(), downloadComplete);
+                startEndgameCopy();
                 return;
             }
 
-            statusProperty.set(Status.COMPLETED);
-            tasksDAO.updateStatus(name, Status.COMPLETED);
+            setStatus(Status.COMPLETED);
+            tasksDAO.updateStatus(id, Status.COMPLETED);
+            recordHostProfile();
+        }
+    }
+
+    private void recordHostProfile() {
+        long started = startedAt;
+        startedAt = 0;
+        if (started > 0) {
+            String segmentUrl = resolvedUrl != null ? resolvedUrl : downloadUrl;
+            HostProfiles.getInstance().recordDownload(segmentUrl, downloadTasks.size(), size, System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * endgame mode, once only a few segments are left the connection of a finished segment is used for a copy of the
+     * slowest remaining one, so the download is not held back by a single slow connection
+     */
+    private void startEndgameCopy() {
+        if (status != Status.IN_PROGRESS) {
+            return;
+        }
+
+        List<DownloadTask> remainingTasks = downloadTasks.stream()
+                .filter(t -> !t.isCompleted())
+                .toList();
+        DownloadSettings settings = ConfigurationUtils.getSettings();
+        if (remainingTasks.isEmpty() || remainingTasks.size() > settings.endgameSegments()) {
+            return;
+        }
+
+        // a copy of a tiny tail costs more in connection setup than it saves
+        int minBytes = settings.endgameMinBytes();
+        remainingTasks.stream()
+                .filter(t -> !t.hasDuplicate() && t.remaining() >= minBytes)
+                .max(Comparator.comparingInt(DownloadTask::remaining))
+                .ifPresent(slowest -> {
+                    String segmentUrl = resolvedUrl != null ? resolvedUrl : downloadUrl;
+                    if (slowest.startDuplicate(segmentUrl, getFilePath(), validator())) {
+                        log.info("endgame of {}, copying the last {} bytes of segment {}", name, slowest.remaining(), slowest.getRange().rangeString());
+                    }
+                });
+    }
+
+    /**
+     * resolves {@link #downloadUrl} again after the cached final url expired. when several segments hit the expired
+     * url at the same time only the first one resolves it, the others get the already refreshed url. it is resolved
+     * at most {@link DownloadSettings#maxSegmentRetries()} times until the download is resumed
+     */
+    private String refreshResolvedUrl(String expiredUrl) {
+        synchronized (remoteStateLock) {
+            if (resolvedUrl != null && !resolvedUrl.equals(expiredUrl)) {
+                return resolvedUrl;
+            }
+
+            // the same url is handed back, so the segment fails instead of being restarted again
+            if (urlRefreshes >= ConfigurationUtils.getSettings().maxSegmentRetries()) {
+                log.error("url of {} was resolved again {} times and is still rejected", name, urlRefreshes);
+                return expiredUrl;
+            }
+
+            urlRefreshes++;
+            resolvedUrl = UrlResolver.resolve(downloadUrl);
+            return resolvedUrl;
+        }
+    }
+
+    /**
+     * every running segment notices the change, only the first one restarts the download
+     * @return false if the download could not be restarted
+     */
+    private boolean onRemoteFileChanged(RemoteFileChangedException changed) {
+        synchronized (remoteStateLock) {
+            if (!changed.getValidator().equals(validator())) {
+                // another segment already restarted the download with the new validators
+                return true;
+            }
+
+            Optional<HttpResponse<Void>> probe = UrlResolver.probe(downloadUrl);
+            if (probe.isEmpty()) {
+                return false;
+            }
+
+            Map<String, List<String>> headers = probe.get().headers().map();
+            if (!hasRemoteFileChanged(headers)) {
+                // the server does not honour If-Range even though the file is the same, restarting would loop forever
+                log.error("server of {} ignores If-Range for an unchanged file", name);
+                return false;
+            }
+
+            resolvedUrl = probe.get().uri().toString();
+            restartFromScratch(headers);
+            return true;
         }
     }
 
     public void cancel() {
         log.info("cancelling the download of file {}", name);
-        downloadTasks.forEach(DownloadTask::cancel);
-        statusProperty.set(Status.CANCELED);
+        cancelSegments();
+        // the running status is stored, so the canceled one has to be as well
+        if (tasksDAO != null) {
+            tasksDAO.updateStatus(id, Status.CANCELED);
+        }
         log.info("cancelled the download of file {} successfully", name);
     }
 
+    /**
+     * cancels the segments without persisting anything, {@link DownloadTaskManager#cancelAll} stores many downloads at once
+     */
+    void cancelSegments() {
+        startedAt = 0;
+        if (downloadTasks != null) {
+            downloadTasks.forEach(DownloadTask::cancel);
+        }
+        setStatus(Status.CANCELED);
+    }
+
     public void pause() {
         if (!resumable) {
             String message = String.format("download of file %s cannot be paused!", name);
             throw new DownloadNotResumableException(message);
         }
 
-        downloadTasks.forEach(DownloadTask::pause);
-        statusProperty.set(Status.PAUSED);
-        tasksDAO.updateProgression(name, (double) (totalBytesRead) / size);
+        pauseSegments();
+        tasksDAO.updateStatus(id, Status.PAUSED);
+        tasksDAO.updateProgression(id, (double) (totalBytesRead) / size);
+        // the written offsets are what a later resume continues from
+        tasksDAO.updateSegments(id, downloadTasks);
         log.info("set item {} to paused status", name);
     }
 
+    /**
+     * pauses the segments without persisting anything, {@link DownloadTaskManager#pauseAll} stores many downloads at once
+     */
+    void pauseSegments() {
+        startedAt = 0;
+        if (downloadTasks != null) {
+            downloadTasks.forEach(DownloadTask::pause);
+        }
+        setStatus(Status.PAUSED);
+    }
+
     public void resume() {
-        downloadTasks.forEach(DownloadTask::resume);
-        statusProperty.set(Status.IN_PROGRESS);
+        synchronized (remoteStateLock) {
+            urlRefreshes = 0;
+        }
+
+        if (downloadTasks == null) {
+            start();
+            return;
+        }
+
+        // a segment might complete right after it is resumed, so the status is set up first
+        markInProgress();
+        if (!segmentsRunning) {
+            reloadSegments();
+        } else {
+            downloadTasks.forEach(DownloadTask::resume);
+        }
         log.info("set item {} to in progress status", name);
     }
 
+    /**
+     * the status is stored as well, a download that is still running when the application is closed is resumed on
+     * the next start
+     */
+    private void markInProgress() {
+        setStatus(Status.IN_PROGRESS);
+        if (tasksDAO != null) {
+            tasksDAO.updateStatus(id, Status.IN_PROGRESS);
+        }
+    }
+
 }
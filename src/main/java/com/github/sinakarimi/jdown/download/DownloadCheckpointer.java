@@ -0,0 +1,118 @@
+package com.github.sinakarimi.jdown.download;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.dataObjects.Status;
+import com.github.sinakarimi.jdown.database.ProgressStore;
+import com.github.sinakarimi.jdown.database.TaskStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * writes the progress and the segment offsets of the running downloads to the {@link ProgressStore} every
+ * {@link ConfigurationConstants#CHECKPOINT_INTERVAL_MILLIS}, all of them at once. if the application dies at most one
+ * interval of work is downloaded again after the restart. with the journal store the interval can be a lot shorter
+ */
+@Slf4j
+public class DownloadCheckpointer {
+
+    private static DownloadCheckpointer instance;
+
+    private final TaskStore tasksDAO;
+    private final ProgressStore progressStore;
+    /**
+     * bytes of each download at its last checkpoint, downloads that did not move are not written again
+     */
+    private Map<Download, Integer> checkpointedBytes = new IdentityHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    private DownloadCheckpointer(TaskStore tasksDAO, ProgressStore progressStore) {
+        this.tasksDAO = tasksDAO;
+        this.progressStore = progressStore;
+    }
+
+    public static synchronized DownloadCheckpointer getInstance(TaskStore tasksDAO, ProgressStore progressStore) {
+        if (instance == null) {
+            instance = new DownloadCheckpointer(tasksDAO, progressStore);
+        }
+        return instance;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+
+        int interval = ConfigurationUtils.getSettings().checkpointIntervalMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "download-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkpoint, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("checkpointing running downloads every {} ms", interval);
+    }
+
+    /**
+     * stops the schedule and writes a last checkpoint
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+        checkpoint();
+    }
+
+    /**
+     * persists every running download that made progress since its last checkpoint
+     */
+    public synchronized void checkpoint() {
+        Map<Download, Integer> current = new IdentityHashMap<>();
+        List<Download> changed = new ArrayList<>();
+        try {
+            // the list belongs to the JavaFX thread, a copy is enough to find the running downloads
+            for (Download download : new ArrayList<>(tasksDAO.getTasksList())) {
+                if (download.getStatus() != Status.IN_PROGRESS || download.getDownloadTasks() == null) {
+                    continue;
+                }
+                // a download waiting to be resumed has not counted its written bytes yet
+                if (!download.isSegmentsRunning()) {
+                    continue;
+                }
+
+                int bytes = download.getTotalBytesRead();
+                current.put(download, bytes);
+                Integer previous = checkpointedBytes.get(download);
+                if (previous == null || previous != bytes) {
+                    changed.add(download);
+                }
+            }
+
+            if (!changed.isEmpty()) {
+                progressStore.save(changed);
+            }
+        } catch (Exception e) {
+            // forget what was not written so the next tick tries the same downloads again
+            changed.forEach(current::remove);
+            log.error("failed to checkpoint the running downloads", e);
+        }
+
+        checkpointedBytes = current;
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.github.sinakarimi.jdown.download;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.dataObjects.Status;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * holds downloads that are waiting to be started and starts them one by one, so that no more than
+ * {@link ConfigurationConstants#MAX_CONCURRENT_DOWNLOADS} downloads are transferring at the same time
+ */
+@Slf4j
+public class DownloadQueue {
+
+    private final Deque<QueuedDownload> pending = new ArrayDeque<>();
+    private final Executor starters;
+    /**
+     * slots taken by downloads that are running or still being started
+     */
+    private int running = 0;
+
+    public DownloadQueue() {
+        this(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "download-starter");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param starters runs the starts and resumes of the queued downloads
+     */
+    public DownloadQueue(Executor starters) {
+        this.starters = starters;
+    }
+
+    public synchronized void enqueue(Download download) {
+        pending.addLast(new QueuedDownload(download, download::start));
+        startNext();
+    }
+
+    public synchronized void enqueueAll(Collection<Download> downloads) {
+        downloads.forEach(d -> pending.addLast(new QueuedDownload(d, d::start)));
+        log.info("{} downloads added to the queue, {} downloads are waiting", downloads.size(), pending.size());
+        startNext();
+    }
+
+    /**
+     * queues downloads read from the database, they continue from their written segments when their turn comes
+     */
+    public synchronized void resumeAll(Collection<Download> downloads) {
+        downloads.forEach(d -> pending.addLast(new QueuedDownload(d, d::resume)));
+        log.info("{} downloads queued to be resumed, {} downloads are waiting", downloads.size(), pending.size());
+        startNext();
+    }
+
+    /**
+     * takes the given downloads out of the queue if they are still waiting, they are not started later
+     */
+    public synchronized void removeAll(Collection<Download> downloads) {
+        Set<Download> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        removed.addAll(downloads);
+        pending.removeIf(queued -> removed.contains(queued.download()));
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    public synchronized int runningCount() {
+        return running;
+    }
+
+    /**
+     * takes as many downloads as there are free slots, their starters run on {@link #starters} outside the lock of the
+     * queue. resuming a download probes its url, the thread that frees a slot, which can be the FX thread, must not
+     * wait for that
+     */
+    private void startNext() {
+        while (running < maxConcurrentDownloads() && !pending.isEmpty()) {
+            QueuedDownload queued = pending.pollFirst();
+            running++;
+            starters.execute(() -> start(queued));
+        }
+    }
+
+    private void start(QueuedDownload queued) {
+        Download download = queued.download();
+
+        try {
+            queued.starter().run();
+        } catch (Exception e) {
+            log.error("failed to start queued download {}", download.getName(), e);
+            release();
+            return;
+        }
+
+        // the listener and the check below can both see the download leave the in progress state, only the
+        // first of them frees the slot
+        AtomicBoolean released = new AtomicBoolean(false);
+        // the slot is freed as soon as the download leaves the in progress state, whatever the reason is
+        Consumer<Status> slotReleaser = new Consumer<>() {
+            @Override
+            public void accept(Status status) {
+                if (status != Status.IN_PROGRESS) {
+                    download.removeStatusListener(this);
+                    if (released.compareAndSet(false, true)) {
+                        release();
+                    }
+                }
+            }
+        };
+        download.addStatusListener(slotReleaser);
+
+        // small files might already be finished before the listener was attached
+        if (download.getStatus() != Status.IN_PROGRESS && released.compareAndSet(false, true)) {
+            download.removeStatusListener(slotReleaser);
+            release();
+        }
+    }
+
+    private synchronized void release() {
+        running--;
+        startNext();
+    }
+
+    private record QueuedDownload(Download download, Runnable starter) {
+    }
+
+    private int maxConcurrentDownloads() {
+        return ConfigurationUtils.getSettings().maxConcurrentDownloads();
+    }
+
+}
@@ -2,24 +2,35 @@ package com.github.sinakarimi.jdown.download;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.github.sinakarimi.jdown.common.HttpUtils;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.configuration.DownloadSettings;
 import com.github.sinakarimi.jdown.dataObjects.Range;
+import com.github.sinakarimi.jdown.exception.RemoteFileChangedException;
+import com.github.sinakarimi.jdown.exception.ResolvedUrlExpiredException;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
-import static com.github.sinakarimi.jdown.common.HttpConstants.GET_METHOD;
+import static com.github.sinakarimi.jdown.common.HttpConstants.IF_RANGE_HEADER;
 import static com.github.sinakarimi.jdown.common.HttpConstants.RANGE;
 
 @Slf4j
@@ -28,86 +39,217 @@ import static com.github.sinakarimi.jdown.common.HttpConstants.RANGE;
 public class DownloadTask {
 
     @JsonIgnore
-    private PausableInputStream pausableInputStream;
+    private volatile PausableInputStream pausableInputStream;
     @Getter
     @Setter
     private Range range;
     @Getter
     @Setter
-    private boolean completed = false;
+    private volatile boolean completed = false;
+    /**
+     * number of bytes of the range that are already written to the file, a restarted segment continues after them
+     */
+    @Getter
+    @Setter
+    private volatile int written = 0;
 
     @JsonIgnore
     private Consumer<Integer> updateProgressConsumer;
     @JsonIgnore
-    private Consumer<Exception> updateStatusConsumer;
+    private BiConsumer<DownloadTask, Exception> updateStatusConsumer;
+    @JsonIgnore
+    private volatile boolean canceled = false;
+    @JsonIgnore
+    private volatile boolean paused = false;
+    /**
+     * number of consecutive runs that failed without writing anything, reset whenever a run makes progress
+     */
+    @JsonIgnore
+    private int retries = 0;
+    /**
+     * endgame copy of this segment, or the segment this task is a copy of. both copies write through the
+     * {@link #written} offset of the original segment, so every byte is written once by whichever copy delivers it first
+     */
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private DownloadTask duplicate;
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private DownloadTask original;
 
     public DownloadTask() {
     }
 
-    public DownloadTask(Range range, Consumer<Integer> updateProgressConsumer, Consumer<Exception> updateStatusConsumer) {
+    public DownloadTask(Range range, Consumer<Integer> updateProgressConsumer, BiConsumer<DownloadTask, Exception> updateStatusConsumer) {
         this.range = range;
         this.updateProgressConsumer = updateProgressConsumer;
         this.updateStatusConsumer = updateStatusConsumer;
     }
 
+    private DownloadTask(DownloadTask original, Range range) {
+        this.original = original;
+        this.range = range;
+        this.paused = original.paused;
+        this.updateProgressConsumer = original.updateProgressConsumer;
+        this.updateStatusConsumer = original.updateStatusConsumer;
+    }
+
+    void setCallbacks(Consumer<Integer> updateProgressConsumer, BiConsumer<DownloadTask, Exception> updateStatusConsumer) {
+        this.updateProgressConsumer = updateProgressConsumer;
+        this.updateStatusConsumer = updateStatusConsumer;
+    }
+
     public void start(String downloadUrl, String path) {
+        start(downloadUrl, path, null);
+    }
+
+    /**
+     * @param validator ETag or Last-Modified value of the file, sent as If-Range so a changed file is not
+     *                  appended to what is already written
+     */
+    public void start(String downloadUrl, String path, String validator) {
         CompletableFuture.runAsync(() -> {
-            HttpURLConnection connection = null;
+            SegmentConnection connection = null;
+            InetAddress localAddress = null;
+            long startedAt = System.nanoTime();
             FileChannel fileChannel = null;
+            // the segment might be restarted while this run is still finishing, so it only ever closes its own stream
+            PausableInputStream inputStream = null;
+            BufferPool bufferPool = null;
+            ByteBuffer buffer = null;
+            SegmentWatchdog.WatchedSegment watched = null;
+            // an endgame copy writes through the offset of its original segment
+            DownloadTask segment = original != null ? original : this;
+            int writtenAtStart = segment.written;
+            AtomicInteger received = new AtomicInteger();
+            int responseCode = 0;
+            boolean failed = false;
 
             try {
                 // Open HTTP connection
                 URL url = new URL(downloadUrl);
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod(GET_METHOD.getValue());
+                // on hosts with several uplinks the segments are spread over the configured source addresses
+                localAddress = LocalAddressSelector.getInstance().next();
+                connection = SegmentConnection.open(url, localAddress);
+                DownloadSettings settings = ConfigurationUtils.getSettings();
+                connection.setConnectTimeout(settings.connectTimeoutMillis());
+                // a read that gets no byte for a whole stall window has stalled anyway, and the stream of the JDK
+                // connection cannot be closed under a blocked read, so the watchdog would have to wait for the timeout
+                connection.setReadTimeout(Math.min(settings.readTimeoutMillis(), settings.stallWindowMillis()));
                 // set a header
                 connection.setRequestProperty(RANGE.getValue(), createRangeHeader());
+                if (validator != null) {
+                    connection.setRequestProperty(IF_RANGE_HEADER.getValue(), validator);
+                }
 
                 // Check for successful response
-                int responseCode = connection.getResponseCode();
+                responseCode = connection.getResponseCode();
+                if (HttpUtils.isExpired(responseCode)) {
+                    String exceptionMessage = String.format("Server returned HTTP response code: %d for range %s, url has expired", responseCode, range.rangeString());
+                    throw new ResolvedUrlExpiredException(exceptionMessage, downloadUrl);
+                }
+
                 if (!HttpUtils.isStatusCode2xx(responseCode)) {
                     String exceptionMessage = String.format("Server returned HTTP response code: %d for range %s", responseCode, range.rangeString());
                     throw new IOException(exceptionMessage);
                 }
 
+                // the validator did not match, the server is sending the whole new file instead of our range
+                if (validator != null && responseCode == HttpURLConnection.HTTP_OK) {
+                    String exceptionMessage = String.format("file has changed, server ignored If-Range for range %s", range.rangeString());
+                    throw new RemoteFileChangedException(exceptionMessage, validator);
+                }
+
                 // Open file channel in READ_WRITE mode (create if needed)
                 Path filePath = Path.of(path);
                 fileChannel = FileChannel.open(filePath, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
 
-                // Set the file position where writing will start
-                fileChannel.position(range.getFrom());
+                // the file position of the next byte this stream delivers
+                long position = (long) range.getFrom() + written;
 
                 // Get input stream from the connection
-                pausableInputStream = new PausableInputStream(connection.getInputStream());
+                inputStream = new PausableInputStream(connection.getInputStream());
+                pausableInputStream = inputStream;
+                // the segment might have been paused or canceled before its stream existed
+                if (canceled) {
+                    return;
+                }
+                if (paused) {
+                    inputStream.pause();
+                }
+
+                watched = SegmentWatchdog.getInstance().watch(range.rangeString(), inputStream, received::get);
 
-                // Buffer for reading data
-                ByteBuffer buffer = ByteBuffer.allocate(8192); // 8KB buffer
+                // Buffer for reading data, shared with the other segments through the pool
+                bufferPool = BufferPool.getInstance();
+                buffer = bufferPool.acquire();
+                // a channel reads into heap and direct buffers alike
+                ReadableByteChannel source = Channels.newChannel(inputStream);
 
                 // Stream data directly to file
                 int bytesRead;
-                while ((bytesRead = pausableInputStream.read(buffer.array())) != -1) {
-                    // Prepare buffer for writing
-                    buffer.limit(bytesRead);
-                    fileChannel.write(buffer);
-                    buffer.clear();
+                while ((bytesRead = source.read(buffer)) != -1) {
+                    received.addAndGet(bytesRead);
+                    BandwidthLimiter.getInstance().acquire(bytesRead);
+                    int newBytes = segment.write(fileChannel, buffer, position, bytesRead);
+                    position += bytesRead;
+
+                    if (newBytes > 0) {
+                        updateProgressConsumer.accept(newBytes);
+                    }
+
+                    // the other copy of an endgame segment finished first
+                    if (canceled || segment.completed) {
+                        return;
+                    }
 
-                    updateProgressConsumer.accept(bytesRead);
+                    // a stream that sends nothing at all is closed by the watchdog, a trickling one is caught here
+                    if (watched.isStalled()) {
+                        throw new IOException(String.format("segment %s is too slow, giving up its connection", range.rangeString()));
+                    }
+                }
+
+                if (segment.remaining() > 0) {
+                    throw new EOFException(String.format("connection closed after %d bytes of range %s", received.get(), range.rangeString()));
                 }
 
-                completed = true;
-                updateStatusConsumer.accept(null);
+                if (segment.markCompleted(this)) {
+                    updateStatusConsumer.accept(segment, null);
+                }
             } catch (Exception e) {
-                log.error("encountered an error when trying to complete task {}", range.rangeString(), e);
-                throw new RuntimeException(e);
+                failed = !canceled;
+                // closing the stream of a canceled segment makes the read fail, that is not an error
+                if (!canceled && original != null) {
+                    // the original segment is still running, so a failing endgame copy is simply dropped
+                    log.warn("endgame copy of segment {} failed, the segment continues on its own connection", range.rangeString(), e);
+                    original.dropDuplicate(this);
+                } else if (!canceled) {
+                    boolean stalled = watched != null && watched.isStalled();
+                    if (isRetryable(e, stalled) && shouldRetry(writtenAtStart)) {
+                        log.warn("segment {} {}, reissuing the remaining range (retry {})", range.rangeString(), stalled ? "stalled" : "was interrupted", retries);
+                        start(downloadUrl, path, validator);
+                    } else {
+                        log.error("encountered an error when trying to complete task {}", range.rangeString(), e);
+                        updateStatusConsumer.accept(this, e);
+                    }
+                }
             } finally {
+                if (watched != null) {
+                    SegmentWatchdog.getInstance().unwatch(watched);
+                }
+                if (buffer != null) {
+                    bufferPool.release(buffer);
+                }
                 // Close resources in reverse order of creation
-                if (pausableInputStream != null) {
+                if (inputStream != null) {
                     try {
-                        pausableInputStream.close();
+                        inputStream.close();
                     } catch (IOException e) {
                         // Log or handle error
                         log.error("error occurred while trying to close the input stream!!!", e);
-                        updateStatusConsumer.accept(e);
+                        updateStatusConsumer.accept(this, e);
                     }
                 }
                 if (fileChannel != null) {
@@ -116,25 +258,50 @@ public class DownloadTask {
                     } catch (IOException e) {
                         // Log or handle error
                         log.error("error occurred while trying to close the file channel!!!", e);
-                        updateStatusConsumer.accept(e);
+                        updateStatusConsumer.accept(this, e);
                     }
                 }
                 if (connection != null) {
                     connection.disconnect();
                 }
+                long elapsed = System.nanoTime() - startedAt;
+                if (localAddress != null) {
+                    LocalAddressSelector.getInstance().record(localAddress, received.get(), elapsed);
+                }
+                HostProfiles.getInstance().recordConnection(downloadUrl, responseCode, received.get(), elapsed, failed);
             }
         });
     }
 
     public void pause() {
-        pausableInputStream.pause();
+        paused = true;
+        if (pausableInputStream != null) {
+            pausableInputStream.pause();
+        }
+        if (duplicate != null) {
+            duplicate.pause();
+        }
     }
 
     public void resume() {
-        pausableInputStream.resume();
+        paused = false;
+        if (pausableInputStream != null) {
+            pausableInputStream.resume();
+        }
+        if (duplicate != null) {
+            duplicate.resume();
+        }
     }
 
     public void cancel() {
+        canceled = true;
+        if (duplicate != null) {
+            duplicate.cancel();
+        }
+        if (pausableInputStream == null) {
+            return;
+        }
+
         try {
             pausableInputStream.close();
         } catch (IOException e) {
@@ -143,12 +310,107 @@ public class DownloadTask {
         }
     }
 
+    /**
+     * endgame mode, starts a second copy of the unwritten tail of this segment on another connection. the copy that
+     * delivers a byte first writes it, the other one drops it, and the slower copy stops once the segment is complete
+     * @return false if the segment is already finished or copied, or its end is unknown
+     */
+    public synchronized boolean startDuplicate(String downloadUrl, String path, String validator) {
+        if (completed || canceled || duplicate != null || original != null || range.getTo() == -1) {
+            return false;
+        }
+
+        duplicate = new DownloadTask(this, new Range(range.getFrom() + written, range.getTo()));
+        duplicate.start(downloadUrl, path, validator);
+        return true;
+    }
+
+    public synchronized boolean hasDuplicate() {
+        return duplicate != null;
+    }
+
+    /**
+     * number of bytes of the range that are not written yet, unknown for a range without an end
+     */
+    public int remaining() {
+        if (range.getTo() == -1) {
+            return 0;
+        }
+        return range.getTo() - range.getFrom() + 1 - written;
+    }
+
+    /**
+     * writes the part of the chunk that is beyond the written offset of the segment, the part before it was already
+     * written by the other endgame copy
+     * @param position file position of the first byte of the chunk
+     * @return number of bytes that were actually written
+     */
+    private synchronized int write(FileChannel fileChannel, ByteBuffer buffer, long position, int length) throws IOException {
+        long frontier = (long) range.getFrom() + written;
+        int skip = (int) Math.min(length, Math.max(0, frontier - position));
+        if (completed || skip == length) {
+            buffer.clear();
+            return 0;
+        }
+
+        buffer.limit(length);
+        buffer.position(skip);
+        long writePosition = position + skip;
+        while (buffer.hasRemaining()) {
+            writePosition += fileChannel.write(buffer, writePosition);
+        }
+        buffer.clear();
+
+        written += length - skip;
+        return length - skip;
+    }
+
+    /**
+     * @param finisher the copy whose stream completed the segment
+     * @return true only for the first copy, the other copy is stopped
+     */
+    private synchronized boolean markCompleted(DownloadTask finisher) {
+        if (completed) {
+            return false;
+        }
+
+        completed = true;
+        DownloadTask loser = finisher == this ? duplicate : this;
+        if (loser != null) {
+            // its reading loop notices the flag after the next chunk, closing the stream here would block on its read
+            loser.canceled = true;
+        }
+        return true;
+    }
+
+    private synchronized void dropDuplicate(DownloadTask copy) {
+        if (duplicate == copy) {
+            duplicate = null;
+        }
+    }
+
+    /**
+     * a stalled, timed out or cut short connection is worth reissuing, the server answered the range before
+     */
+    private boolean isRetryable(Exception e, boolean stalled) {
+        return stalled || e instanceof SocketTimeoutException || e instanceof EOFException;
+    }
+
+    private boolean shouldRetry(int writtenAtStart) {
+        if (written > writtenAtStart) {
+            retries = 0;
+        }
+
+        return retries++ < ConfigurationUtils.getSettings().maxSegmentRetries();
+    }
+
     private String createRangeHeader() {
         String rangeValues;
+        int from = range.getFrom() + written;
         if (range.getTo() == -1) {
-            rangeValues = String.format("bytes=%d-", range.getFrom());
+            rangeValues = String.format("bytes=%d-", from);
         } else {
-            rangeValues = String.format("bytes=%d-%d", range.getFrom(), range.getTo());
+            rangeValues = String.format("bytes=%d-%d", from, range.getTo());
         }
         return rangeValues;
     }
@@ -1,31 +1,70 @@
 package com.github.sinakarimi.jdown.download;
 
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
 import com.github.sinakarimi.jdown.dataObjects.Status;
-import com.github.sinakarimi.jdown.database.TasksDAO;
+import com.github.sinakarimi.jdown.database.PagedTasksList;
+import com.github.sinakarimi.jdown.database.TaskStore;
 import com.github.sinakarimi.jdown.exception.FileDataRequestFailedException;
 import javafx.collections.ObservableList;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 
 import java.net.URI;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import static com.github.sinakarimi.jdown.common.HttpConstants.*;
 
+@Slf4j
 public class DownloadTaskManager {
 
     public static DownloadTaskManager INSTANCE = null;
 
-    private final TasksDAO dbManger;
+    private static final int IMPORT_BATCH_SIZE = 200;
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 10;
+    private static final int IDLE_THREAD_SECONDS = 60;
 
-    private DownloadTaskManager(TasksDAO dbManger) {
+    private final TaskStore dbManger;
+    @Getter
+    private final DownloadQueue downloadQueue = new DownloadQueue();
+    private final StartupResumer startupResumer = new StartupResumer(downloadQueue);
+    /**
+     * the probes of the dialogs run here, at most {@link ConfigurationConstants#PROBE_PARALLELISM} at a time like the
+     * probes of a batch, the others wait for a free thread
+     */
+    private final ThreadPoolExecutor probeExecutor = boundedPool(ConfigurationUtils.getSettings().probeParallelism(), daemonThreads("task-probe"));
+    /**
+     * the saves and state changes asked for by the window run here one after the other, in the order they were asked
+     * for, so a task is never deleted before it was stored
+     */
+    private final ExecutorService storeExecutor = Executors.newSingleThreadExecutor(daemonThreads("task-store"));
+
+    private DownloadTaskManager(TaskStore dbManger) {
         this.dbManger = dbManger;
     }
 
-    public static DownloadTaskManager getInstance(TasksDAO dbManger) {
+    public static DownloadTaskManager getInstance(TaskStore dbManger) {
         if (INSTANCE == null) {
             INSTANCE = new DownloadTaskManager(dbManger);
         }
@@ -34,11 +73,83 @@ public class DownloadTaskManager {
     }
 
     public Download createTask(String url, String savedAddress) throws FileDataRequestFailedException {
+        return createTask(null, url, savedAddress);
+    }
+
+    /**
+     * probes the url in the background, the window stays responsive however long the origin takes to answer
+     * @return fails with a {@link FileDataRequestFailedException} if the file data could not be fetched
+     */
+    public CompletableFuture<Download> createTaskAsync(String url, String savedAddress) {
+        resize(probeExecutor, ConfigurationUtils.getSettings().probeParallelism());
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return createTask(url, savedAddress);
+            } catch (FileDataRequestFailedException e) {
+                throw new CompletionException(e);
+            }
+        }, probeExecutor);
+    }
+
+    /**
+     * probes all the given urls concurrently, at most {@link ConfigurationConstants#PROBE_PARALLELISM} at a time and
+     * all through one shared {@link HttpClient} so the probes reuse its connection pool. the results are handed to the
+     * batchConsumer in batches of {@link #IMPORT_BATCH_SIZE} as soon as they are ready, so they can be persisted while the
+     * remaining urls are still being probed. urls that fail to be probed are logged and skipped.
+     * @param urls the urls to import
+     * @param savedAddress the directory all the files are going to be saved in
+     * @param batchConsumer called on the importing thread with every batch of probed downloads
+     * @return number of urls that were probed successfully
+     */
+    public int createTasks(List<String> urls, String savedAddress, Consumer<List<Download>> batchConsumer) {
+        log.info("started bulk import of {} urls", urls.size());
+        int parallelism = ConfigurationUtils.getSettings().probeParallelism();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(urls.size(), 1)));
+        CompletionService<Download> completionService = new ExecutorCompletionService<>(executor);
+        HttpClient client = HttpClient.newHttpClient();
+        int imported = 0;
+
+        try {
+            for (String url : urls) {
+                completionService.submit(() -> createTask(client, url, savedAddress));
+            }
+
+            List<Download> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+            for (int i = 0; i < urls.size(); i++) {
+                try {
+                    batch.add(completionService.take().get());
+                    imported++;
+                } catch (ExecutionException e) {
+                    log.error("failed to fetch file data during bulk import", e.getCause());
+                }
+
+                if (batch.size() == IMPORT_BATCH_SIZE) {
+                    batchConsumer.accept(batch);
+                    batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                batchConsumer.accept(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("bulk import was interrupted after {} urls", imported);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        log.info("finished bulk import, {} of {} urls were imported", imported, urls.size());
+        return imported;
+    }
+
+    private Download createTask(HttpClient client, String url, String savedAddress) throws FileDataRequestFailedException {
         Download downloadTask = Download.builder()
                 .tasksDAO(dbManger)
                 .build();
         downloadTask.setDownloadUrl(url);
-        Optional<HttpResponse<Void>> itemData = getItemData(url);
+        Optional<HttpResponse<Void>> itemData = getItemData(client, url);
 
         if (itemData.isPresent()) {
             HttpResponse<Void> headRequestResponse = itemData.get();
@@ -53,6 +164,10 @@ public class DownloadTaskManager {
             if (acceptRanges != null && !acceptRanges.isEmpty()) {
                 downloadTask.setResumable(true);
             }
+            // a missing header does not mean ranges are refused, only "none" does
+            Boolean rangeSupported = acceptRanges == null || acceptRanges.isEmpty() ? null : !"none".equalsIgnoreCase(acceptRanges.get(0));
+            URI probedUri = headRequestResponse.uri() != null ? headRequestResponse.uri() : URI.create(url);
+            HostProfiles.getInstance().recordProbe(probedUri.toString(), rangeSupported, headRequestResponse.version() == HttpClient.Version.HTTP_2);
 
             List<String> contentLength = headers.get(CONTENT_LENGTH_HEADER.getValue());
             if (contentLength != null && !contentLength.isEmpty()) {
@@ -64,6 +179,14 @@ public class DownloadTaskManager {
                 downloadTask.setType(contentType.get(0));
             }
 
+            // segments connect to the end of the redirect chain directly
+            URI finalUri = headRequestResponse.uri();
+            if (finalUri != null && !finalUri.toString().equals(url)) {
+                downloadTask.setResolvedUrl(finalUri.toString());
+            }
+
+            downloadTask.applyValidators(headers);
+
             String fileName = getFileName(url, headers);
             downloadTask.setName(fileName);
             downloadTask.setStatus(Status.PAUSED);
@@ -73,10 +196,56 @@ public class DownloadTaskManager {
         return downloadTask;
     }
 
+    /**
+     * opens the connections of the download in the background, so its segments can start transferring right away
+     */
+    public CompletableFuture<Void> preWarm(Download download) {
+        String url = download.getResolvedUrl() != null ? download.getResolvedUrl() : download.getDownloadUrl();
+        return ConnectionPreWarmer.preWarm(url, HostProfiles.getInstance().segmentsFor(url, ConfigurationUtils.getSettings()));
+    }
+
     public void saveTask(Download download) {
         dbManger.insert(download);
     }
 
+    public CompletableFuture<Void> saveTaskAsync(Download download) {
+        return CompletableFuture.runAsync(() -> saveTask(download), storeExecutor);
+    }
+
+    /**
+     * persists all the downloads in one transaction and queues them for download. files that would end up with
+     * the same name in the same directory are renamed, so they do not overwrite each other.
+     */
+    public void saveTasks(List<Download> downloads) {
+        Set<String> takenNames = new HashSet<>();
+        dbManger.getTasksList().forEach(d -> takenNames.add(d.getName()));
+
+        for (Download download : downloads) {
+            download.setName(uniqueName(download.getName(), takenNames));
+        }
+
+        dbManger.insertAll(downloads);
+        downloadQueue.enqueueAll(downloads);
+    }
+
+    public CompletableFuture<Void> saveTasksAsync(List<Download> downloads) {
+        return CompletableFuture.runAsync(() -> saveTasks(downloads), storeExecutor);
+    }
+
+    private String uniqueName(String name, Set<String> takenNames) {
+        String candidate = name;
+        int counter = 1;
+        while (!takenNames.add(candidate)) {
+            int extensionIndex = name.lastIndexOf('.');
+            candidate = extensionIndex > 0
+                    ? String.format("%s (%d)%s", name.substring(0, extensionIndex), counter, name.substring(extensionIndex))
+                    : String.format("%s (%d)", name, counter);
+            counter++;
+        }
+
+        return candidate;
+    }
+
     private String getFileName(String url, Map<String, List<String>> headers) {
         List<String> contentDisposition = headers.get(CONTENT_DISPOSITION_HEADER.getValue());
         if (contentDisposition != null && !contentDisposition.isEmpty() && contentDisposition.get(0).contains(FILENAME_TAG.getValue())) {
@@ -88,17 +257,11 @@ public class DownloadTaskManager {
         }
     }
 
-    private Optional<HttpResponse<Void>> getItemData(String fileUrl) throws FileDataRequestFailedException {
+    private Optional<HttpResponse<Void>> getItemData(HttpClient sharedClient, String fileUrl) throws FileDataRequestFailedException {
         HttpResponse<Void> response;
         try {
-            HttpClient client = HttpClient.newHttpClient();
-
-            HttpRequest request = HttpRequest
-                    .newBuilder(URI.create(fileUrl))
-                    .method(HEAD_METHOD.getValue(), HttpRequest.BodyPublishers.noBody())
-                    .build();
-
-            response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            HttpClient client = sharedClient != null ? sharedClient : HttpClient.newHttpClient();
+            response = UrlResolver.headFollowingRedirects(client, URI.create(fileUrl));
         } catch (Exception e) {
             throw new FileDataRequestFailedException("Failed to fetch the requested file data", e);
         }
@@ -106,13 +269,191 @@ public class DownloadTaskManager {
         return Optional.ofNullable(response);
     }
 
-    public ObservableList<Download> listAllDownloadTasks() {
-        dbManger.loadAllTasks();
-        return dbManger.getTasksList();
+    /**
+     * loads the active tasks, the older history is read by the returned list a page at a time. the downloads that
+     * were running when the application was closed are resumed in the background
+     */
+    public PagedTasksList listAllDownloadTasks() {
+        dbManger.loadActiveTasks();
+        startupResumer.resume(List.copyOf(dbManger.getTasksList()));
+        return listTasks();
+    }
+
+    /**
+     * the tasks that are already loaded followed by the history, as it is in the database now
+     */
+    public PagedTasksList listTasks() {
+        return new PagedTasksList(dbManger, historyPageSize());
+    }
+
+    /**
+     * the tasks whose name, url, description or type match the query, read a page at a time
+     */
+    public PagedTasksList searchTasks(String query) {
+        return PagedTasksList.search(dbManger, query, historyPageSize());
+    }
+
+    /**
+     * the archived tasks, read a page at a time
+     */
+    public PagedTasksList listArchivedTasks() {
+        return PagedTasksList.archive(dbManger, historyPageSize());
+    }
+
+    private int historyPageSize() {
+        return ConfigurationUtils.getSettings().historyPageSize();
     }
 
     public void deleteTask(Download task) {
-        dbManger.delete(task.getName());
+        dbManger.delete(task.getId());
+    }
+
+    /**
+     * pauses the running downloads among the given ones and the waiting ones are taken out of the queue. the segments
+     * are paused in parallel and the state of all the downloads is stored in one transaction
+     */
+    public void pauseAll(Collection<Download> downloads) {
+        downloadQueue.removeAll(downloads);
+        List<Download> running = downloads.stream()
+                .filter(d -> d.getStatus() == Status.IN_PROGRESS)
+                .filter(d -> Boolean.TRUE.equals(d.getResumable()))
+                .toList();
+
+        List<Download> paused = forEachInParallel(running, Download::pauseSegments);
+        dbManger.updateAll(paused, Status.PAUSED);
+        log.info("paused {} of {} downloads", paused.size(), downloads.size());
+    }
+
+    /**
+     * {@link #pauseAll(Collection)} in the background, waiting for the segments to stop does not freeze the window
+     */
+    public CompletableFuture<Void> pauseAllAsync(Collection<Download> downloads) {
+        return CompletableFuture.runAsync(() -> pauseAll(downloads), storeExecutor);
+    }
+
+    /**
+     * queues the paused and failed downloads among the given ones, they are resumed in the background as slots of the
+     * queue become free
+     */
+    public void resumeAll(Collection<Download> downloads) {
+        List<Download> resumable = downloads.stream()
+                .filter(d -> d.getStatus() == Status.PAUSED || d.getStatus() == Status.ERROR)
+                .toList();
+
+        log.info("resuming {} of {} downloads", resumable.size(), downloads.size());
+        downloadQueue.resumeAll(resumable);
+    }
+
+    /**
+     * {@link #resumeAll(Collection)} after the pauses and cancels asked for before it, the probes of the resumed
+     * downloads run on the starters of the queue
+     */
+    public CompletableFuture<Void> resumeAllAsync(Collection<Download> downloads) {
+        return CompletableFuture.runAsync(() -> resumeAll(downloads), storeExecutor);
+    }
+
+    /**
+     * cancels the unfinished downloads among the given ones, in parallel, and stores them in one transaction
+     */
+    public void cancelAll(Collection<Download> downloads) {
+        downloadQueue.removeAll(downloads);
+        List<Download> unfinished = downloads.stream()
+                .filter(d -> d.getStatus() != Status.COMPLETED && d.getStatus() != Status.CANCELED)
+                .toList();
+
+        List<Download> canceled = forEachInParallel(unfinished, Download::cancelSegments);
+        dbManger.updateAll(canceled, Status.CANCELED);
+        log.info("canceled {} of {} downloads", canceled.size(), downloads.size());
+    }
+
+    public CompletableFuture<Void> cancelAllAsync(Collection<Download> downloads) {
+        return CompletableFuture.runAsync(() -> cancelAll(downloads), storeExecutor);
+    }
+
+    /**
+     * stops the given downloads and deletes them in one transaction. paused downloads are stopped too, their segments
+     * still hold a connection and a buffer
+     */
+    public void deleteTasks(Collection<Download> downloads) {
+        downloadQueue.removeAll(downloads);
+        List<Download> running = downloads.stream()
+                .filter(d -> d.getStatus() == Status.IN_PROGRESS || d.getStatus() == Status.PAUSED)
+                .toList();
+
+        forEachInParallel(running, Download::cancelSegments);
+        dbManger.delete(downloads.stream().map(Download::getId).toList());
+    }
+
+    /**
+     * @return completes once the tasks are deleted from the store
+     */
+    public CompletableFuture<Void> deleteTasksAsync(Collection<Download> downloads) {
+        return CompletableFuture.runAsync(() -> deleteTasks(downloads), storeExecutor);
+    }
+
+    /**
+     * waits for the saves and state changes that were already asked for, so they are stored before the store is
+     * closed. the probes still running are abandoned
+     */
+    public void shutdown() {
+        probeExecutor.shutdownNow();
+        storeExecutor.shutdown();
+        try {
+            if (!storeExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("the pending task changes did not finish in {} seconds", SHUTDOWN_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * a fixed number of threads that end when they are idle for a while
+     */
+    private static ThreadPoolExecutor boundedPool(int threads, ThreadFactory threadFactory) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * follows a changed setting, the maximum can never be below the core size
+     */
+    private static void resize(ThreadPoolExecutor executor, int threads) {
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else if (threads < executor.getCorePoolSize()) {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @return the downloads the action succeeded for, a failure of one download does not stop the others
+     */
+    private static List<Download> forEachInParallel(List<Download> downloads, Consumer<Download> action) {
+        return downloads.parallelStream()
+                .filter(d -> {
+                    try {
+                        action.accept(d);
+                        return true;
+                    } catch (Exception e) {
+                        log.error("failed to change the state of download {}", d.getName(), e);
+                        return false;
+                    }
+                })
+                .toList();
     }
 
 }
@@ -0,0 +1,55 @@
+package com.github.sinakarimi.jdown.download;
+
+/**
+ * what was learned about a host from the downloads and connections to it so far
+ * @param connectionThroughput moving average of the bytes per second of a single segment connection
+ * @param bestSegments number of segments of the fastest download measured so far, 0 before the first one
+ * @param bestThroughput bytes per second of the whole download with {@link #bestSegments} segments
+ * @param ceilingSegments smallest number of segments above the best one that was tried and was not faster, 0 if none
+ * @param rangeSupported null until a probe of the host told whether it serves ranges
+ * @param http2 null until a probe of the host told the protocol it speaks
+ * @param requests segment connections opened to the host, halved together with the counts below from time to time so
+ *                 old failures fade out
+ * @param errors connections that failed
+ * @param throttled connections answered with 429 Too Many Requests
+ */
+public record HostProfile(String host,
+                          long connectionThroughput,
+                          int bestSegments,
+                          long bestThroughput,
+                          int ceilingSegments,
+                          Boolean rangeSupported,
+                          Boolean http2,
+                          long requests,
+                          long errors,
+                          long throttled,
+                          long updatedAt) {
+
+    static HostProfile empty(String host) {
+        return new HostProfile(host, 0, 0, 0, 0, null, null, 0, 0, 0, 0);
+    }
+
+    public double errorRate() {
+        return requests > 0 ? (double) errors / requests : 0;
+    }
+
+    public double throttleRate() {
+        return requests > 0 ? (double) throttled / requests : 0;
+    }
+
+    HostProfile withProbe(Boolean rangeSupported, boolean http2, long now) {
+        return new HostProfile(host, connectionThroughput, bestSegments, bestThroughput, ceilingSegments,
+                rangeSupported != null ? rangeSupported : this.rangeSupported, http2, requests, errors, throttled, now);
+    }
+
+    HostProfile withConnection(long connectionThroughput, int ceilingSegments, long requests, long errors, long throttled, long now) {
+        return new HostProfile(host, connectionThroughput, bestSegments, bestThroughput, ceilingSegments,
+                rangeSupported, http2, requests, errors, throttled, now);
+    }
+
+    HostProfile withBest(int bestSegments, long bestThroughput, int ceilingSegments, long now) {
+        return new HostProfile(host, connectionThroughput, bestSegments, bestThroughput, ceilingSegments,
+                rangeSupported, http2, requests, errors, throttled, now);
+    }
+
+}
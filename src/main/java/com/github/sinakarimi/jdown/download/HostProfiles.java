@@ -0,0 +1,222 @@
+package com.github.sinakarimi.jdown.download;
+
+import com.github.sinakarimi.jdown.configuration.DownloadSettings;
+import com.github.sinakarimi.jdown.database.TaskStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * learns per host how many segments download a file the fastest, instead of starting every download with the same
+ * {@link DownloadSettings#threads()}. each finished download is compared with the best one of its host, a count
+ * that was clearly faster, or as fast with fewer connections, becomes the new best. a few more segments than the best
+ * count are tried until a larger count turns out not to be faster, and a host that throttles or fails the connections
+ * gets fewer of them. the connection statistics are persisted with the next finished download or when the application
+ * closes
+ */
+@Slf4j
+public class HostProfiles {
+
+    /**
+     * weight of the newest measurement in the moving averages
+     */
+    private static final double SMOOTHING = 0.3;
+    /**
+     * smaller downloads and connections are mostly connection setup, their speed says little about the host
+     */
+    private static final long MIN_MEASURED_DOWNLOAD_BYTES = 1024 * 1024;
+    private static final long MIN_MEASURED_CONNECTION_BYTES = 64 * 1024;
+    private static final int SEGMENT_STEP = 2;
+    /**
+     * a download has to be this much faster than the best one to replace it
+     */
+    private static final double IMPROVEMENT = 1.05;
+    private static final double MAX_THROTTLE_RATE = 0.05;
+    private static final double MAX_ERROR_RATE = 0.2;
+    /**
+     * the error and throttle rates of fewer connections are mostly chance
+     */
+    private static final long MIN_RATE_REQUESTS = 20;
+    /**
+     * after this many connections the counts are halved and larger segment counts are tried again, the network of a
+     * host changes over time
+     */
+    private static final long DECAY_REQUESTS = 1000;
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static HostProfiles instance;
+
+    private final Map<String, HostProfile> profiles = new ConcurrentHashMap<>();
+    private volatile TaskStore store;
+
+    public HostProfiles() {
+    }
+
+    public static synchronized HostProfiles getInstance() {
+        if (instance == null) {
+            instance = new HostProfiles();
+        }
+        return instance;
+    }
+
+    /**
+     * reads the profiles learned in earlier sessions, later changes are written to the same store
+     */
+    public void load(TaskStore store) {
+        this.store = store;
+        // the hosts measured while the profiles were read keep their newer profiles
+        store.loadHostProfiles().forEach(p -> profiles.putIfAbsent(p.host(), p));
+        log.info("loaded the profiles of {} hosts", profiles.size());
+    }
+
+    /**
+     * writes the connection statistics that were not persisted with a finished download yet
+     */
+    public void save() {
+        TaskStore current = store;
+        if (current != null && !profiles.isEmpty()) {
+            current.saveHostProfiles(List.copyOf(profiles.values()));
+        }
+    }
+
+    public Optional<HostProfile> get(String url) {
+        String host = hostOf(url);
+        return host != null ? Optional.ofNullable(profiles.get(host)) : Optional.empty();
+    }
+
+    /**
+     * @return number of segments the next download from the host of the url should be split into
+     */
+    public int segmentsFor(String url, DownloadSettings settings) {
+        int configured = settings.threads();
+        Optional<HostProfile> found = settings.hostProfiles() ? get(url) : Optional.empty();
+        if (found.isEmpty()) {
+            return configured;
+        }
+
+        HostProfile profile = found.get();
+        if (Boolean.FALSE.equals(profile.rangeSupported())) {
+            return 1;
+        }
+
+        int best = profile.bestSegments() > 0 ? profile.bestSegments() : configured;
+        boolean troubled = profile.throttleRate() > MAX_THROTTLE_RATE || profile.errorRate() > MAX_ERROR_RATE;
+        if (profile.requests() >= MIN_RATE_REQUESTS && troubled) {
+            return Math.max(1, best / 2);
+        }
+
+        int next = Math.min(best + SEGMENT_STEP, configured * 2);
+        boolean tried = profile.ceilingSegments() > 0 && profile.ceilingSegments() <= next;
+        return profile.bestSegments() > 0 && !tried ? Math.max(next, best) : best;
+    }
+
+    /**
+     * @param rangeSupported null when the host did not say
+     */
+    public void recordProbe(String url, Boolean rangeSupported, boolean http2) {
+        String host = hostOf(url);
+        if (host == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        profiles.compute(host, (h, p) -> (p != null ? p : HostProfile.empty(h)).withProbe(rangeSupported, http2, now));
+    }
+
+    /**
+     * records one run of a segment connection
+     * @param responseCode 0 if the connection failed before the server answered
+     */
+    public void recordConnection(String url, int responseCode, long bytes, long elapsedNanos, boolean failed) {
+        String host = hostOf(url);
+        if (host == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        profiles.compute(host, (h, p) -> {
+            HostProfile profile = p != null ? p : HostProfile.empty(h);
+            long throughput = profile.connectionThroughput();
+            if (bytes >= MIN_MEASURED_CONNECTION_BYTES && elapsedNanos > 0) {
+                throughput = smooth(throughput, bytesPerSecond(bytes, elapsedNanos));
+            }
+
+            long requests = profile.requests() + 1;
+            long errors = profile.errors() + (failed ? 1 : 0);
+            long throttled = profile.throttled() + (responseCode == TOO_MANY_REQUESTS ? 1 : 0);
+            int ceiling = profile.ceilingSegments();
+            if (requests >= DECAY_REQUESTS) {
+                requests /= 2;
+                errors /= 2;
+                throttled /= 2;
+                ceiling = 0;
+            }
+            return profile.withConnection(throughput, ceiling, requests, errors, throttled, now);
+        });
+    }
+
+    /**
+     * records a download that ran from start to end without a pause and stores the profile of its host
+     */
+    public void recordDownload(String url, int segments, long bytes, long elapsedNanos) {
+        String host = hostOf(url);
+        if (host == null || bytes < MIN_MEASURED_DOWNLOAD_BYTES || elapsedNanos <= 0) {
+            return;
+        }
+
+        long throughput = bytesPerSecond(bytes, elapsedNanos);
+        long now = System.currentTimeMillis();
+        HostProfile updated = profiles.compute(host, (h, p) -> {
+            HostProfile profile = p != null ? p : HostProfile.empty(h);
+            long best = profile.bestThroughput();
+            boolean faster = throughput > best * IMPROVEMENT;
+            boolean asFastWithFewer = segments < profile.bestSegments() && throughput * IMPROVEMENT >= best;
+            int ceiling = profile.ceilingSegments();
+            if (profile.bestSegments() == 0 || faster || asFastWithFewer) {
+                return profile.withBest(segments, throughput, ceiling > segments ? ceiling : 0, now);
+            }
+            if (segments == profile.bestSegments()) {
+                // the network changes over time, the best count follows what it achieves now
+                return profile.withBest(segments, smooth(best, throughput), ceiling, now);
+            }
+            if (segments > profile.bestSegments() && (ceiling == 0 || segments < ceiling)) {
+                return profile.withBest(profile.bestSegments(), best, segments, now);
+            }
+            return profile;
+        });
+        log.info("{} downloaded {} bytes at {} B/s with {} segments, best is {} segments", host, bytes, throughput, segments, updated.bestSegments());
+
+        TaskStore current = store;
+        if (current != null) {
+            try {
+                current.saveHostProfiles(List.of(updated));
+            } catch (Exception e) {
+                log.error("failed to store the profile of {}", host, e);
+            }
+        }
+    }
+
+    static String hostOf(String url) {
+        try {
+            String host = url != null ? URI.create(url).getHost() : null;
+            return host != null ? host.toLowerCase(Locale.ROOT) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long bytesPerSecond(long bytes, long elapsedNanos) {
+        return (long) (bytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos);
+    }
+
+    private static long smooth(long average, long latest) {
+        return average > 0 ? (long) (average * (1 - SMOOTHING) + latest * SMOOTHING) : latest;
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.github.sinakarimi.jdown.download;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * spreads the segment connections over the local source addresses listed in
+ * {@link ConfigurationConstants#LOCAL_ADDRESSES}, either one after the other or weighted by the throughput measured
+ * on each address. with no addresses configured every connection uses the default route
+ */
+@Slf4j
+public class LocalAddressSelector {
+
+    public static final String ROUND_ROBIN = "roundRobin";
+    public static final String THROUGHPUT = "throughput";
+
+    /**
+     * weight of the newest measurement in the moving average of an address
+     */
+    private static final double SMOOTHING = 0.3;
+
+    private static LocalAddressSelector instance;
+
+    private final Map<String, Double> throughput = new ConcurrentHashMap<>();
+    private final Map<String, Double> currentWeights = new ConcurrentHashMap<>();
+    private int nextIndex = 0;
+
+    private LocalAddressSelector() {
+    }
+
+    public static synchronized LocalAddressSelector getInstance() {
+        if (instance == null) {
+            instance = new LocalAddressSelector();
+        }
+        return instance;
+    }
+
+    /**
+     * @return the address the next connection should be bound to, null to use the default route
+     */
+    public synchronized InetAddress next() throws UnknownHostException {
+        List<String> addresses = configuredAddresses();
+        if (addresses.isEmpty()) {
+            return null;
+        }
+
+        String mode = ConfigurationUtils.getSettings().localAddressSelection();
+        String address = THROUGHPUT.equals(mode) ? nextWeighted(addresses) : nextRoundRobin(addresses);
+        return InetAddress.getByName(address);
+    }
+
+    /**
+     * records how much a connection bound to the address received, it is the weight in {@link #THROUGHPUT} mode
+     */
+    public void record(InetAddress address, long bytes, long elapsedNanos) {
+        if (elapsedNanos <= 0) {
+            return;
+        }
+
+        double bytesPerSecond = bytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        throughput.merge(address.getHostAddress(), bytesPerSecond,
+                (average, latest) -> average * (1 - SMOOTHING) + latest * SMOOTHING);
+    }
+
+    private String nextRoundRobin(List<String> addresses) {
+        nextIndex = nextIndex % addresses.size();
+        return addresses.get(nextIndex++);
+    }
+
+    /**
+     * smooth weighted round robin, a faster address gets proportionally more connections without getting them all in
+     * a row. an address that was not measured yet gets the best weight, so it is tried soon
+     */
+    private String nextWeighted(List<String> addresses) {
+        double best = addresses.stream()
+                .mapToDouble(a -> throughput.getOrDefault(a, 0d))
+                .max()
+                .orElse(0);
+        double unmeasured = best > 0 ? best : 1;
+
+        double total = 0;
+        String selected = null;
+        for (String address : addresses) {
+            double weight = throughput.getOrDefault(address, unmeasured);
+            total += weight;
+            double current = currentWeights.merge(address, weight, Double::sum);
+            if (selected == null || current > currentWeights.get(selected)) {
+                selected = address;
+            }
+        }
+
+        currentWeights.merge(selected, -total, Double::sum);
+        return selected;
+    }
+
+    private List<String> configuredAddresses() {
+        return ConfigurationUtils.getSettings().localAddresses();
+    }
+
+}
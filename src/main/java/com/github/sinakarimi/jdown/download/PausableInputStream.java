@@ -8,6 +8,7 @@ public class PausableInputStream extends InputStream {
     private final InputStream source;
     private final Object lock = new Object();
     private volatile boolean paused = false;
+    private volatile boolean closed = false;
 
     public PausableInputStream(InputStream source) {
         this.source = source;
@@ -31,8 +32,15 @@ public class PausableInputStream extends InputStream {
         return source.read(b);
     }
 
+    /**
+     * also wakes a reader that waits in a pause, its read fails so the segment gives back its buffer and file
+     */
     @Override
     public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
         source.close();
     }
 
@@ -49,9 +57,13 @@ public class PausableInputStream extends InputStream {
         }
     }
 
+    public boolean isPaused() {
+        return paused;
+    }
+
     private void waitForResume() throws IOException {
         synchronized (lock) {
-            while (paused) {
+            while (paused && !closed) {
                 try {
                     lock.wait(); // Block until resumed
                 } catch (InterruptedException e) {
@@ -59,6 +71,9 @@ public class PausableInputStream extends InputStream {
                     throw new IOException("Download interrupted while paused", e);
                 }
             }
+            if (closed) {
+                throw new IOException("stream closed while paused");
+            }
         }
     }
 }
@@ -0,0 +1,40 @@
+package com.github.sinakarimi.jdown.download;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+
+/**
+ * the part of an http connection a segment needs to download its range
+ */
+public interface SegmentConnection {
+
+    /**
+     * @param localAddress source address to bind the connection to, the default route is used if it is null
+     */
+    static SegmentConnection open(URL url, InetAddress localAddress) throws IOException {
+        if (localAddress == null) {
+            return new DefaultSegmentConnection((HttpURLConnection) url.openConnection());
+        }
+
+        return new BoundSegmentConnection(url, localAddress);
+    }
+
+    void setConnectTimeout(int timeoutMillis);
+
+    void setReadTimeout(int timeoutMillis);
+
+    void setRequestProperty(String key, String value);
+
+    /**
+     * sends the GET request if it is not sent yet
+     */
+    int getResponseCode() throws IOException;
+
+    InputStream getInputStream() throws IOException;
+
+    void disconnect();
+
+}
@@ -0,0 +1,146 @@
+package com.github.sinakarimi.jdown.download;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.configuration.DownloadSettings;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * periodically checks the running segments and marks the ones that did not make enough progress in the last window
+ * as stalled. the stream of a stalled segment is closed, so a read that is blocked on a silent connection fails and
+ * the segment reissues the rest of its range. the read timeout alone does not catch a server that keeps trickling a
+ * few bytes
+ */
+@Slf4j
+public class SegmentWatchdog {
+
+    private static SegmentWatchdog instance;
+
+    private final Set<WatchedSegment> segments = ConcurrentHashMap.newKeySet();
+    /**
+     * closing the stream of the JDK connection waits for the blocked read, so it does not hold up the checks
+     */
+    private final ExecutorService closer = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "segment-watchdog-closer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private SegmentWatchdog() {
+        int interval = ConfigurationUtils.getSettings().stallCheckIntervalMillis();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "segment-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized SegmentWatchdog getInstance() {
+        if (instance == null) {
+            instance = new SegmentWatchdog();
+        }
+        return instance;
+    }
+
+    /**
+     * @param written returns the bytes written so far by the segment
+     */
+    public WatchedSegment watch(String name, PausableInputStream stream, IntSupplier written) {
+        WatchedSegment segment = new WatchedSegment(name, stream, written);
+        segments.add(segment);
+        return segment;
+    }
+
+    public void unwatch(WatchedSegment segment) {
+        segments.remove(segment);
+    }
+
+    private void check() {
+        DownloadSettings settings = ConfigurationUtils.getSettings();
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(settings.stallWindowMillis());
+        long minThroughput = settings.minSegmentThroughput();
+        // at least one byte has to arrive in every window, otherwise the segment is stalled
+        long minBytes = Math.max(1, minThroughput * windowNanos / TimeUnit.SECONDS.toNanos(1));
+        long now = System.nanoTime();
+
+        for (WatchedSegment segment : segments) {
+            try {
+                if (segment.check(now, windowNanos, minBytes)) {
+                    closer.execute(segment::close);
+                }
+            } catch (Exception e) {
+                log.error("failed to check segment {}", segment.name, e);
+            }
+        }
+    }
+
+    public static class WatchedSegment {
+
+        private final String name;
+        private final PausableInputStream stream;
+        private final IntSupplier written;
+
+        private volatile boolean stalled = false;
+        private long windowStart;
+        private int writtenAtWindowStart;
+
+        private WatchedSegment(String name, PausableInputStream stream, IntSupplier written) {
+            this.name = name;
+            this.stream = stream;
+            this.written = written;
+            resetWindow(System.nanoTime());
+        }
+
+        public boolean isStalled() {
+            return stalled;
+        }
+
+        /**
+         * @return true if the segment has just been marked as stalled
+         */
+        private boolean check(long now, long windowNanos, long minBytes) {
+            // a paused segment is not expected to make progress
+            if (stream.isPaused()) {
+                resetWindow(now);
+                return false;
+            }
+
+            if (stalled || now - windowStart < windowNanos) {
+                return false;
+            }
+
+            long progress = written.getAsInt() - writtenAtWindowStart;
+            if (progress < minBytes) {
+                log.warn("segment {} made {} bytes of progress in the last window, marking it as stalled", name, progress);
+                stalled = true;
+                return true;
+            }
+
+            resetWindow(now);
+            return false;
+        }
+
+        private void close() {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                log.warn("failed to close the stream of stalled segment {}", name, e);
+            }
+        }
+
+        private void resetWindow(long now) {
+            windowStart = now;
+            writtenAtWindowStart = written.getAsInt();
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.github.sinakarimi.jdown.download;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.dataObjects.Status;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * resumes the downloads that were running when the application was closed. they are handed to the
+ * {@link DownloadQueue} from a background thread, so the window does not wait for their probes and connections, and
+ * at most {@link ConfigurationConstants#MAX_CONCURRENT_DOWNLOADS} of them reconnect at the same time
+ */
+@Slf4j
+public class StartupResumer {
+
+    private final DownloadQueue downloadQueue;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "startup-resumer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean resumed = false;
+
+    public StartupResumer(DownloadQueue downloadQueue) {
+        this.downloadQueue = downloadQueue;
+    }
+
+    /**
+     * queues the unfinished downloads among the given ones, only the first call of a run does anything
+     * @return completes once the downloads are queued, the first ones are started in the background
+     */
+    public synchronized Future<?> resume(Collection<Download> downloads) {
+        if (resumed) {
+            return executor.submit(() -> {});
+        }
+        resumed = true;
+
+        // paused, canceled and failed downloads stay as they are until the user resumes them
+        List<Download> unfinished = downloads.stream()
+                .filter(d -> d.getStatus() == Status.IN_PROGRESS)
+                .filter(d -> d.getDownloadTasks() == null || d.getDownloadTasks().stream().anyMatch(t -> !t.isCompleted()))
+                .toList();
+        log.info("{} unfinished downloads will be resumed in the background", unfinished.size());
+
+        return executor.submit(() -> downloadQueue.resumeAll(unfinished));
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.github.sinakarimi.jdown.download;
+
+import com.github.sinakarimi.jdown.common.HttpUtils;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Optional;
+
+import static com.github.sinakarimi.jdown.common.HttpConstants.HEAD_METHOD;
+import static com.github.sinakarimi.jdown.common.HttpConstants.LOCATION_HEADER;
+
+/**
+ * follows the redirect chain of a url once, so that segments can connect to the final url directly instead of
+ * going through every hop of the chain on each connection
+ */
+@Slf4j
+public class UrlResolver {
+
+    private static final int MAX_REDIRECTS = 10;
+
+    /**
+     * sends HEAD requests and follows the redirects manually
+     * @return the response of the last hop, its {@link HttpResponse#uri()} is the final effective url
+     */
+    public static HttpResponse<Void> headFollowingRedirects(HttpClient client, URI uri) throws IOException, InterruptedException {
+        URI current = uri;
+
+        for (int hop = 0; ; hop++) {
+            HttpRequest request = HttpRequest
+                    .newBuilder(current)
+                    .method(HEAD_METHOD.getValue(), HttpRequest.BodyPublishers.noBody())
+                    .timeout(Duration.ofMillis(readTimeoutMillis()))
+                    .build();
+
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response == null || !HttpUtils.isRedirect(response.statusCode())) {
+                return response;
+            }
+
+            Optional<String> location = response.headers().firstValue(LOCATION_HEADER.getValue());
+            if (location.isEmpty()) {
+                return response;
+            }
+
+            if (hop == MAX_REDIRECTS) {
+                throw new IOException("too many redirects while resolving " + uri);
+            }
+
+            current = current.resolve(location.get());
+            log.info("{} redirected to {}", uri, current);
+        }
+    }
+
+    /**
+     * sends a HEAD request to the url following its redirects
+     * @return the successful response of the last hop, empty if the url could not be probed
+     */
+    public static Optional<HttpResponse<Void>> probe(String url) {
+        try {
+            HttpResponse<Void> response = headFollowingRedirects(HttpClient.newHttpClient(), URI.create(url));
+            if (response != null && response.uri() != null && HttpUtils.isStatusCode2xx(response.statusCode())) {
+                return Optional.of(response);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("failed to probe {}", url, e);
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * resolves the final effective url of the given url, if it cannot be resolved the url itself is returned
+     */
+    public static String resolve(String url) {
+        return probe(url)
+                .map(response -> response.uri().toString())
+                .orElse(url);
+    }
+
+    private static int readTimeoutMillis() {
+        return ConfigurationUtils.getSettings().readTimeoutMillis();
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.github.sinakarimi.jdown.exception;
+
+import lombok.Getter;
+
+/**
+ * thrown when the server ignores the If-Range validator of a segment request and sends the whole file, meaning the
+ * remote file has changed since it was probed
+ */
+@Getter
+public class RemoteFileChangedException extends RuntimeException {
+
+    private final String validator;
+
+    public RemoteFileChangedException(String message, String validator) {
+        super(message);
+        this.validator = validator;
+    }
+}
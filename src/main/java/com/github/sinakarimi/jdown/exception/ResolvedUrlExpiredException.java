@@ -0,0 +1,17 @@
+package com.github.sinakarimi.jdown.exception;
+
+import lombok.Getter;
+
+/**
+ * thrown when a segment gets a 403 or 410 from the cached final url of a download, the url has to be resolved again
+ */
+@Getter
+public class ResolvedUrlExpiredException extends RuntimeException {
+
+    private final String expiredUrl;
+
+    public ResolvedUrlExpiredException(String message, String expiredUrl) {
+        super(message);
+        this.expiredUrl = expiredUrl;
+    }
+}
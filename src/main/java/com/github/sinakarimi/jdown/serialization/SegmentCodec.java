@@ -0,0 +1,148 @@
+package com.github.sinakarimi.jdown.serialization;
+
+import com.github.sinakarimi.jdown.dataObjects.Range;
+import com.github.sinakarimi.jdown.download.DownloadTask;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * compact binary form of the state of the segments of a download, without reflection.
+ * <p>
+ * layout of version 1: the version byte, the number of segments as a varint, for every segment the distance of its
+ * start from the end of the previous segment, its length and its written bytes as varints, then one bit per segment
+ * that is set if the segment is completed. segments are usually back to back, so the distance is mostly zero and
+ * the whole segment takes a few bytes
+ */
+public final class SegmentCodec {
+
+    public static final byte VERSION = 1;
+
+    private SegmentCodec() {
+    }
+
+    public static byte[] encode(List<DownloadTask> downloadTasks) {
+        Writer writer = new Writer(8 + downloadTasks.size() * 8);
+        writer.writeByte(VERSION);
+        writer.writeVarint(downloadTasks.size());
+
+        long expectedFrom = 0;
+        for (DownloadTask task : downloadTasks) {
+            Range range = task.getRange();
+            writer.writeVarint(zigzag(range.getFrom() - expectedFrom));
+            writer.writeVarint(zigzag((long) range.getTo() - range.getFrom()));
+            writer.writeVarint(task.getWritten());
+            expectedFrom = range.getTo() + 1L;
+        }
+
+        byte[] completed = new byte[(downloadTasks.size() + 7) / 8];
+        for (int i = 0; i < downloadTasks.size(); i++) {
+            if (downloadTasks.get(i).isCompleted()) {
+                completed[i >> 3] |= (byte) (1 << (i & 7));
+            }
+        }
+        writer.writeBytes(completed);
+
+        return writer.toByteArray();
+    }
+
+    public static List<DownloadTask> decode(byte[] data) {
+        return decode(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * reads one encoded list from the position of the buffer and leaves the position after it
+     */
+    public static List<DownloadTask> decode(ByteBuffer buffer) {
+        try {
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("unknown segment state version: " + version);
+            }
+
+            int count = (int) readVarint(buffer);
+            List<DownloadTask> downloadTasks = new ArrayList<>(count);
+            long expectedFrom = 0;
+            for (int i = 0; i < count; i++) {
+                long from = expectedFrom + unzigzag(readVarint(buffer));
+                long to = from + unzigzag(readVarint(buffer));
+
+                DownloadTask task = new DownloadTask();
+                task.setRange(new Range((int) from, (int) to));
+                task.setWritten((int) readVarint(buffer));
+                downloadTasks.add(task);
+                expectedFrom = to + 1;
+            }
+
+            for (int i = 0; i < count; i += 8) {
+                byte completed = buffer.get();
+                for (int bit = 0; bit < 8 && i + bit < count; bit++) {
+                    downloadTasks.get(i + bit).setCompleted((completed & (1 << bit)) != 0);
+                }
+            }
+
+            return downloadTasks;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("segment state is truncated", e);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("varint is too long");
+    }
+
+    private static class Writer {
+
+        private byte[] bytes;
+        private int size = 0;
+
+        private Writer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        private void writeByte(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        private void writeVarint(long value) {
+            while ((value & ~0x7fL) != 0) {
+                writeByte((int) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        private void writeBytes(byte[] data) {
+            for (byte b : data) {
+                writeByte(b);
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.github.sinakarimi.jdown;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.download.BandwidthLimiter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BandwidthLimiterTests {
+
+    @AfterEach
+    public void teardown() throws Exception {
+        ConfigurationUtils.populateConfigs(true);
+    }
+
+    @Test
+    public void Given_NoLimit_When_Acquired_Expect_NoWait() throws Exception {
+        ConfigurationUtils.setConfig(ConfigurationConstants.MAX_BYTES_PER_SECOND, 0, false);
+        BandwidthLimiter limiter = new BandwidthLimiter();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire(1024 * 1024);
+        }
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+    }
+
+    @Test
+    public void Given_Limit_When_MoreThanTheRateAcquired_Expect_WaitForTheRest() throws Exception {
+        ConfigurationUtils.setConfig(ConfigurationConstants.MAX_BYTES_PER_SECOND, 100_000, false);
+        BandwidthLimiter limiter = new BandwidthLimiter();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire(10_000);
+        }
+
+        // 40 000 bytes at 100 000 bytes per second
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 350);
+    }
+
+}
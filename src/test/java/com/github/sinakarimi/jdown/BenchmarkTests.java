@@ -0,0 +1,133 @@
+package com.github.sinakarimi.jdown;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.sinakarimi.jdown.dataObjects.Range;
+import com.github.sinakarimi.jdown.dataObjects.Status;
+import com.github.sinakarimi.jdown.database.TasksDAO;
+import com.github.sinakarimi.jdown.download.Download;
+import com.github.sinakarimi.jdown.download.DownloadTask;
+import com.github.sinakarimi.jdown.download.DownloadTaskManager;
+import com.github.sinakarimi.jdown.serialization.SegmentCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * timings that say nothing about correctness and depend on the machine, they are excluded from the default test run.
+ * run them with {@code mvn test -Dexcluded.test.groups= -Dgroups=benchmark}
+ */
+@Slf4j
+@Tag("benchmark")
+public class BenchmarkTests {
+
+    private final TasksDAO dbManager = TasksDAO.getInstance("testDb");
+
+    @AfterEach
+    public void teardown() {
+        dbManager.deleteAll();
+    }
+
+    @Test
+    public void Given_ManyProgressUpdates_When_Written_Expect_ThroughputToBeLogged() {
+        Download download = Download.builder()
+                .tasksDAO(dbManager)
+                .name("benchmark")
+                .status(Status.IN_PROGRESS)
+                .size(80L)
+                .savePath("/apt/movies")
+                .downloadUrl("https://example.com/benchmark")
+                .resumable(true)
+                .build();
+        dbManager.insert(download);
+
+        int updates = 2000;
+        long start = System.nanoTime();
+        for (int i = 0; i < updates; i++) {
+            dbManager.updateProgression(download.getId(), (double) i / updates);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        log.info("{} progress updates in {} s, {} updates/s", updates, String.format("%.2f", seconds), String.format("%.0f", updates / seconds));
+        assertEquals((double) (updates - 1) / updates, dbManager.getTaskById(download.getId()).orElseThrow().getProgressProperty().get());
+    }
+
+    @Test
+    public void Given_ManyRunningDownloads_When_InsertedAndPausedTogether_Expect_TimingsToBeLogged() {
+        int count = 500;
+        List<Download> downloads = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            DownloadTask segment = new DownloadTask(Range.valueOf("0_79"), null, null);
+            segment.setWritten(i % 80);
+            downloads.add(Download.builder()
+                    .tasksDAO(dbManager)
+                    .name("file-" + i)
+                    .status(Status.IN_PROGRESS)
+                    .size(80L)
+                    .savePath("/apt/movies")
+                    .downloadUrl("https://example.com/file-" + i)
+                    .resumable(true)
+                    .downloadTasks(List.of(segment))
+                    .build());
+        }
+
+        long start = System.nanoTime();
+        dbManager.insertAll(downloads);
+        long inserted = System.nanoTime();
+        DownloadTaskManager.getInstance(dbManager).pauseAll(downloads);
+        long paused = System.nanoTime();
+
+        log.info("{} downloads: insert {} ms, pause {} ms", count, (inserted - start) / 1_000_000, (paused - inserted) / 1_000_000);
+        assertEquals(Status.PAUSED, dbManager.getTaskById(downloads.get(42).getId()).orElseThrow().getStatus());
+    }
+
+    @Test
+    public void Given_Segments_When_EncodedAndDecoded_Expect_CodecTimingsToBeLogged() throws Exception {
+        ObjectMapper mapper = SegmentCodecTests.jsonMapper();
+
+        for (int count : new int[]{10, 100, 1000}) {
+            List<DownloadTask> segments = SegmentCodecTests.segments(count);
+            int iterations = 200_000 / count;
+
+            // warm up both paths before measuring
+            for (int i = 0; i < iterations; i++) {
+                SegmentCodec.decode(SegmentCodec.encode(segments));
+                mapper.readValue(mapper.writeValueAsString(segments), SegmentCodecTests.SEGMENTS_TYPE);
+            }
+
+            byte[] binary = null;
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                binary = SegmentCodec.encode(segments);
+            }
+            double binaryEncode = (System.nanoTime() - start) / 1e3 / iterations;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                SegmentCodec.decode(binary);
+            }
+            double binaryDecode = (System.nanoTime() - start) / 1e3 / iterations;
+
+            String json = null;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                json = mapper.writeValueAsString(segments);
+            }
+            double jsonEncode = (System.nanoTime() - start) / 1e3 / iterations;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                mapper.readValue(json, SegmentCodecTests.SEGMENTS_TYPE);
+            }
+            double jsonDecode = (System.nanoTime() - start) / 1e3 / iterations;
+
+            log.info("{} segments: binary {} bytes, encode {} us, decode {} us; json {} bytes, encode {} us, decode {} us",
+                    count, binary.length, String.format("%.1f", binaryEncode), String.format("%.1f", binaryDecode),
+                    json.length(), String.format("%.1f", jsonEncode), String.format("%.1f", jsonDecode));
+        }
+    }
+
+}
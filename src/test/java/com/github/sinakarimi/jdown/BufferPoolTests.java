@@ -0,0 +1,88 @@
+package com.github.sinakarimi.jdown;
+
+import com.github.sinakarimi.jdown.dataObjects.Range;
+import com.github.sinakarimi.jdown.download.BufferPool;
+import com.github.sinakarimi.jdown.download.DownloadTask;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.function.IntSupplier;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferPoolTests {
+
+    @Test
+    void Given_ReleasedBuffer_When_AcquiredAgain_Expect_SameBufferReused() throws Exception {
+        BufferPool pool = new BufferPool(1024, true, 4096);
+
+        ByteBuffer first = pool.acquire();
+        first.put((byte) 1);
+        pool.release(first);
+        ByteBuffer second = pool.acquire();
+
+        assertSame(first, second);
+        assertTrue(second.isDirect());
+        assertEquals(0, second.position());
+        assertEquals(1, pool.getMisses());
+        assertEquals(1, pool.getHits());
+    }
+
+    @Test
+    void Given_MemoryLimitReached_When_Acquired_Expect_WaitForReleasedBuffer() throws Exception {
+        BufferPool pool = new BufferPool(1024, false, 2048);
+        ByteBuffer first = pool.acquire();
+        pool.acquire();
+
+        CompletableFuture<ByteBuffer> third = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.acquire();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        Thread.sleep(300);
+        assertFalse(third.isDone());
+
+        pool.release(first);
+        assertSame(first, third.get(5, TimeUnit.SECONDS));
+        assertEquals(1, pool.getWaits());
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    void Given_PausedSegment_When_Canceled_Expect_BufferGivenBack(@TempDir Path tempDir) throws Exception {
+        byte[] content = new byte[64];
+        BufferPool pool = BufferPool.getInstance();
+        int available = pool.getAvailableBuffers();
+
+        try (TestHttpServer server = new TestHttpServer(content)) {
+            // the body trickles, so the segment is still reading when it is paused
+            server.stall(1, 3);
+            DownloadTask task = new DownloadTask(new Range(0, content.length - 1), bytes -> {}, (t, e) -> {});
+            task.start(server.url("/file"), tempDir.resolve("file").toString());
+
+            awaitBuffers(pool::getAvailableBuffers, available - 1);
+            task.pause();
+            Thread.sleep(500);
+            assertEquals(available - 1, pool.getAvailableBuffers());
+
+            task.cancel();
+            awaitBuffers(pool::getAvailableBuffers, available);
+            assertEquals(available, pool.getAvailableBuffers());
+        }
+    }
+
+    private static void awaitBuffers(IntSupplier buffers, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (buffers.getAsInt() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+}
@@ -1,11 +1,19 @@
 package com.github.sinakarimi.jdown;
 
 import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationSnapshot;
 import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.configuration.ConfigurationWatcher;
+import com.github.sinakarimi.jdown.configuration.DownloadSettings;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -52,4 +60,98 @@ public class ConfigurationTests {
         assertNull(config);
     }
 
+    @Test
+    void Given_UserConfigFile_When_Changed_Expect_NewSnapshotToBePublished(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("configuration.json");
+        System.setProperty(ConfigurationUtils.CONFIG_PATH_PROPERTY, file.toString());
+        ConfigurationWatcher watcher = ConfigurationWatcher.getInstance();
+        try {
+            ConfigurationUtils.populateConfigs(true);
+            ConfigurationSnapshot before = ConfigurationUtils.getSnapshot();
+            watcher.start();
+
+            Files.writeString(file, "{\"numOfThreads\": 3, \"readTimeoutMillis\": 1234}");
+            awaitThreads(3);
+
+            // a snapshot taken before the change is not affected by it
+            assertEquals(10, before.getDownloadSettings().threads());
+            assertEquals(1234, ConfigurationUtils.getSettings().readTimeoutMillis());
+            assertEquals(1234, ConfigurationUtils.getConfig(ConfigurationConstants.READ_TIMEOUT_MILLIS, Integer.class));
+            // the defaults are still there for the values the file does not set
+            assertEquals(16, ConfigurationUtils.getSettings().probeParallelism());
+        } finally {
+            watcher.stop();
+            System.clearProperty(ConfigurationUtils.CONFIG_PATH_PROPERTY);
+            ConfigurationUtils.populateConfigs(true);
+        }
+    }
+
+    @Test
+    void Given_BrokenUserConfigFile_When_Reloaded_Expect_PreviousValuesToBeKept(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("configuration.json");
+        System.setProperty(ConfigurationUtils.CONFIG_PATH_PROPERTY, file.toString());
+        try {
+            Files.writeString(file, "{\"numOfThreads\": 3}");
+            ConfigurationUtils.populateConfigs(true);
+
+            Files.writeString(file, "{\"numOfThreads\": ");
+
+            assertThrows(IOException.class, () -> ConfigurationUtils.populateConfigs(true));
+            assertEquals(3, ConfigurationUtils.getSettings().threads());
+        } finally {
+            System.clearProperty(ConfigurationUtils.CONFIG_PATH_PROPERTY);
+            ConfigurationUtils.populateConfigs(true);
+        }
+    }
+
+    @Test
+    void Given_PersistedConfig_When_Reloaded_Expect_OnlyChangedValuesInUserFile(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("jdown").resolve("configuration.json");
+        System.setProperty(ConfigurationUtils.CONFIG_PATH_PROPERTY, file.toString());
+        try {
+            ConfigurationUtils.populateConfigs(true);
+            ConfigurationUtils.setConfig(ConfigurationConstants.MAX_CONCURRENT_DOWNLOADS, 2);
+            ConfigurationUtils.setConfig(ConfigurationConstants.BUFFER_SIZE, 4096, false);
+            ConfigurationUtils.populateConfigs(true);
+
+            assertEquals(2, ConfigurationUtils.getSettings().maxConcurrentDownloads());
+            assertEquals(8192, ConfigurationUtils.getSettings().bufferSize());
+            assertEquals("{\"maxConcurrentDownloads\":2}", Files.readString(file).replaceAll("\\s", ""));
+        } finally {
+            System.clearProperty(ConfigurationUtils.CONFIG_PATH_PROPERTY);
+            ConfigurationUtils.populateConfigs(true);
+        }
+    }
+
+    @Test
+    void Given_StoreAndTableSettings_When_Read_Expect_TypedValuesWithDefaults(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("configuration.json");
+        System.setProperty(ConfigurationUtils.CONFIG_PATH_PROPERTY, file.toString());
+        try {
+            Files.writeString(file, "{\"historyPageSize\": 50, \"archiveAfterDays\": 0, \"progressStore\": \"journal\", \"uiRefreshMillis\": -1}");
+            ConfigurationUtils.populateConfigs(true);
+
+            DownloadSettings settings = ConfigurationUtils.getSettings();
+            assertEquals(50, settings.historyPageSize());
+            assertEquals(0, settings.archiveAfterDays());
+            assertEquals("journal", settings.progressStore());
+            // a value that makes no sense falls back to the default, like a missing one
+            assertEquals(100, settings.uiRefreshMillis());
+            assertEquals(5000, settings.checkpointIntervalMillis());
+            assertEquals(0, settings.maxBytesPerSecond());
+        } finally {
+            System.clearProperty(ConfigurationUtils.CONFIG_PATH_PROPERTY);
+            ConfigurationUtils.populateConfigs(true);
+        }
+    }
+
+    private static void awaitThreads(int threads) throws InterruptedException {
+        // some platforms poll the directory instead of being notified, which takes a few seconds
+        long deadline = System.currentTimeMillis() + 15_000;
+        while (ConfigurationUtils.getSettings().threads() != threads && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(threads, ConfigurationUtils.getSettings().threads());
+    }
+
 }
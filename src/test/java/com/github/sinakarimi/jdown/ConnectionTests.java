@@ -0,0 +1,217 @@
+package com.github.sinakarimi.jdown;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.dataObjects.Range;
+import com.github.sinakarimi.jdown.download.ConnectionPreWarmer;
+import com.github.sinakarimi.jdown.download.DnsCache;
+import com.github.sinakarimi.jdown.download.DownloadTask;
+import com.github.sinakarimi.jdown.download.LocalAddressSelector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionTests {
+
+    private byte[] content;
+    private TestHttpServer server;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        content = Files.readAllBytes(Path.of("src/test/resources/testFile.txt"));
+        server = new TestHttpServer(content);
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        server.close();
+        DnsCache.clear();
+        ConfigurationUtils.populateConfigs(true);
+    }
+
+    @Test
+    void Given_PreWarmedConnections_When_SegmentsConnect_Expect_NoNewConnectionsOpened() throws Exception {
+        ConnectionPreWarmer.preWarm(server.url("/testFile.txt"), 3).get(10, TimeUnit.SECONDS);
+        assertEquals(3, server.connectionCount());
+
+        List<CompletableFuture<byte[]>> segments = IntStream.range(0, 3)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> fetchRange(i * 10, i * 10 + 9)))
+                .toList();
+
+        for (int i = 0; i < segments.size(); i++) {
+            assertArrayEquals(Arrays.copyOfRange(content, i * 10, i * 10 + 10), segments.get(i).get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(3, server.connectionCount());
+    }
+
+    @Test
+    void Given_ResolvedHost_When_ResolvedAgain_Expect_CachedAddresses() throws Exception {
+        InetAddress[] first = DnsCache.resolve("localhost");
+        InetAddress[] second = DnsCache.resolve("localhost");
+
+        assertSame(first, second);
+    }
+
+    @Test
+    void Given_TricklingSegment_When_WindowPasses_Expect_RemainingRangeToBeReissued() throws Exception {
+        // the server trickles 5 bytes per second after the first 3 bytes
+        ConfigurationUtils.setConfig(ConfigurationConstants.STALL_WINDOW_MILLIS, 1000, false);
+        ConfigurationUtils.setConfig(ConfigurationConstants.MIN_SEGMENT_THROUGHPUT, 20, false);
+        server.stall(1, 3);
+        Path file = Files.createTempFile("stalled", ".txt");
+
+        CompletableFuture<Exception> finished = new CompletableFuture<>();
+        DownloadTask task = new DownloadTask(new Range(0, content.length - 1), bytes -> {}, (t, e) -> finished.complete(e));
+        task.start(server.url("/testFile.txt"), file.toString());
+
+        assertNull(finished.get(20, TimeUnit.SECONDS));
+        assertTrue(task.isCompleted());
+        assertArrayEquals(content, Files.readAllBytes(file));
+        // the second request continues after what the trickling connection already delivered
+        assertEquals(2, server.rangeHeaders().size());
+        assertEquals("bytes=0-70", server.rangeHeaders().get(0));
+        assertNotEquals("bytes=0-70", server.rangeHeaders().get(1));
+
+        Files.delete(file);
+    }
+
+    @Test
+    void Given_SilentSegment_When_WindowPasses_Expect_RemainingRangeToBeReissuedBeforeReadTimeout() throws Exception {
+        ConfigurationUtils.setConfig(ConfigurationConstants.READ_TIMEOUT_MILLIS, 20_000, false);
+        ConfigurationUtils.setConfig(ConfigurationConstants.STALL_WINDOW_MILLIS, 1000, false);
+        server.silence(1, 3);
+
+        assertSilentSegmentReissued();
+    }
+
+    @Test
+    void Given_SilentBoundSegment_When_WindowPasses_Expect_RemainingRangeToBeReissuedBeforeReadTimeout() throws Exception {
+        ConfigurationUtils.setConfig(ConfigurationConstants.LOCAL_ADDRESSES, List.of("127.0.0.1"), false);
+        ConfigurationUtils.setConfig(ConfigurationConstants.READ_TIMEOUT_MILLIS, 20_000, false);
+        ConfigurationUtils.setConfig(ConfigurationConstants.STALL_WINDOW_MILLIS, 1000, false);
+        server.silence(1, 3);
+
+        assertSilentSegmentReissued();
+    }
+
+    @Test
+    void Given_SlowLastSegment_When_EndgameCopyStarted_Expect_FasterCopyToFinishIt() throws Exception {
+        server.stall(1, 3);
+        Path file = Files.createTempFile("endgame", ".txt");
+
+        CompletableFuture<Exception> finished = new CompletableFuture<>();
+        AtomicInteger statusUpdates = new AtomicInteger();
+        AtomicInteger progress = new AtomicInteger();
+        DownloadTask task = new DownloadTask(new Range(0, content.length - 1), progress::addAndGet, (t, e) -> {
+            statusUpdates.incrementAndGet();
+            finished.complete(e);
+        });
+        task.start(server.url("/testFile.txt"), file.toString());
+
+        // let the original connection deliver some bytes before the copy joins
+        Thread.sleep(500);
+        assertTrue(task.startDuplicate(server.url("/testFile.txt"), file.toString(), null));
+
+        // the trickling original alone would need more than 13 seconds
+        assertNull(finished.get(5, TimeUnit.SECONDS));
+        Thread.sleep(500);
+
+        assertTrue(task.isCompleted());
+        assertEquals(1, statusUpdates.get());
+        // no byte is written twice
+        assertEquals(content.length, task.getWritten());
+        assertEquals(content.length, progress.get());
+        assertArrayEquals(content, Files.readAllBytes(file));
+        assertEquals(2, server.rangeHeaders().size());
+
+        Files.delete(file);
+    }
+
+    @Test
+    void Given_TwoLocalAddresses_When_SegmentsConnect_Expect_ConnectionsSpreadOverBoth() throws Exception {
+        ConfigurationUtils.setConfig(ConfigurationConstants.LOCAL_ADDRESSES, List.of("127.0.0.1", "127.0.0.2"), false);
+        Path file = Files.createTempFile("bound", ".txt");
+
+        List<CompletableFuture<Exception>> segments = new ArrayList<>();
+        for (int from = 0; from < content.length; from += 20) {
+            CompletableFuture<Exception> finished = new CompletableFuture<>();
+            DownloadTask task = new DownloadTask(new Range(from, Math.min(from + 19, content.length - 1)), bytes -> {}, (t, e) -> finished.complete(e));
+            task.start(server.url("/testFile.txt"), file.toString());
+            segments.add(finished);
+        }
+
+        for (CompletableFuture<Exception> segment : segments) {
+            assertNull(segment.get(10, TimeUnit.SECONDS));
+        }
+        assertArrayEquals(content, Files.readAllBytes(file));
+        assertEquals(2, Collections.frequency(server.peerAddresses(), "127.0.0.1"));
+        assertEquals(2, Collections.frequency(server.peerAddresses(), "127.0.0.2"));
+
+        Files.delete(file);
+    }
+
+    @Test
+    void Given_MeasuredThroughput_When_WeightedSelection_Expect_FasterAddressPickedMoreOften() throws Exception {
+        ConfigurationUtils.setConfig(ConfigurationConstants.LOCAL_ADDRESSES, List.of("127.0.0.3", "127.0.0.4"), false);
+        ConfigurationUtils.setConfig(ConfigurationConstants.LOCAL_ADDRESS_SELECTION, LocalAddressSelector.THROUGHPUT, false);
+
+        LocalAddressSelector selector = LocalAddressSelector.getInstance();
+        selector.record(InetAddress.getByName("127.0.0.3"), 300, TimeUnit.SECONDS.toNanos(1));
+        selector.record(InetAddress.getByName("127.0.0.4"), 100, TimeUnit.SECONDS.toNanos(1));
+
+        List<String> picks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            picks.add(selector.next().getHostAddress());
+        }
+
+        assertEquals(6, Collections.frequency(picks, "127.0.0.3"));
+        assertEquals(2, Collections.frequency(picks, "127.0.0.4"));
+    }
+
+    private void assertSilentSegmentReissued() throws Exception {
+        Path file = Files.createTempFile("silent", ".txt");
+
+        CompletableFuture<Exception> finished = new CompletableFuture<>();
+        DownloadTask task = new DownloadTask(new Range(0, content.length - 1), bytes -> {}, (t, e) -> finished.complete(e));
+        task.start(server.url("/testFile.txt"), file.toString());
+
+        // well before the read timeout of 20 seconds
+        assertNull(finished.get(5, TimeUnit.SECONDS));
+        assertTrue(task.isCompleted());
+        assertArrayEquals(content, Files.readAllBytes(file));
+        assertEquals(List.of("bytes=0-70", "bytes=3-70"), server.rangeHeaders());
+
+        Files.delete(file);
+    }
+
+    private byte[] fetchRange(int from, int to) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(server.url("/testFile.txt")).openConnection();
+            connection.setRequestProperty("Range", String.format("bytes=%d-%d", from, to));
+            try (InputStream in = connection.getInputStream()) {
+                return in.readAllBytes();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.github.sinakarimi.jdown;
+
+import com.github.sinakarimi.jdown.dataObjects.Status;
+import com.github.sinakarimi.jdown.database.TasksDAO;
+import com.github.sinakarimi.jdown.download.Download;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DatabaseConnectionTests {
+
+    private final TasksDAO dbManager = TasksDAO.getInstance("testDb");
+
+    @AfterEach
+    public void teardown() {
+        dbManager.deleteAll();
+    }
+
+    @Test
+    public void Given_OpenedDatabase_Expect_ConnectionToRunInWalMode() {
+        Map<String, String> settings = dbManager.connectionSettings();
+
+        assertEquals("wal", settings.get("journal_mode"));
+        // NORMAL
+        assertEquals("1", settings.get("synchronous"));
+        assertEquals("-8000", settings.get("cache_size"));
+        // MEMORY
+        assertEquals("2", settings.get("temp_store"));
+        assertEquals("5000", settings.get("busy_timeout"));
+    }
+
+    @Test
+    public void Given_RepeatedWrites_When_Executed_Expect_StatementsToBeReused() {
+        writeAndDelete(0);
+        int cached = dbManager.cachedStatements();
+
+        for (int i = 1; i <= 20; i++) {
+            writeAndDelete(i);
+        }
+
+        assertEquals(cached, dbManager.cachedStatements());
+    }
+
+    private void writeAndDelete(int i) {
+        Download download = Download.builder()
+                .tasksDAO(dbManager)
+                .name("statement-" + i)
+                .status(Status.PAUSED)
+                .size(80L)
+                .savePath("/apt/movies")
+                .downloadUrl("https://example.com/statement-" + i)
+                .resumable(true)
+                .build();
+        dbManager.insert(download);
+        dbManager.updateProgression(download.getId(), 0.5);
+        dbManager.updateStatus(download.getId(), Status.ERROR);
+        dbManager.flush();
+        dbManager.delete(download.getId());
+    }
+
+}
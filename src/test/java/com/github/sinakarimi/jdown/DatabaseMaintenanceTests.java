@@ -0,0 +1,83 @@
+package com.github.sinakarimi.jdown;
+
+import com.github.sinakarimi.jdown.dataObjects.Status;
+import com.github.sinakarimi.jdown.database.DatabaseMaintenance;
+import com.github.sinakarimi.jdown.database.PagedTasksList;
+import com.github.sinakarimi.jdown.database.TaskStore;
+import com.github.sinakarimi.jdown.database.TasksDAO;
+import com.github.sinakarimi.jdown.download.Download;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DatabaseMaintenanceTests {
+
+    private final TasksDAO dbManager = TasksDAO.getInstance("testDb");
+
+    @AfterEach
+    public void teardown() {
+        dbManager.deleteAll();
+    }
+
+    @Test
+    public void Given_MaintenanceStarted_Expect_CallerNotKeptWaiting() throws Exception {
+        DatabaseMaintenance maintenance = new DatabaseMaintenance(dbManager);
+        try {
+            String caller = Thread.currentThread().getName();
+            String[] preparedOn = new String[1];
+
+            maintenance.start().thenRun(() -> preparedOn[0] = Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+
+            assertNotEquals(caller, preparedOn[0]);
+        } finally {
+            maintenance.stop();
+        }
+    }
+
+    @Test
+    public void Given_ArchivedTask_When_ArchiveListed_Expect_TaskShown() throws Exception {
+        archive("archived");
+
+        TaskStore store = dbManager;
+        PagedTasksList archive = PagedTasksList.archive(store, 10);
+
+        assertEquals(1, archive.size());
+        assertThat(archive).extracting(Download::getName).containsExactly("archived");
+    }
+
+    @Test
+    public void Given_ArchivedTask_When_Searched_Expect_FoundWithTheTasks() throws Exception {
+        archive("old-report.pdf");
+        dbManager.insert(download("new-report.pdf", Status.PAUSED));
+        dbManager.flush();
+
+        assertEquals(2, dbManager.countSearch("report"));
+        assertThat(dbManager.search("report", 0, 10)).extracting(Download::getName)
+                .containsExactly("new-report.pdf", "old-report.pdf");
+        assertThat(dbManager.search("old", 0, 10)).extracting(Download::getDownloadTasks).containsOnlyNulls();
+    }
+
+    private void archive(String name) throws InterruptedException {
+        dbManager.insert(download(name, Status.COMPLETED));
+        dbManager.flush();
+        Thread.sleep(5);
+        dbManager.archiveHistory(System.currentTimeMillis());
+    }
+
+    private Download download(String name, Status status) {
+        return Download.builder()
+                .tasksDAO(dbManager)
+                .name(name)
+                .status(status)
+                .size(80L)
+                .savePath("/apt/movies")
+                .downloadUrl("https://example.com/" + name)
+                .resumable(true)
+                .build();
+    }
+
+}
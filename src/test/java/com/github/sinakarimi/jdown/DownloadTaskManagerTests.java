@@ -2,10 +2,16 @@ package com.github.sinakarimi.jdown;
 
 import com.github.sinakarimi.jdown.common.FileSizeUtil;
 import com.github.sinakarimi.jdown.common.HttpConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.dataObjects.Range;
 import com.github.sinakarimi.jdown.dataObjects.Status;
 import com.github.sinakarimi.jdown.database.TasksDAO;
 import com.github.sinakarimi.jdown.download.Download;
+import com.github.sinakarimi.jdown.download.DownloadQueue;
+import com.github.sinakarimi.jdown.download.DownloadTask;
 import com.github.sinakarimi.jdown.download.DownloadTaskManager;
+import com.github.sinakarimi.jdown.download.StartupResumer;
 import com.github.sinakarimi.jdown.exception.FileDataRequestFailedException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -19,10 +25,15 @@ import java.io.IOException;
 import java.net.http.HttpClient;
 import java.net.http.HttpHeaders;
 import java.net.http.HttpResponse;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -62,7 +73,7 @@ public class DownloadTaskManagerTests {
         assertEquals(fileUrl, downloadTask.getDownloadUrl());
         assertTrue(downloadTask.getResumable());
         assertEquals(71841045L, downloadTask.getSize());
-        assertEquals(Status.PAUSED, downloadTask.getStatusProperty().get());
+        assertEquals(Status.PAUSED, downloadTask.getStatus());
     }
 
     @Test
@@ -78,7 +89,7 @@ public class DownloadTaskManagerTests {
         Download downloadTask = manager.createTask(fileUrl, savedAddress);
 
         dbManager.insert(downloadTask);
-        Optional<Download> itemByKey = dbManager.getTaskByKey(downloadTask.getName());
+        Optional<Download> itemByKey = dbManager.getTaskById(downloadTask.getId());
 
         assertTrue(itemByKey.isPresent());
         Download persistedDownloadTask = itemByKey.get();
@@ -88,7 +99,7 @@ public class DownloadTaskManagerTests {
         assertEquals(fileUrl, persistedDownloadTask.getDownloadUrl());
         assertTrue(persistedDownloadTask.getResumable());
         assertEquals(71841045L, persistedDownloadTask.getSize());
-        assertEquals(Status.PAUSED, persistedDownloadTask.getStatusProperty().get());
+        assertEquals(Status.PAUSED, persistedDownloadTask.getStatus());
     }
 
     @Test
@@ -109,7 +120,7 @@ public class DownloadTaskManagerTests {
         assertEquals(fileUrl, downloadTask.getDownloadUrl());
         assertTrue(downloadTask.getResumable());
         assertEquals(71841045L, downloadTask.getSize());
-        assertEquals(Status.PAUSED, downloadTask.getStatusProperty().get());
+        assertEquals(Status.PAUSED, downloadTask.getStatus());
     }
 
     @Test
@@ -136,6 +147,24 @@ public class DownloadTaskManagerTests {
         assertThrows(FileDataRequestFailedException.class, () -> manager.createTask(fileUrl, savedAddress));
     }
 
+    @Test
+    public void Given_multipleUrls_When_BulkImported_Expect_AllItemsProbedAndBatched(@Mock HttpClient client, @Mock HttpResponse<Void> response, @Mock HttpHeaders headers) throws IOException, InterruptedException {
+        mockedHttpClient.when(HttpClient::newHttpClient).thenReturn(client);
+        when(client.send(any(), eq(HttpResponse.BodyHandlers.discarding()))).thenReturn(response);
+        when(response.headers()).thenReturn(headers);
+        when(headers.map()).thenReturn(getMockHeaders(List.of("bytes"), List.of("71841045"), List.of("application/octet-stream"), List.of()));
+
+        List<String> urls = List.of("https://example.com/first.mkv", "https://example.com/second.mkv", "https://example.com/third.mkv");
+        List<Download> imported = new ArrayList<>();
+        int count = manager.createTasks(urls, "/apt/movies", imported::addAll);
+
+        assertEquals(3, count);
+        assertThat(imported).extracting(Download::getName)
+                .containsExactlyInAnyOrder("first.mkv", "second.mkv", "third.mkv");
+        // all the probes have to share one client
+        mockedHttpClient.verify(HttpClient::newHttpClient, times(1));
+    }
+
     private Map<String, List<String>> getMockHeaders(List<String> ranges, List<String> length, List<String> type, List<String> disposition) {
         return Map.of(
                 HttpConstants.ACCEPT_RANGES_HEADER.getValue(), ranges,
@@ -145,6 +174,110 @@ public class DownloadTaskManagerTests {
         );
     }
 
+    @Test
+    public void Given_UnfinishedDownloadsAtStartup_When_Resumed_Expect_QueueLimitToApply() throws Exception {
+        List<Download> downloads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Download download = spy(Download.builder()
+                    .name("unfinished-" + i)
+                    .status(Status.IN_PROGRESS)
+                    .build());
+            lenient().doNothing().when(download).resume();
+            downloads.add(download);
+        }
+        Download paused = spy(Download.builder()
+                .name("paused")
+                .status(Status.PAUSED)
+                .build());
+        downloads.add(paused);
+
+        try {
+            ConfigurationUtils.setConfig(ConfigurationConstants.MAX_CONCURRENT_DOWNLOADS, 2, false);
+            DownloadQueue queue = new DownloadQueue();
+
+            new StartupResumer(queue).resume(downloads).get(5, TimeUnit.SECONDS);
+
+            assertEquals(2, queue.runningCount());
+            assertEquals(2, queue.pendingCount());
+            verify(downloads.get(2), never()).resume();
+            verify(paused, never()).resume();
+
+            verify(downloads.get(0), timeout(5000)).resume();
+            verify(downloads.get(1), timeout(5000)).resume();
+            downloads.get(0).setStatus(Status.COMPLETED);
+            // the starts run outside the lock of the queue, on their own threads
+            verify(downloads.get(2), timeout(5000)).resume();
+            assertEquals(1, queue.pendingCount());
+        } finally {
+            ConfigurationUtils.populateConfigs(true);
+        }
+    }
+
+    @Test
+    public void Given_ManyRunningDownloads_When_PausedTogether_Expect_StoredAtOnce() {
+        List<Download> downloads = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            DownloadTask segment = new DownloadTask(Range.valueOf("0_79"), null, null);
+            segment.setWritten(i % 80);
+            downloads.add(Download.builder()
+                    .tasksDAO(dbManager)
+                    .name("file-" + i)
+                    .status(Status.IN_PROGRESS)
+                    .size(80L)
+                    .savePath("/apt/movies")
+                    .downloadUrl("https://example.com/file-" + i)
+                    .resumable(true)
+                    .downloadTasks(List.of(segment))
+                    .build());
+        }
+        dbManager.insertAll(downloads);
+
+        manager.pauseAll(downloads);
+
+        assertThat(downloads).extracting(d -> d.getStatus()).containsOnly(Status.PAUSED);
+        Download stored = dbManager.getTaskById(downloads.get(42).getId()).orElseThrow();
+        assertEquals("file-42", stored.getName());
+        assertEquals(Status.PAUSED, stored.getStatus());
+        assertEquals(42, stored.getDownloadTasks().get(0).getWritten());
+
+        manager.deleteTasks(downloads);
+        assertTrue(dbManager.getTaskById(downloads.get(42).getId()).isEmpty());
+        assertThat(dbManager.getTasksList()).doesNotContainAnyElementsOf(downloads);
+    }
+
+    @Test
+    public void Given_UnreachableOrigin_When_ProbedInBackground_Expect_FutureFailsWithFileDataError() {
+        // nothing listens on the port, the probe fails on its own thread
+        CompletableFuture<Download> probe = manager.createTaskAsync("http://localhost:1/file.bin", "/apt/movies");
+
+        assertThat(probe).failsWithin(10, TimeUnit.SECONDS)
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(FileDataRequestFailedException.class);
+    }
+
+    @Test
+    public void Given_SaveAndDeleteAskedTogether_When_RunInBackground_Expect_AppliedInOrder() {
+        Download download = Download.builder()
+                .tasksDAO(dbManager)
+                .name("ordered.bin")
+                .status(Status.PAUSED)
+                .size(80L)
+                .savePath("/apt/movies")
+                .downloadUrl("https://example.com/ordered.bin")
+                .resumable(true)
+                .build();
+
+        CompletableFuture<Void> saved = manager.saveTaskAsync(download);
+        manager.deleteTasksAsync(List.of(download)).join();
+
+        // the save has to have stored the task, otherwise the delete had nothing to wait for
+        assertTrue(saved.isDone());
+        assertDoesNotThrow(saved::join);
+        assertTrue(download.getId() > 0);
+        assertTrue(dbManager.getTaskById(download.getId()).isEmpty());
+        assertThat(dbManager.getTasksList()).doesNotContain(download);
+    }
+
     @Test
     public void calculateSize() {
         String mb = FileSizeUtil.calculateSize(75800158L);
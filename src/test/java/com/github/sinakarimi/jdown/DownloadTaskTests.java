@@ -8,10 +8,11 @@ import com.github.sinakarimi.jdown.dataObjects.Status;
 import com.github.sinakarimi.jdown.database.TasksDAO;
 import com.github.sinakarimi.jdown.download.Download;
 import com.github.sinakarimi.jdown.download.DownloadTask;
+import com.github.sinakarimi.jdown.download.DownloadTaskManager;
 import com.github.sinakarimi.jdown.exception.DownloadNotResumableException;
+import com.github.sinakarimi.jdown.exception.FileDataRequestFailedException;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
-import javafx.beans.property.SimpleObjectProperty;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -29,6 +30,7 @@ import java.util.*;
 import java.util.stream.Stream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.eq;
@@ -62,7 +64,7 @@ public class DownloadTaskTests {
         Download downloadTask = Download.builder()
                 .name("downloadedTestFile.txt")
                 .type("application/octet-stream")
-                .statusProperty(new SimpleObjectProperty<>(Status.PAUSED))
+                .status(Status.PAUSED)
                 .size(72L)
                 .savePath(tempDir.toString())
                 .downloadUrl("http://localhost:9090/testFile.txt")
@@ -87,7 +89,7 @@ public class DownloadTaskTests {
         Download downloadTask = Download.builder()
                 .name("downloadedTestFile.txt")
                 .type("application/octet-stream")
-                .statusProperty(new SimpleObjectProperty<>(Status.PAUSED))
+                .status(Status.PAUSED)
                 .size(72L)
                 .savePath(tempDir.toString())
                 .downloadUrl("http://localhost:9090/testFile.txt")
@@ -123,7 +125,7 @@ public class DownloadTaskTests {
             assertThat(Files.lines(f.toPath()))
                     .containsExactly(lines.toList().toArray(String[]::new));
             assertTrue(f.delete());
-            assertEquals(Status.COMPLETED, downloadTask.getStatusProperty().get());
+            assertEquals(Status.COMPLETED, downloadTask.getStatus());
         } catch (Exception e) {
             fail("test failed because an exception occurred", e);
         }
@@ -137,7 +139,7 @@ public class DownloadTaskTests {
         Download downloadTask = Download.builder()
                 .name("downloadedTestFile.txt")
                 .type("application/octet-stream")
-                .statusProperty(new SimpleObjectProperty<>(Status.PAUSED))
+                .status(Status.PAUSED)
                 .size(72L)
                 .savePath(tempDir.toString())
                 .downloadUrl("http://localhost:9090/testFile.txt")
@@ -179,7 +181,6 @@ public class DownloadTaskTests {
         Download downloadTask = Download.builder()
                 .name("downloadedTestFile.txt")
                 .type("application/octet-stream")
-                .statusProperty(new SimpleObjectProperty<>())
                 .size(72L)
                 .savePath(tempDir.toString())
                 .downloadUrl("http://localhost:9090/testFile.txt")
@@ -213,8 +214,8 @@ public class DownloadTaskTests {
         downloadTask.pause();
 
         assertDoesNotThrow(() -> dbManager.insert(downloadTask));
-        assertEquals(Status.PAUSED, downloadTask.getStatusProperty().get());
-        Optional<Download> itemByKey = dbManager.getTaskByKey(downloadTask.getName());
+        assertEquals(Status.PAUSED, downloadTask.getStatus());
+        Optional<Download> itemByKey = dbManager.getTaskById(downloadTask.getId());
         assertTrue(itemByKey.isPresent());
         Download fetchedDownload = itemByKey.get();
 
@@ -233,7 +234,7 @@ public class DownloadTaskTests {
         Download downloadTask = Download.builder()
                 .name("downloadedTestFile.txt")
                 .type("application/octet-stream")
-                .statusProperty(new SimpleObjectProperty<>(Status.PAUSED))
+                .status(Status.PAUSED)
                 .size(72L)
                 .savePath(tempDir.toString())
                 .downloadUrl("http://localhost:9090/testFile.txt")
@@ -263,7 +264,7 @@ public class DownloadTaskTests {
         downloadTask.pause();
 
         File f = new File(downloadTask.getSavePath() + "/" + downloadTask.getName());
-        assertEquals(Status.PAUSED, downloadTask.getStatusProperty().get());
+        assertEquals(Status.PAUSED, downloadTask.getStatus());
         assertFalse(f.exists());
 
     }
@@ -276,7 +277,7 @@ public class DownloadTaskTests {
         Download downloadTask = Download.builder()
                 .name("downloadedTestFile.txt")
                 .type("application/octet-stream")
-                .statusProperty(new SimpleObjectProperty<>(Status.PAUSED))
+                .status(Status.PAUSED)
                 .size(72L)
                 .savePath(tempDir.toString())
                 .downloadUrl("http://localhost:9090/testFile.txt")
@@ -308,18 +309,18 @@ public class DownloadTaskTests {
         downloadTask.pause();
 
         File f = new File(downloadTask.getSavePath() + "/" + downloadTask.getName());
-        assertEquals(Status.PAUSED, downloadTask.getStatusProperty().get());
+        assertEquals(Status.PAUSED, downloadTask.getStatus());
         assertFalse(f.exists());
 
         downloadTask.resume();
-        assertEquals(Status.IN_PROGRESS, downloadTask.getStatusProperty().get());
+        assertEquals(Status.IN_PROGRESS, downloadTask.getStatus());
 
         try (Stream<String> lines = Files.lines(path)) {
             Thread.sleep(5000);
             assertThat(Files.lines(f.toPath()))
                     .containsExactly(lines.toList().toArray(String[]::new));
             assertTrue(f.delete());
-            assertEquals(Status.COMPLETED, downloadTask.getStatusProperty().get());
+            assertEquals(Status.COMPLETED, downloadTask.getStatus());
         } catch (Exception e) {
             fail("test failed because an exception occurred", e);
         }
@@ -333,7 +334,7 @@ public class DownloadTaskTests {
         Download downloadTask = Download.builder()
                 .name("downloadedTestFile.txt")
                 .type("application/octet-stream")
-                .statusProperty(new SimpleObjectProperty<>(Status.PAUSED))
+                .status(Status.PAUSED)
                 .size(72L)
                 .savePath(tempDir.toString())
                 .downloadUrl("http://localhost:9090/testFile.txt")
@@ -362,12 +363,12 @@ public class DownloadTaskTests {
 
         downloadTask.start();
 
-        assertEquals(Status.IN_PROGRESS, downloadTask.getStatusProperty().get());
+        assertEquals(Status.IN_PROGRESS, downloadTask.getStatus());
 
         downloadTask.cancel();
 
         File f = new File(downloadTask.getSavePath() + "/" + downloadTask.getName());
-        assertEquals(Status.CANCELED, downloadTask.getStatusProperty().get());
+        assertEquals(Status.CANCELED, downloadTask.getStatus());
         assertFalse(f.exists());
     }
 
@@ -376,7 +377,7 @@ public class DownloadTaskTests {
         Download downloadTask = Download.builder()
                 .name("downloadedTestFile.txt")
                 .type("application/octet-stream")
-                .statusProperty(new SimpleObjectProperty<>(Status.PAUSED))
+                .status(Status.PAUSED)
                 .size(72L)
                 .savePath(tempDir.toString())
                 .downloadUrl("http://localhost:9090/testFile.txt")
@@ -385,11 +386,166 @@ public class DownloadTaskTests {
 
         downloadTask.start();
 
-        assertEquals(Status.IN_PROGRESS, downloadTask.getStatusProperty().get());
+        assertEquals(Status.IN_PROGRESS, downloadTask.getStatus());
 
         assertThrows(DownloadNotResumableException.class, downloadTask::pause);
     }
 
+    @Test
+    public void Given_RedirectingUrl_When_Probed_Expect_FinalUrlToBeCached() throws FileDataRequestFailedException {
+        stubFor(head(urlEqualTo("/redirect")).willReturn(aResponse().withStatus(302).withHeader("Location", "/testFile.txt")));
+        stubFor(head(urlEqualTo("/testFile.txt")).willReturn(aResponse().withStatus(200)
+                .withHeader(HttpConstants.ACCEPT_RANGES_HEADER.getValue(), "bytes")
+                .withHeader(HttpConstants.CONTENT_LENGTH_HEADER.getValue(), "71")));
+
+        DownloadTaskManager manager = DownloadTaskManager.getInstance(dbManager);
+        Download download = manager.createTask("http://localhost:9090/redirect", tempDir.toString());
+
+        assertEquals("http://localhost:9090/redirect", download.getDownloadUrl());
+        assertEquals("http://localhost:9090/testFile.txt", download.getResolvedUrl());
+        assertEquals(71L, download.getSize());
+        verify(1, headRequestedFor(urlEqualTo("/redirect")));
+    }
+
+    @Test
+    public void Given_ExpiredResolvedUrl_When_Started_Expect_UrlToBeResolvedAgain() throws IOException {
+        Path path = Path.of("src/test/resources/testFile.txt");
+        byte[] output = Files.readAllBytes(path);
+
+        Download downloadTask = Download.builder()
+                .name("downloadedTestFile.txt")
+                .type("application/octet-stream")
+                .status(Status.PAUSED)
+                .size(71L)
+                .savePath(tempDir.toString())
+                .downloadUrl("http://localhost:9090/redirect")
+                .resolvedUrl("http://localhost:9090/expired.txt")
+                .resumable(true)
+                .tasksDAO(dbManager)
+                .build();
+
+        stubFor(get(urlEqualTo("/expired.txt")).willReturn(aResponse().withStatus(403)));
+        stubFor(head(urlEqualTo("/redirect")).willReturn(aResponse().withStatus(302).withHeader("Location", "/testFile.txt")));
+        stubFor(head(urlEqualTo("/testFile.txt")).willReturn(aResponse().withStatus(200)));
+
+        List<Range> ranges = createRanges(downloadTask);
+        Map<String, byte[]> data = getStringMap(output, ranges, 71);
+
+        int index = 1;
+        for (Range range : ranges) {
+            stubFor(get(urlEqualTo("/testFile.txt"))
+                    .withHeader(HttpConstants.RANGE.getValue(), equalTo(String.format("bytes=%d-%d", range.getFrom(), range.getTo())))
+                    .willReturn(aResponse().withBody(data.get("bytes" + index)).withStatus(206))
+            );
+            index++;
+        }
+
+        downloadTask.start();
+
+        File f = new File(downloadTask.getSavePath() + "/" + downloadTask.getName());
+
+        try {
+            Thread.sleep(5000);
+            assertArrayEquals(output, Files.readAllBytes(f.toPath()));
+            assertEquals(Status.COMPLETED, downloadTask.getStatus());
+            assertEquals("http://localhost:9090/testFile.txt", downloadTask.getResolvedUrl());
+            // every segment expired, but the redirect chain is only followed once
+            verify(1, headRequestedFor(urlEqualTo("/redirect")));
+        } catch (Exception e) {
+            fail("test failed because an exception occurred", e);
+        }
+    }
+
+    @Test
+    public void Given_AlwaysRejectedUrl_When_ResolvedAgain_Expect_ErrorAfterRetriesRunOut() throws InterruptedException {
+        Download downloadTask = Download.builder()
+                .name("rejectedTestFile.txt")
+                .type("application/octet-stream")
+                .status(Status.PAUSED)
+                .size(71L)
+                .savePath(tempDir.toString())
+                .downloadUrl("http://localhost:9090/signed")
+                .resolvedUrl("http://localhost:9090/rejected.txt?sig=a")
+                .resumable(true)
+                .tasksDAO(dbManager)
+                .build();
+
+        // every resolve hands out a new signature, which is rejected just the same
+        stubFor(get(urlPathEqualTo("/rejected.txt")).willReturn(aResponse().withStatus(403)));
+        stubFor(head(urlPathEqualTo("/rejected.txt")).willReturn(aResponse().withStatus(200)));
+        stubFor(head(urlEqualTo("/signed")).inScenario("signatures").whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(302).withHeader("Location", "/rejected.txt?sig=b"))
+                .willSetStateTo("b"));
+        stubFor(head(urlEqualTo("/signed")).inScenario("signatures").whenScenarioStateIs("b")
+                .willReturn(aResponse().withStatus(302).withHeader("Location", "/rejected.txt?sig=a"))
+                .willSetStateTo(STARTED));
+
+        downloadTask.start();
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (downloadTask.getStatus() != Status.ERROR && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+
+        assertEquals(Status.ERROR, downloadTask.getStatus());
+        int maxRefreshes = ConfigurationUtils.getSettings().maxSegmentRetries();
+        assertThat(findAll(headRequestedFor(urlEqualTo("/signed")))).hasSizeLessThanOrEqualTo(maxRefreshes);
+    }
+
+    @Test
+    public void Given_ChangedRemoteFile_When_IfRangeDoesNotMatch_Expect_DownloadToRestartFromScratch() throws IOException {
+        Path path = Path.of("src/test/resources/testFile.txt");
+        byte[] output = Files.readAllBytes(path);
+
+        Download downloadTask = Download.builder()
+                .name("downloadedTestFile.txt")
+                .type("application/octet-stream")
+                .status(Status.PAUSED)
+                .size(71L)
+                .savePath(tempDir.toString())
+                .downloadUrl("http://localhost:9090/testFile.txt")
+                .etag("\"v1\"")
+                .resumable(true)
+                .tasksDAO(dbManager)
+                .build();
+
+        // the old version does not match anymore, so the server answers with the whole new file
+        stubFor(get(urlEqualTo("/testFile.txt"))
+                .withHeader(HttpConstants.IF_RANGE_HEADER.getValue(), equalTo("\"v1\""))
+                .willReturn(aResponse().withBody(output).withStatus(200)));
+        stubFor(head(urlEqualTo("/testFile.txt")).willReturn(aResponse().withStatus(200)
+                .withHeader(HttpConstants.ETAG_HEADER.getValue(), "\"v2\"")
+                .withHeader(HttpConstants.CONTENT_LENGTH_HEADER.getValue(), "71")));
+
+        List<Range> ranges = createRanges(downloadTask);
+        Map<String, byte[]> data = getStringMap(output, ranges, 71);
+
+        int index = 1;
+        for (Range range : ranges) {
+            stubFor(get(urlEqualTo("/testFile.txt"))
+                    .withHeader(HttpConstants.RANGE.getValue(), equalTo(String.format("bytes=%d-%d", range.getFrom(), range.getTo())))
+                    .withHeader(HttpConstants.IF_RANGE_HEADER.getValue(), equalTo("\"v2\""))
+                    .willReturn(aResponse().withBody(data.get("bytes" + index)).withStatus(206))
+            );
+            index++;
+        }
+
+        downloadTask.start();
+
+        File f = new File(downloadTask.getSavePath() + "/" + downloadTask.getName());
+
+        try {
+            Thread.sleep(5000);
+            assertEquals("\"v2\"", downloadTask.getEtag());
+            assertArrayEquals(output, Files.readAllBytes(f.toPath()));
+            assertEquals(Status.COMPLETED, downloadTask.getStatus());
+            // all segments noticed the change, but the file is probed again only once
+            verify(1, headRequestedFor(urlEqualTo("/testFile.txt")));
+        } catch (Exception e) {
+            fail("test failed because an exception occurred", e);
+        }
+    }
+
     private static Map<String, byte[]> getStringMap(byte[] output, List<Range> ranges, int size) {
         Map<String, byte[]> data = new HashMap<>();
 
@@ -0,0 +1,81 @@
+package com.github.sinakarimi.jdown;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.configuration.DownloadSettings;
+import com.github.sinakarimi.jdown.database.InMemoryTaskStore;
+import com.github.sinakarimi.jdown.database.TasksDAO;
+import com.github.sinakarimi.jdown.download.HostProfile;
+import com.github.sinakarimi.jdown.download.HostProfiles;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HostProfilesTests {
+
+    private static final String URL = "https://cdn.example.com/files/image.iso";
+    private static final long TEN_MB = 10 * 1024 * 1024;
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final InMemoryTaskStore store = new InMemoryTaskStore();
+    private final DownloadSettings settings = ConfigurationUtils.getSettings();
+
+    @Test
+    void Given_DownloadsFromHost_When_LargerCountIsNotFaster_Expect_BestCountToBeKeptAcrossRestarts() {
+        HostProfiles profiles = new HostProfiles();
+        profiles.load(store);
+        int configured = settings.threads();
+
+        assertEquals(configured, profiles.segmentsFor(URL, settings));
+
+        profiles.recordDownload(URL, configured, TEN_MB, SECOND);
+        // a few more segments are tried next
+        assertEquals(configured + 2, profiles.segmentsFor(URL, settings));
+
+        profiles.recordDownload(URL, configured + 2, TEN_MB, 2 * SECOND);
+        assertEquals(configured, profiles.segmentsFor(URL, settings));
+
+        HostProfiles restarted = new HostProfiles();
+        restarted.load(store);
+        assertEquals(configured, restarted.segmentsFor(URL, settings));
+        assertEquals(TEN_MB, restarted.get(URL).orElseThrow().bestThroughput());
+    }
+
+    @Test
+    void Given_ThrottlingHost_When_Planned_Expect_FewerSegments() {
+        HostProfiles profiles = new HostProfiles();
+        profiles.load(store);
+        profiles.recordDownload(URL, 8, TEN_MB, SECOND);
+
+        for (int i = 0; i < 20; i++) {
+            profiles.recordConnection(URL, i < 3 ? 429 : 206, TEN_MB / 8, SECOND, i < 3);
+            // a few failures are not trusted yet
+            if (i == 9) {
+                assertEquals(10, profiles.segmentsFor(URL, settings));
+            }
+        }
+
+        assertEquals(4, profiles.segmentsFor(URL, settings));
+        assertEquals(0.15, profiles.get(URL).orElseThrow().throttleRate());
+
+        profiles.recordProbe("https://CDN.example.com/other", false, true);
+        assertEquals(1, profiles.segmentsFor(URL, settings));
+        assertTrue(profiles.get(URL).orElseThrow().http2());
+    }
+
+    @Test
+    void Given_StoredProfiles_When_ReadFromDatabase_Expect_SameProfiles() {
+        TasksDAO tasksDAO = TasksDAO.getInstance("testDb");
+        HostProfile profile = new HostProfile("cdn.example.com", 2_000_000, 6, 9_000_000, 8, true, null, 40, 2, 1, 1000);
+        HostProfile unknown = new HostProfile("other.example.com", 0, 0, 0, 0, null, true, 1, 0, 0, 1000);
+
+        tasksDAO.saveHostProfiles(List.of(profile));
+        tasksDAO.saveHostProfiles(List.of(unknown));
+
+        assertThat(tasksDAO.loadHostProfiles()).contains(profile, unknown);
+    }
+
+}
@@ -0,0 +1,164 @@
+package com.github.sinakarimi.jdown;
+
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
+import com.github.sinakarimi.jdown.dataObjects.Range;
+import com.github.sinakarimi.jdown.dataObjects.Status;
+import com.github.sinakarimi.jdown.database.InMemoryTaskStore;
+import com.github.sinakarimi.jdown.database.JournalProgressStore;
+import com.github.sinakarimi.jdown.database.PagedTasksList;
+import com.github.sinakarimi.jdown.database.ProgressSnapshot;
+import com.github.sinakarimi.jdown.download.Download;
+import com.github.sinakarimi.jdown.download.DownloadTask;
+import javafx.beans.property.SimpleStringProperty;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryTaskStoreTests {
+
+    private final InMemoryTaskStore store = new InMemoryTaskStore();
+
+    @Test
+    void Given_InsertedTask_When_ReadBack_Expect_OnlyStoredStateToBeSeen() {
+        Download download = download("ITEM1", Status.PAUSED);
+        store.insert(download);
+
+        // a change of the live object is not stored until it goes through the store
+        download.getDownloadTasks().get(0).setWritten(5);
+        store.updateStatus(download.getId(), Status.IN_PROGRESS);
+        DownloadTask segment = new DownloadTask(Range.valueOf("40_79"), null, null);
+        segment.setWritten(7);
+        store.updateSegment(download.getId(), 1, segment);
+
+        Download stored = store.getTaskById(download.getId()).orElseThrow();
+
+        assertNotSame(download, stored);
+        assertEquals(Status.IN_PROGRESS, download.getStatus());
+        assertEquals(Status.IN_PROGRESS, stored.getStatus());
+        assertEquals(0, stored.getDownloadTasks().get(0).getWritten());
+        assertEquals(7, stored.getDownloadTasks().get(1).getWritten());
+    }
+
+    @Test
+    void Given_UnprobedTask_When_Journaled_Expect_SnapshotWithoutSegments() throws Exception {
+        Download download = download("unprobed", Status.IN_PROGRESS);
+        store.insert(download);
+        download.setDownloadTasks(null);
+
+        assertThat(ProgressSnapshot.of(download).segments()).isEmpty();
+
+        Path journal = Files.createTempFile("progress", ".journal");
+        try {
+            new JournalProgressStore(store, journal, 64 * 1024, 600_000).save(List.of(download));
+            // the record of the task without segments is replayed like any other
+            new JournalProgressStore(store, journal, 64 * 1024, 600_000);
+
+            assertEquals(Status.IN_PROGRESS, store.getTaskById(download.getId()).orElseThrow().getStatus());
+        } finally {
+            Files.deleteIfExists(journal);
+        }
+    }
+
+    @Test
+    void Given_FinishedTasks_When_Paged_Expect_MostRecentFirst() throws Exception {
+        store.insert(download("active", Status.PAUSED));
+        for (int i = 0; i < 3; i++) {
+            store.insert(download("done-" + i, Status.COMPLETED));
+            Thread.sleep(2);
+        }
+
+        try {
+            ConfigurationUtils.setConfig(ConfigurationConstants.RECENT_HISTORY_MILLIS, 0, false);
+            store.getTasksList().clear();
+            store.loadActiveTasks();
+            PagedTasksList list = new PagedTasksList(store, 2);
+
+            assertThat(list).extracting(Download::getName).containsExactly("active", "done-2", "done-1", "done-0");
+        } finally {
+            ConfigurationUtils.populateConfigs(true);
+        }
+    }
+
+    @Test
+    void Given_PagedList_When_PageRead_Expect_OnlyReadTasksLoaded() throws Exception {
+        store.insert(download("active", Status.PAUSED));
+        for (int i = 0; i < 3; i++) {
+            store.insert(download("done-" + i, Status.COMPLETED));
+            Thread.sleep(2);
+        }
+
+        try {
+            ConfigurationUtils.setConfig(ConfigurationConstants.RECENT_HISTORY_MILLIS, 0, false);
+            store.getTasksList().clear();
+            store.loadActiveTasks();
+            PagedTasksList list = new PagedTasksList(store, 2);
+            Download first = list.get(1);
+
+            assertThat(list.loadedTasks()).extracting(Download::getName).containsExactlyInAnyOrder("active", "done-2", "done-1");
+            assertTrue(list.loadedTasks().contains(first));
+        } finally {
+            ConfigurationUtils.populateConfigs(true);
+        }
+    }
+
+    @Test
+    void Given_StatusListener_When_StatusChanged_Expect_ToldOnTheChangingThread() throws Exception {
+        Download download = download("listened", Status.PAUSED);
+        List<Status> seen = new ArrayList<>();
+        List<String> threads = new ArrayList<>();
+        download.addStatusListener(status -> {
+            seen.add(status);
+            threads.add(Thread.currentThread().getName());
+        });
+
+        Thread worker = new Thread(() -> download.setStatus(Status.IN_PROGRESS), "segment-worker");
+        worker.start();
+        worker.join();
+
+        assertEquals(Status.IN_PROGRESS, download.getStatus());
+        assertEquals(List.of(Status.IN_PROGRESS), seen);
+        assertEquals(List.of("segment-worker"), threads);
+    }
+
+    @Test
+    void Given_DeletedTask_When_Checkpointed_Expect_Skipped() {
+        Download kept = download("kept", Status.IN_PROGRESS);
+        Download deleted = download("deleted", Status.IN_PROGRESS);
+        store.insertAll(List.of(kept, deleted));
+        store.delete(deleted.getId());
+
+        store.checkpointSnapshots(List.of(
+                new ProgressSnapshot(kept.getId(), 0.5, kept.getDownloadTasks()),
+                new ProgressSnapshot(deleted.getId(), 0.5, deleted.getDownloadTasks())));
+
+        assertEquals(0.5, store.getTaskById(kept.getId()).orElseThrow().getProgressProperty().get());
+        assertTrue(store.getTaskById(deleted.getId()).isEmpty());
+        assertThat(store.getTasksList()).extracting(Download::getName).containsExactly("kept");
+    }
+
+    private static Download download(String name, Status status) {
+        List<DownloadTask> tasks = new ArrayList<>();
+        tasks.add(new DownloadTask(Range.valueOf("0_39"), null, null));
+        tasks.add(new DownloadTask(Range.valueOf("40_79"), null, null));
+
+        return Download.builder()
+                .name(name)
+                .type("BINARY")
+                .status(status)
+                .size(80L)
+                .savePath("opt/test/test")
+                .downloadUrl("localhost:9090")
+                .resumable(true)
+                .descriptionProperty(new SimpleStringProperty(name))
+                .downloadTasks(tasks)
+                .build();
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.github.sinakarimi.jdown;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.github.sinakarimi.jdown.dataObjects.Range;
+import com.github.sinakarimi.jdown.download.DownloadTask;
+import com.github.sinakarimi.jdown.serialization.RangeDeserializer;
+import com.github.sinakarimi.jdown.serialization.RangeSerializer;
+import com.github.sinakarimi.jdown.serialization.SegmentCodec;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentCodecTests {
+
+    @Test
+    void Given_Segments_When_EncodedAndDecoded_Expect_SameState() {
+        List<DownloadTask> segments = segments(11);
+        // a gap and an empty range are kept as they are
+        segments.get(5).setRange(new Range(segments.get(5).getRange().getFrom() + 3, segments.get(5).getRange().getTo()));
+        segments.get(10).setRange(new Range(segments.get(10).getRange().getFrom(), segments.get(10).getRange().getFrom() - 1));
+
+        List<DownloadTask> decoded = SegmentCodec.decode(SegmentCodec.encode(segments));
+
+        assertEquals(segments.size(), decoded.size());
+        for (int i = 0; i < segments.size(); i++) {
+            assertEquals(segments.get(i).getRange(), decoded.get(i).getRange());
+            assertEquals(segments.get(i).getWritten(), decoded.get(i).getWritten());
+            assertEquals(segments.get(i).isCompleted(), decoded.get(i).isCompleted());
+        }
+    }
+
+    @Test
+    void Given_UnknownVersion_When_Decoded_Expect_Rejected() {
+        byte[] encoded = SegmentCodec.encode(segments(2));
+        encoded[0] = 42;
+
+        assertThrows(IllegalArgumentException.class, () -> SegmentCodec.decode(encoded));
+        assertThrows(IllegalArgumentException.class, () -> SegmentCodec.decode(new byte[]{SegmentCodec.VERSION, 2}));
+    }
+
+    @Test
+    void Given_Segments_When_Encoded_Expect_SmallerThanJson() throws Exception {
+        ObjectMapper mapper = jsonMapper();
+
+        for (int count : new int[]{10, 100, 1000}) {
+            List<DownloadTask> segments = segments(count);
+
+            byte[] binary = SegmentCodec.encode(segments);
+            String json = mapper.writeValueAsString(segments);
+
+            assertTrue(binary.length < json.length());
+            assertEquals(segments.get(count - 1).getRange(), mapper.readValue(json, SEGMENTS_TYPE).get(count - 1).getRange());
+        }
+    }
+
+    static final TypeReference<List<DownloadTask>> SEGMENTS_TYPE = new TypeReference<>() {};
+
+    /**
+     * the mapper the segments were stored with before the binary codec
+     */
+    static ObjectMapper jsonMapper() {
+        SimpleModule module = new SimpleModule();
+        module.addKeySerializer(Range.class, new RangeSerializer());
+        module.addKeyDeserializer(Range.class, new RangeDeserializer());
+        return new ObjectMapper().registerModule(module);
+    }
+
+    /**
+     * segments of up to 4 MiB, smaller ones for large counts so the whole file stays within the int ranges
+     */
+    static List<DownloadTask> segments(int count) {
+        int size = Math.min(4 * 1024 * 1024, Integer.MAX_VALUE / count);
+        List<DownloadTask> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int from = Math.toIntExact((long) i * size);
+            DownloadTask task = new DownloadTask(new Range(from, from + size - 1), null, null);
+            task.setCompleted(i % 3 == 0);
+            task.setWritten(task.isCompleted() ? size : i * 1000);
+            segments.add(task);
+        }
+        return segments;
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.github.sinakarimi.jdown;
+
+import com.github.sinakarimi.jdown.dataObjects.Status;
+import com.github.sinakarimi.jdown.database.TasksDAO;
+import com.github.sinakarimi.jdown.download.Download;
+import com.github.sinakarimi.jdown.download.DownloadQueue;
+import com.github.sinakarimi.jdown.download.DownloadTask;
+import com.github.sinakarimi.jdown.download.StartupResumer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StartupResumerTests {
+
+    private static final TasksDAO dbManager = TasksDAO.getInstance("testDb");
+
+    @TempDir
+    Path tempDir;
+
+    private byte[] content;
+    private TestHttpServer server;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        content = Files.readAllBytes(Path.of("src/test/resources/testFile.txt"));
+        server = new TestHttpServer(content);
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        server.close();
+        dbManager.deleteAll();
+    }
+
+    @Test
+    void Given_DownloadRunningWhenClosed_When_ReloadedFromStore_Expect_ItToBeResumed() throws Exception {
+        Download download = Download.builder()
+                .tasksDAO(dbManager)
+                .name("testFile.txt")
+                .status(Status.PAUSED)
+                .size((long) content.length)
+                .savePath(tempDir.toString())
+                .downloadUrl(server.url("/testFile.txt"))
+                .resumable(true)
+                .build();
+        dbManager.insert(download);
+
+        // the segments trickle, so the download is still running when the application is closed
+        server.stall(100, 3);
+        download.start();
+        download.getDownloadTasks().forEach(DownloadTask::cancel);
+        server.stall(0, 0);
+
+        Download stored = dbManager.getTaskById(download.getId()).orElseThrow();
+        assertEquals(Status.IN_PROGRESS, stored.getStatus());
+
+        CompletableFuture<Status> finished = new CompletableFuture<>();
+        stored.addStatusListener(status -> {
+            if (status != Status.IN_PROGRESS) {
+                finished.complete(status);
+            }
+        });
+        new StartupResumer(new DownloadQueue()).resume(List.of(stored)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Status.COMPLETED, finished.get(10, TimeUnit.SECONDS));
+        assertArrayEquals(content, Files.readAllBytes(tempDir.resolve("testFile.txt")));
+        assertTrue(stored.getDownloadTasks().stream().allMatch(DownloadTask::isCompleted));
+    }
+
+}
@@ -1,12 +1,14 @@
 package com.github.sinakarimi.jdown;
 
+import com.github.sinakarimi.jdown.configuration.ConfigurationConstants;
+import com.github.sinakarimi.jdown.configuration.ConfigurationUtils;
 import com.github.sinakarimi.jdown.dataObjects.Range;
 import com.github.sinakarimi.jdown.dataObjects.Status;
+import com.github.sinakarimi.jdown.database.JournalProgressStore;
+import com.github.sinakarimi.jdown.database.PagedTasksList;
 import com.github.sinakarimi.jdown.database.TasksDAO;
 import com.github.sinakarimi.jdown.download.Download;
 import com.github.sinakarimi.jdown.download.DownloadTask;
-import javafx.beans.property.ObjectProperty;
-import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.ObservableList;
 import org.junit.jupiter.api.AfterEach;
@@ -15,6 +17,9 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -24,6 +29,8 @@ import static org.junit.jupiter.api.Assertions.*;
 public class TasksDAOTests {
 
     private final TasksDAO manager = TasksDAO.getInstance("testDb");
+    private Download item1;
+    private Download item2;
 
     @BeforeEach()
     public void setup() {
@@ -36,7 +43,7 @@ public class TasksDAOTests {
         Download downloadTask1 = Download.builder()
                 .name("ITEM1")
                 .type("BINARY")
-                .statusProperty(new SimpleObjectProperty<>(Status.PAUSED))
+                .status(Status.PAUSED)
                 .size(80L)
                 .savePath("opt/test/test")
                 .downloadUrl("localhost:9090")
@@ -48,7 +55,7 @@ public class TasksDAOTests {
         Download downloadTask2 = Download.builder()
                 .name("ITEM2")
                 .type("TEXT")
-                .statusProperty(new SimpleObjectProperty<>(Status.ERROR))
+                .status(Status.ERROR)
                 .size(80L)
                 .savePath("opt/test/test")
                 .downloadUrl("localhost:9090")
@@ -60,7 +67,7 @@ public class TasksDAOTests {
         Download downloadTask3 = Download.builder()
                 .name("ITEM3")
                 .type("IMAGE")
-                .statusProperty(new SimpleObjectProperty<>(Status.CANCELED))
+                .status(Status.CANCELED)
                 .size(80L)
                 .savePath("opt/test/test")
                 .downloadUrl("localhost:9090")
@@ -71,6 +78,8 @@ public class TasksDAOTests {
 
         List<Download> downloadTasks = List.of(downloadTask1, downloadTask2, downloadTask3);
         manager.insertAll(downloadTasks);
+        item1 = downloadTask1;
+        item2 = downloadTask2;
     }
     
     @AfterEach
@@ -84,14 +93,13 @@ public class TasksDAOTests {
         ObservableList<Download> allItems = manager.getTasksList();
         allItems.clear();
 
-        manager.loadAllTasks();
+        manager.loadActiveTasks();
         allItems = manager.getTasksList();
 
         assertThat(allItems).extracting(Download::getName)
                 .containsExactly("ITEM1", "ITEM2", "ITEM3");
 
-        assertThat(allItems).extracting(Download::getStatusProperty)
-                .extracting(ObjectProperty::get)
+        assertThat(allItems).extracting(Download::getStatus)
                 .containsExactly(Status.PAUSED, Status.ERROR, Status.CANCELED);
 
         System.out.println(allItems);
@@ -102,7 +110,7 @@ public class TasksDAOTests {
         Download downloadTask = Download.builder()
                 .name("item4")
                 .type("video")
-                .statusProperty(new SimpleObjectProperty<>(Status.COMPLETED))
+                .status(Status.COMPLETED)
                 .size(72L)
                 .savePath("opt/test/test")
                 .downloadUrl("localhost:9090")
@@ -119,32 +127,265 @@ public class TasksDAOTests {
     void deleteFromDatabase() {
         ObservableList<Download> allItems = manager.getTasksList();
 
-        String key = allItems.get(0).getName();
+        long key = allItems.get(0).getId();
         assertDoesNotThrow(() -> manager.delete(key));
 
         ObservableList<Download> allItemsAfterDelete = manager.getTasksList();
         assertEquals(2, allItemsAfterDelete.size());
-        assertThat(allItemsAfterDelete).extracting(Download::getName).doesNotContain(key);
+        assertThat(allItemsAfterDelete).extracting(Download::getId).doesNotContain(key);
     }
 
     @Test
     void updateAnItem() {
-        manager.loadAllTasks();
+        manager.loadActiveTasks();
         ObservableList<Download> allItems = manager.getTasksList();
         Download downloadTask = allItems.get(0);
 
-        String pk = downloadTask.getName();
+        long pk = downloadTask.getId();
 
         String oldValue = downloadTask.getDescriptionProperty().get();
         String newValue = "this is a test";
         downloadTask.setSavePath(newValue);
 
         assertDoesNotThrow(() -> manager.updateDescription(pk, newValue));
-        manager.loadAllTasks();
+        manager.loadActiveTasks();
         ObservableList<Download> allItemsAfterUpdate = manager.getTasksList();
         Download newDownloadTask = allItemsAfterUpdate.get(0);
         assertNotEquals(oldValue, newDownloadTask.getDescriptionProperty().get());
         assertEquals(newValue, newDownloadTask.getDescriptionProperty().get());
         assertEquals(downloadTask.getName(), newDownloadTask.getName());
     }
+
+    @Test
+    void validatorsArePersisted() {
+        Download downloadTask = Download.builder()
+                .name("item5")
+                .type("video")
+                .status(Status.PAUSED)
+                .size(72L)
+                .savePath("opt/test/test")
+                .downloadUrl("localhost:9090")
+                .resumable(true)
+                .etag("\"abc\"")
+                .lastModified("Wed, 21 Oct 2015 07:28:00 GMT")
+                .downloadTasks(List.of(new DownloadTask(Range.valueOf("0_71"), null, null)))
+                .build();
+
+        manager.insert(downloadTask);
+        downloadTask.getDownloadTasks().get(0).setWritten(30);
+        manager.updateSegments(downloadTask.getId(), downloadTask.getDownloadTasks());
+
+        Download fetched = manager.getTaskById(downloadTask.getId()).orElseThrow();
+        assertEquals("\"abc\"", fetched.getEtag());
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", fetched.getLastModified());
+        assertEquals(30, fetched.getDownloadTasks().get(0).getWritten());
+    }
+
+    @Test
+    void checkpointPersistsProgressAndSegments() {
+        manager.loadActiveTasks();
+        Download loaded1 = manager.getTaskById(item1.getId()).orElseThrow();
+        Download loaded2 = manager.getTaskById(item2.getId()).orElseThrow();
+        loaded1.setProgress(0.5);
+        loaded1.getDownloadTasks().get(0).setWritten(2);
+        loaded2.setProgress(0.25);
+
+        manager.checkpoint(List.of(loaded1, loaded2));
+
+        Download fetched1 = manager.getTaskById(item1.getId()).orElseThrow();
+        Download fetched2 = manager.getTaskById(item2.getId()).orElseThrow();
+        assertEquals(0.5, fetched1.getProgressProperty().get());
+        assertEquals(2, fetched1.getDownloadTasks().get(0).getWritten());
+        assertEquals(0.25, fetched2.getProgressProperty().get());
+    }
+
+    @Test
+    void singleSegmentIsUpdatedInPlace() {
+        DownloadTask segment = new DownloadTask(Range.valueOf("0_2"), null, null);
+        segment.setWritten(3);
+        segment.setCompleted(true);
+
+        manager.updateSegment(item1.getId(), 1, segment);
+
+        List<DownloadTask> fetched = manager.getTaskById(item1.getId()).orElseThrow().getDownloadTasks();
+        assertThat(fetched).hasSize(3);
+        assertEquals(0, fetched.get(0).getWritten());
+        assertEquals(3, fetched.get(1).getWritten());
+        assertTrue(fetched.get(1).isCompleted());
+        assertFalse(fetched.get(2).isCompleted());
+    }
+
+    @Test
+    void tasksWithTheSameNameAreKeptApart() {
+        Download sameName = Download.builder()
+                .name("ITEM1")
+                .type("BINARY")
+                .status(Status.PAUSED)
+                .size(80L)
+                .savePath("opt/test/other")
+                .downloadUrl("localhost:9090")
+                .resumable(true)
+                .build();
+        manager.insert(sameName);
+
+        manager.updateStatus(sameName.getId(), Status.COMPLETED);
+
+        assertNotEquals(item1.getId(), sameName.getId());
+        assertEquals(Status.COMPLETED, sameName.getStatus());
+        assertEquals(Status.PAUSED, item1.getStatus());
+        assertEquals(Status.PAUSED, manager.getTaskById(item1.getId()).orElseThrow().getStatus());
+        assertEquals(Status.COMPLETED, manager.getTaskById(sameName.getId()).orElseThrow().getStatus());
+    }
+
+    @Test
+    void historyIsReadInPages() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            manager.insert(Download.builder()
+                    .name("done-" + i)
+                    .type("BINARY")
+                    .status(Status.COMPLETED)
+                    .size(80L)
+                    .savePath("opt/test/test")
+                    .downloadUrl("localhost:9090")
+                    .resumable(true)
+                    .build());
+        }
+        Thread.sleep(5);
+
+        try {
+            // everything finished so far is history
+            ConfigurationUtils.setConfig(ConfigurationConstants.RECENT_HISTORY_MILLIS, 0, false);
+            manager.getTasksList().clear();
+            manager.loadActiveTasks();
+            PagedTasksList list = new PagedTasksList(manager, 2);
+
+            assertThat(list.getActiveTasks()).extracting(Download::getName).containsExactly("ITEM1", "ITEM2");
+            assertEquals(8, list.size());
+            assertEquals("done-4", list.get(2).getName());
+            assertEquals("ITEM3", list.get(7).getName());
+
+            Download removed = list.get(3);
+            manager.delete(removed.getId());
+            assertTrue(list.remove(removed));
+            assertEquals(7, list.size());
+            assertEquals("done-2", list.get(3).getName());
+        } finally {
+            ConfigurationUtils.populateConfigs(true);
+        }
+    }
+
+    @Test
+    void oldFinishedTasksAreArchived() throws Exception {
+        manager.updateStatus(item2.getId(), Status.COMPLETED);
+        manager.flush();
+        Thread.sleep(5);
+
+        assertEquals(2, manager.archiveHistory(System.currentTimeMillis()));
+        manager.maintain(16);
+
+        assertTrue(manager.getTaskById(item2.getId()).isEmpty());
+        assertTrue(manager.getTaskById(item1.getId()).isPresent());
+        assertEquals(2, manager.countArchive());
+        assertThat(manager.loadArchivePage(0, 10)).extracting(Download::getName).containsExactlyInAnyOrder("ITEM2", "ITEM3");
+        assertThat(manager.loadArchivePage(0, 10)).extracting(Download::getDownloadTasks).containsOnlyNulls();
+
+        manager.delete(item2.getId());
+        assertThat(manager.loadArchivePage(0, 10)).extracting(Download::getName).containsExactly("ITEM3");
+    }
+
+    @Test
+    void tasksAreFoundByTheirWords() {
+        Download ubuntu = Download.builder()
+                .name("ubuntu-24.04-desktop.iso")
+                .type("BINARY")
+                .status(Status.COMPLETED)
+                .size(80L)
+                .savePath("opt/test/test")
+                .downloadUrl("https://releases.ubuntu.com/24.04/ubuntu.iso")
+                .resumable(true)
+                .descriptionProperty(new SimpleStringProperty("lts image"))
+                .build();
+        manager.insert(ubuntu);
+
+        assertEquals(1, manager.countSearch("ubu"));
+        assertEquals(3, manager.countSearch("test"));
+        assertThat(manager.search("releases LTS", 0, 10)).extracting(Download::getName).containsExactly("ubuntu-24.04-desktop.iso");
+        assertSame(item1, manager.search("item1", 0, 10).get(0));
+        // the query syntax of the index is not interpreted
+        assertEquals(0, manager.countSearch("\"ITEM1 OR"));
+        assertEquals(0, manager.countSearch("  "));
+
+        manager.updateDescription(item2.getId(), "ubuntu mirror");
+        assertThat(manager.search("ubuntu", 0, 10)).extracting(Download::getName).containsExactly("ubuntu-24.04-desktop.iso", "ITEM2");
+        assertThat(manager.search("ubuntu", 1, 10)).extracting(Download::getName).containsExactly("ITEM2");
+
+        manager.delete(ubuntu.getId());
+        assertEquals(1, manager.countSearch("ubuntu"));
+    }
+
+    @Test
+    void queuedUpdatesAreCoalescedPerTask() {
+        manager.updateProgression(item1.getId(), 0.1);
+        manager.updateProgression(item1.getId(), 0.2);
+        manager.updateStatus(item1.getId(), Status.IN_PROGRESS);
+        manager.updateDescription(item2.getId(), "queued");
+
+        // four updates of two tasks, unless the writer thread already took some of them
+        assertTrue(manager.pendingUpdates() <= 2);
+        manager.flush();
+        assertEquals(0, manager.pendingUpdates());
+
+        Download fetched = manager.getTaskById(item1.getId()).orElseThrow();
+        assertEquals(0.2, fetched.getProgressProperty().get());
+        assertEquals(Status.IN_PROGRESS, fetched.getStatus());
+        assertEquals("queued", manager.getTaskById(item2.getId()).orElseThrow().getDescriptionProperty().get());
+    }
+
+    @Test
+    void journalIsReplayedAfterACrash() throws Exception {
+        Path journal = Files.createTempFile("progress", ".journal");
+        try {
+            JournalProgressStore store = new JournalProgressStore(manager, journal, 64 * 1024, 600_000);
+            item1.setDownloadTasks(List.of(new DownloadTask(Range.valueOf("0_39"), null, null), new DownloadTask(Range.valueOf("40_79"), null, null)));
+            item1.getDownloadTasks().get(1).setWritten(7);
+            store.save(List.of(item1));
+            assertEquals(0, manager.getTaskById(item1.getId()).orElseThrow().getDownloadTasks().get(1).getWritten());
+
+            // the store of the crashed run is never closed, the next one finds its records
+            new JournalProgressStore(manager, journal, 64 * 1024, 600_000);
+
+            assertEquals(7, manager.getTaskById(item1.getId()).orElseThrow().getDownloadTasks().get(1).getWritten());
+        } finally {
+            Files.deleteIfExists(journal);
+        }
+    }
+
+    @Test
+    void partlyWrittenJournalRecordIsIgnored() throws Exception {
+        Path journal = Files.createTempFile("progress", ".journal");
+        try {
+            JournalProgressStore store = new JournalProgressStore(manager, journal, 64 * 1024, 600_000);
+            item1.setDownloadTasks(List.of(new DownloadTask(Range.valueOf("0_79"), null, null)));
+            item1.getDownloadTasks().get(0).setWritten(7);
+            store.save(List.of(item1));
+            item1.getDownloadTasks().get(0).setWritten(9);
+            store.save(List.of(item1));
+
+            // damage the payload of the second record, as if the crash happened while it was written
+            try (RandomAccessFile file = new RandomAccessFile(journal.toFile(), "rw")) {
+                file.seek(4);
+                int firstLength = file.readInt();
+                long second = 4 + 8 + firstLength;
+                file.seek(second + 4 + 20);
+                int b = file.read();
+                file.seek(second + 4 + 20);
+                file.write(b ^ 0xff);
+            }
+            new JournalProgressStore(manager, journal, 64 * 1024, 600_000);
+
+            assertEquals(7, manager.getTaskById(item1.getId()).orElseThrow().getDownloadTasks().get(0).getWritten());
+        } finally {
+            Files.deleteIfExists(journal);
+        }
+    }
 }
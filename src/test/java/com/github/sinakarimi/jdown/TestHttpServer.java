@@ -0,0 +1,179 @@
+package com.github.sinakarimi.jdown;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * a tiny keep-alive HTTP/1.1 server serving one file with range support. unlike WireMock it exposes the connection
+ * level details the tests need: how many connections were opened, from which address, and it can slow down mid-body
+ */
+public class TestHttpServer implements AutoCloseable {
+
+    private static final long TRICKLE_DELAY_MILLIS = 200;
+
+    private final ServerSocket serverSocket;
+    private final byte[] content;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final List<String> peerAddresses = new CopyOnWriteArrayList<>();
+    private final List<String> rangeHeaders = new CopyOnWriteArrayList<>();
+    private final AtomicInteger stalls = new AtomicInteger();
+    private volatile int stallAfterBytes;
+    private final AtomicInteger silences = new AtomicInteger();
+    private volatile int silenceAfterBytes;
+
+    public TestHttpServer(byte[] content) throws IOException {
+        this.content = content;
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        executor.submit(this::acceptLoop);
+    }
+
+    public String url(String path) {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+    }
+
+    /**
+     * the next {@code times} GET responses send {@code afterBytes} bytes of their body and then trickle the rest,
+     * one byte every {@link #TRICKLE_DELAY_MILLIS}
+     */
+    public void stall(int times, int afterBytes) {
+        stallAfterBytes = afterBytes;
+        stalls.set(times);
+    }
+
+    /**
+     * the next {@code times} GET responses send {@code afterBytes} bytes of their body and then nothing more until the
+     * client closes the connection
+     */
+    public void silence(int times, int afterBytes) {
+        silenceAfterBytes = afterBytes;
+        silences.set(times);
+    }
+
+    public int connectionCount() {
+        return connections.get();
+    }
+
+    public List<String> peerAddresses() {
+        return peerAddresses;
+    }
+
+    public List<String> rangeHeaders() {
+        return rangeHeaders;
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                connections.incrementAndGet();
+                peerAddresses.add(socket.getInetAddress().getHostAddress());
+                executor.submit(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            OutputStream out = socket.getOutputStream();
+
+            String requestLine;
+            while ((requestLine = reader.readLine()) != null && !requestLine.isEmpty()) {
+                String range = null;
+                String header;
+                while ((header = reader.readLine()) != null && !header.isEmpty()) {
+                    if (header.toLowerCase().startsWith("range:")) {
+                        range = header.substring(6).trim();
+                    }
+                }
+
+                boolean head = requestLine.startsWith("HEAD");
+                int from = 0;
+                int to = content.length - 1;
+                String status = "200 OK";
+
+                if (range != null && !head) {
+                    rangeHeaders.add(range);
+                    String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                    from = Integer.parseInt(bounds[0]);
+                    if (!bounds[1].isEmpty()) {
+                        to = Math.min(Integer.parseInt(bounds[1]), content.length - 1);
+                    }
+                    status = "206 Partial Content";
+                }
+
+                int length = to - from + 1;
+                String headers = "HTTP/1.1 " + status + "\r\n"
+                        + "Content-Length: " + length + "\r\n"
+                        + "Accept-Ranges: bytes\r\n"
+                        + "X-Peer-Address: " + socket.getInetAddress().getHostAddress() + "\r\n"
+                        + "\r\n";
+                out.write(headers.getBytes(StandardCharsets.ISO_8859_1));
+
+                if (!head) {
+                    if (silences.getAndDecrement() > 0) {
+                        out.write(content, from, Math.min(silenceAfterBytes, length));
+                        out.flush();
+                        // returns once the client gave up on the connection
+                        while (socket.getInputStream().read() != -1) {
+                            // the client does not send anything else on this connection
+                        }
+                        return;
+                    } else if (stalls.getAndDecrement() > 0) {
+                        int sent = Math.min(stallAfterBytes, length);
+                        out.write(content, from, sent);
+                        out.flush();
+                        for (int i = from + sent; i <= to; i++) {
+                            sleep();
+                            out.write(content[i]);
+                            out.flush();
+                        }
+                    } else {
+                        out.write(content, from, length);
+                    }
+                }
+                out.flush();
+            }
+        } catch (IOException ignored) {
+            // the client closed the connection
+        }
+    }
+
+    private void sleep() throws IOException {
+        try {
+            Thread.sleep(TRICKLE_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        executor.shutdownNow();
+    }
+
+}